@@ -81,6 +81,15 @@ public class ConnectionAdapter<C extends Connection> implements Listener<C> {
             });
         }
 
+        @Override
+        public void onWritabilityChanged(final T connection, final boolean writable) {
+            queue(new Runnable() {
+                public void run() {
+                    listener.onWritabilityChanged(connection, writable);
+                }
+            });
+        }
+
         @Override
         public void received(T connection, Object msg) {
             queue(new Runnable() {
@@ -90,6 +99,15 @@ public class ConnectionAdapter<C extends Connection> implements Listener<C> {
             });
         }
 
+        @Override
+        public void received(T connection, Object msg, int typeId) {
+            queue(new Runnable() {
+                public void run() {
+                    listener.received(connection, msg, typeId);
+                }
+            });
+        }
+
         abstract protected void queue(Runnable runnable);
     }
 
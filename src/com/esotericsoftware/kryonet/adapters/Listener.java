@@ -37,6 +37,21 @@ public interface Listener<T extends Connection> {
 	/** Called when the connection is below the {@link Connection#setIdleThreshold(float) onIdle threshold}. */
 	void onIdle(T connection);
 
+	/** Called when the connection stops or starts being {@link Connection#isWritable() writable}, as the number of bytes
+	 * waiting to be written to the TCP socket crosses its {@link Connection#setWriteWaterMarks(int, int) water marks}.
+	 * This may be invoked on the sending thread or the update thread. Notifications for one connection made on different
+	 * threads may arrive out of order, so {@link Connection#isWritable()} should be checked for the current state. */
+	default void onWritabilityChanged(T connection, boolean writable) {
+	}
+
 	void received(T connection, Object msg);
 
+	/** Called instead of {@link #received(Connection, Object)} by end points, with the type ID the message's
+	 * {@link com.esotericsoftware.kryonet.serializers.Serialization#typeId(java.nio.ByteBuffer) serialization} read
+	 * along with it, or -1 if there was none. Listeners that dispatch on the message's type can use the ID to avoid
+	 * looking up its class. The default implementation ignores the ID. */
+	default void received(T connection, Object msg, int typeId) {
+		received(connection, msg);
+	}
+
 }
@@ -0,0 +1,16 @@
+package com.esotericsoftware.kryonet.adapters;
+
+import com.esotericsoftware.kryonet.network.Connection;
+import com.esotericsoftware.kryonet.network.EndPoint;
+import com.esotericsoftware.kryonet.network.RawFrame;
+
+/** Receives TCP messages of one type before they are deserialized, so messages can be dropped, counted or routed by
+ * type without the cost of decoding them. Added with {@link EndPoint#addRawListener(Class, RawListener)}.
+ * <p>
+ * This is invoked on the thread that reads the connection, and the frame is only valid until it returns. */
+@FunctionalInterface
+public interface RawListener<T extends Connection> {
+	/** @return true if the frame has been handled, or false to {@link RawFrame#decode() decode} it and pass the message
+	 *         to the end point's {@link Listener listeners}. */
+	boolean received (T connection, RawFrame frame);
+}
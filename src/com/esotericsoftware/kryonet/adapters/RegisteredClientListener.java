@@ -1,5 +1,6 @@
 package com.esotericsoftware.kryonet.adapters;
 
+import com.esotericsoftware.kryonet.network.Query;
 import com.esotericsoftware.kryonet.network.ServerConnection;
 import com.esotericsoftware.kryonet.network.messages.MessageToClient;
 import com.esotericsoftware.kryonet.network.messages.QueryToClient;
@@ -33,13 +34,16 @@ public class RegisteredClientListener extends RegisteredListener<ServerConnectio
     @SuppressWarnings("unchecked")
     public <K extends MessageToClient> @Nullable BiConsumer<? super K, ? super ServerConnection>
         addHandler(Class<K> clazz, BiConsumer<? super K, ? super ServerConnection> callback){
-        return map.put(clazz, callback);
+        return put(clazz, callback);
     }
 
     /** Register a handler for a query type. When query of type clazz are received,
      * the callback is invoked with the query and the connection it came from passed
      * as arguments.
      *
+     * Handlers doing long work may check {@link Query#isCancelled()} or register {@link Query#onCancel(Runnable)}
+     * to stop early once the sender stops waiting for the response.
+     *
      * A call to this method removes any previously existing handlers for the given query type.
      *
      * Example:
@@ -55,7 +59,7 @@ public class RegisteredClientListener extends RegisteredListener<ServerConnectio
     @SuppressWarnings("unchecked")
     public <Q extends QueryToClient<?>> @Nullable BiConsumer<? super Q, ? super ServerConnection>
         addQueryHandle(Class<Q> clazz, BiConsumer<? super Q, ? super ServerConnection> callback){
-        return map.put(clazz, callback);
+        return put(clazz, callback);
     }
 
 }
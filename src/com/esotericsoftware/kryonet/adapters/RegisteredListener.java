@@ -4,6 +4,7 @@ import com.esotericsoftware.kryonet.network.Connection;
 import com.esotericsoftware.kryonet.network.messages.Message;
 import com.esotericsoftware.minlog.Log;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.BiConsumer;
@@ -25,8 +26,14 @@ public abstract class RegisteredListener<C extends Connection> implements Listen
     /**This is a nop handler that does nothing when a message is received. No message is logged.*/
     public static final BiConsumer<Message, Connection> NO_OP = (m, b) -> {};
 
+    /** Type IDs at or above this are always looked up by class instead of through {@link #routes}. */
+    private static final int MAX_ROUTED_ID = 1 << 16;
+
     protected final Map<Class<?>, BiConsumer> map = new HashMap<>();
 
+    /** Callbacks indexed by the registration ID of the message they handle, filled in as messages arrive. */
+    private volatile Route[] routes = new Route[0];
+
     protected BiConsumer<? super Message, ? super C> defaultCallback = DEFAULT_HANDLE;
 
     protected ErrorHandler errorHandler = new DefaultErrorHandler();
@@ -65,14 +72,64 @@ public abstract class RegisteredListener<C extends Connection> implements Listen
     @SuppressWarnings("unchecked")
     /** Invokes the callback registered for msg, or invokes the error handler if none exists.*/
     public void received(C connection, Object msg){
+        dispatch(map.getOrDefault(msg.getClass(), DEFAULT_HANDLE), connection, msg);
+    }
+
+    /** Invokes the callback registered for msg, looked up by the ID its class was registered with rather than
+     * by hashing the class. Falls back to the class when the ID is unknown or too large to index.*/
+    @Override
+    public void received(C connection, Object msg, int typeId) {
+        final Route[] routes = this.routes;
+        if (typeId >= 0 && typeId < routes.length) {
+            final Route route = routes[typeId];
+            // The same listener may be added to end points whose IDs differ, so check the class matches.
+            if (route != null && route.type == msg.getClass()) {
+                dispatch(route.handler, connection, msg);
+                return;
+            }
+        }
+        dispatch(route(typeId, msg.getClass()), connection, msg);
+    }
+
+    /** Replaces the callback for clazz, and forgets every callback looked up by ID. */
+    protected synchronized BiConsumer put(Class<?> clazz, BiConsumer callback) {
+        final BiConsumer previous = map.put(clazz, callback);
+        routes = new Route[0];
+        return previous;
+    }
+
+    private synchronized BiConsumer route(int typeId, Class<?> type) {
+        final BiConsumer handler = map.getOrDefault(type, DEFAULT_HANDLE);
+        if (typeId < 0 || typeId >= MAX_ROUTED_ID) return handler;
+        Route[] routes = this.routes;
+        if (typeId >= routes.length)
+            routes = Arrays.copyOf(routes, Math.min(MAX_ROUTED_ID, Math.max(typeId + 1, routes.length * 2)));
+        routes[typeId] = new Route(type, handler);
+        this.routes = routes;
+        return handler;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void dispatch(BiConsumer handler, C connection, Object msg) {
         try {
-             map.getOrDefault(msg.getClass(), DEFAULT_HANDLE).accept(msg, connection);
+            handler.accept(msg, connection);
         } catch (Exception e){
             errorHandler.onError((Message)msg, e);
         }
     }
 
 
+    private static final class Route {
+        final Class<?> type;
+        final BiConsumer handler;
+
+        Route(Class<?> type, BiConsumer handler) {
+            this.type = type;
+            this.handler = handler;
+        }
+    }
+
+
     private static class DefaultErrorHandler implements ErrorHandler {
         @Override
         public void onError(Message message, Exception e) {
@@ -1,6 +1,7 @@
 package com.esotericsoftware.kryonet.adapters;
 
 import com.esotericsoftware.kryonet.network.ClientConnection;
+import com.esotericsoftware.kryonet.network.Query;
 import com.esotericsoftware.kryonet.network.messages.MessageToServer;
 import com.esotericsoftware.kryonet.network.messages.QueryToServer;
 import org.eclipse.jdt.annotation.Nullable;
@@ -32,13 +33,16 @@ public class RegisteredServerListener extends RegisteredListener<ClientConnectio
     @SuppressWarnings("unchecked")
     public <K extends MessageToServer> @Nullable BiConsumer<? super K, ? super ClientConnection>
         addHandler(Class<K> clazz, BiConsumer<? super K, ? super ClientConnection> callback){
-        return map.put(clazz, callback);
+        return put(clazz, callback);
     }
 
     /** Register a handler for a query type. When query of type clazz are received,
      * the callback is invoked with the query and the connection it came from passed
      * as arguments.
      *
+     * Handlers doing long work may check {@link Query#isCancelled()} or register {@link Query#onCancel(Runnable)}
+     * to stop early once the sender stops waiting for the response.
+     *
      * A call to this method removes any previously existing handlers for the given query type.
      *
      * Example:
@@ -54,6 +58,6 @@ public class RegisteredServerListener extends RegisteredListener<ClientConnectio
     @SuppressWarnings("unchecked")
     public <Q extends QueryToServer<?>> @Nullable BiConsumer<? super Q, ? super ClientConnection>
         addQueryHandle(Class<Q> clazz, BiConsumer<? super Q, ? super ClientConnection> callback){
-        return map.put(clazz, callback);
+        return put(clazz, callback);
     }
 }
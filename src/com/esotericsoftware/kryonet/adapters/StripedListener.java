@@ -0,0 +1,159 @@
+package com.esotericsoftware.kryonet.adapters;
+
+import com.esotericsoftware.kryonet.network.Connection;
+import com.esotericsoftware.minlog.Log;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delegates to another listener on a fixed set of worker threads, so slow handlers don't stall the update thread.
+ * Connections are striped across the workers by {@link Connection#getID() ID}: every event for a connection runs on
+ * the same worker, in the order it happened, while different connections are handled in parallel.
+ * <p>
+ * Each worker has a bounded queue. When a worker's queue is full, the thread firing the event blocks until there is
+ * room, which in turn stops the update thread from reading more messages. {@link #getQueueDepths()} and
+ * {@link #getPeakQueueDepths()} show how close the workers are to that. Idle events are coalesced, so a connection
+ * has at most one waiting at a time.
+ */
+public class StripedListener<T extends Connection> extends ConnectionAdapter<T> {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final Runnable STOP = () -> {
+    };
+
+    private final Listener<T> listener;
+    private final Stripe[] stripes;
+    private final Set<T> idlePending = ConcurrentHashMap.newKeySet();
+
+    /** Creates a worker for each available processor. */
+    public StripedListener(Listener<T> listener) {
+        this(listener, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param threads       The number of workers connections are striped across.
+     * @param queueCapacity The number of events each worker can hold before the thread firing an event blocks.
+     */
+    public StripedListener(Listener<T> listener, int threads, int queueCapacity) {
+        if (listener == null) throw new IllegalArgumentException("listener cannot be null.");
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be at least 1: " + queueCapacity);
+        this.listener = listener;
+        stripes = new Stripe[threads];
+        for (int i = 0; i < threads; ++i)
+            stripes[i] = new Stripe(i, queueCapacity);
+    }
+
+
+    @Override
+    public void onConnected(T connection) {
+        dispatch(connection, () -> listener.onConnected(connection));
+    }
+
+    @Override
+    public void onDisconnected(T connection) {
+        dispatch(connection, () -> listener.onDisconnected(connection));
+    }
+
+    @Override
+    public void onIdle(T connection) {
+        if (!idlePending.add(connection)) return;
+        dispatch(connection, () -> {
+            idlePending.remove(connection);
+            listener.onIdle(connection);
+        });
+    }
+
+    @Override
+    public void onWritabilityChanged(T connection, boolean writable) {
+        dispatch(connection, () -> listener.onWritabilityChanged(connection, writable));
+    }
+
+    @Override
+    public void received(T connection, Object msg) {
+        dispatch(connection, () -> listener.received(connection, msg));
+    }
+
+    @Override
+    public void received(T connection, Object msg, int typeId) {
+        dispatch(connection, () -> listener.received(connection, msg, typeId));
+    }
+
+
+    private void dispatch(T connection, Runnable event) {
+        stripes[Math.floorMod(connection.getID(), stripes.length)].put(event);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /** Returns the number of events waiting in each worker's queue, indexed by worker. */
+    public int[] getQueueDepths() {
+        int[] depths = new int[stripes.length];
+        for (int i = 0; i < stripes.length; ++i)
+            depths[i] = stripes[i].queue.size();
+        return depths;
+    }
+
+    /** Returns the largest number of events that have waited in each worker's queue, indexed by worker. */
+    public int[] getPeakQueueDepths() {
+        int[] depths = new int[stripes.length];
+        for (int i = 0; i < stripes.length; ++i)
+            depths[i] = stripes[i].peakDepth.get();
+        return depths;
+    }
+
+    /** Stops the workers once they have run the events already queued. Events fired afterwards are never run. */
+    public void stop() {
+        for (Stripe stripe : stripes)
+            stripe.put(STOP);
+    }
+
+
+
+    private static class Stripe implements Runnable {
+        final BlockingQueue<Runnable> queue;
+        final AtomicInteger peakDepth = new AtomicInteger();
+
+        Stripe(int index, int queueCapacity) {
+            queue = new ArrayBlockingQueue<>(queueCapacity);
+            Thread thread = new Thread(this, "Dispatcher " + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void put(Runnable event) {
+            try {
+                queue.put(event);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                if (Log.DEBUG) Log.debug("kryonet", "Interrupted while waiting for dispatcher queue, event dropped.");
+                return;
+            }
+            final int depth = queue.size();
+            if (depth > peakDepth.get()) peakDepth.accumulateAndGet(depth, Math::max);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Runnable event;
+                try {
+                    event = queue.take();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                if (event == STOP) return;
+                try {
+                    event.run();
+                } catch (Throwable ex) {
+                    Log.error("kryonet", "Error dispatching event.", ex);
+                }
+            }
+        }
+    }
+}
@@ -1,24 +1,147 @@
 package com.esotericsoftware.kryonet.futures;
 
+import com.esotericsoftware.kryonet.util.TimerWheel;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 /**
+ * A future that is cancelled if it isn't completed within a timeout. Timeouts are kept in one hashed timing wheel shared
+ * by every future, ticked by a single daemon thread while any timeout is pending. A timeout is removed from the wheel as
+ * soon as its future completes, so the wheel only ever holds the futures still waiting, however long their timeouts.
+ *
  * Created by Evan on 3/25/17.
  */
 public class TimedFuture<T> extends CompletableFuture<T> {
+    private static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SIZE = 1024;
 
-    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
-                Thread thread = new Thread(task, "KryoMs QueryTimeout");
+    private static final Object lock = new Object();
+    private static final TimerWheel<TimedFuture<?>> wheel = new TimerWheel<>(WHEEL_SIZE, TICK_MILLIS, now());
+    private static Thread thread;
+
+    /** Written under lock, and volatile so futures without a timeout complete without taking it. */
+    private volatile TimerWheel.Entry<TimedFuture<?>> timeout;
+
+
+    /**
+     * Cancels this future once the timeout has passed, unless it has completed by then. Replaces any previous timeout.
+     * The timeout fires on the first tick after it passes, so up to {@value #TICK_MILLIS} ms late.
+     */
+    public void setTimeout(Duration duration) {
+        // The wheel fires a deadline once its tick begins, so it is rounded up to never fire early.
+        final long deadline = now() + duration.toMillis() + TICK_MILLIS - 1;
+        synchronized (lock) {
+            if (isDone()) return;
+            if (timeout == null)
+                timeout = wheel.schedule(this, deadline);
+            else
+                wheel.schedule(timeout, deadline);
+            if (thread == null) {
+                thread = new Thread(TimedFuture::run, "KryoNet QueryTimeout");
                 thread.setDaemon(true);
-                return thread;
-            });
+                thread.start();
+            } else if (wheel.size() == 1) {
+                lock.notify();
+            }
+        }
+        // Completed after the check above but before the timeout was visible to cancelTimeout.
+        if (isDone()) cancelTimeout();
+    }
+
+    /** Removes the timeout, if any. Called whenever this future completes. */
+    public void cancelTimeout() {
+        if (timeout == null) return;
+        synchronized (lock) {
+            if (timeout == null) return;
+            wheel.cancel(timeout);
+            timeout = null;
+        }
+    }
+
+    /** Called from the timeout thread when the timeout passes. Cancels this future by default. */
+    protected void timedOut() {
+        cancel(false);
+    }
+
+    @Override
+    public boolean complete(T value) {
+        if (!super.complete(value)) return false;
+        cancelTimeout();
+        return true;
+    }
 
+    @Override
+    public boolean completeExceptionally(Throwable error) {
+        if (!super.completeExceptionally(error)) return false;
+        cancelTimeout();
+        return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!super.cancel(mayInterruptIfRunning)) return false;
+        cancelTimeout();
+        return true;
+    }
+
+
+    /**
+     * Cancels the future once the timeout has passed, unless it has completed by then.
+     *
+     * @deprecated Use a {@link TimedFuture} and {@link #setTimeout(Duration)}, which doesn't need a second future to
+     * hold the timeout.
+     */
+    @Deprecated
     public static void addTimeout(CompletableFuture<?> future, Duration timeout) {
-        timer.schedule(() -> future.cancel(false), timeout.toMillis(), TimeUnit.MILLISECONDS);
+        final TimedFuture<Void> timer = new TimedFuture<Void>() {
+            @Override
+            protected void timedOut() {
+                future.cancel(false);
+                cancel(false);
+            }
+        };
+        timer.setTimeout(timeout);
+        // Takes the timeout off the wheel as soon as the future completes.
+        future.whenComplete((result, error) -> timer.cancel(false));
     }
 
+    /** Returns the number of futures whose timeouts are pending. */
+    public static int getPendingTimeouts() {
+        synchronized (lock) {
+            return wheel.size();
+        }
+    }
+
+    private static void run() {
+        final List<TimedFuture<?>> expired = new ArrayList<>();
+        final TimerWheel.Task<TimedFuture<?>> collect = (future, now) -> {
+            future.timeout = null;
+            expired.add(future);
+            return -1;
+        };
+        while (true) {
+            try {
+                synchronized (lock) {
+                    while (wheel.size() == 0)
+                        lock.wait();
+                }
+                Thread.sleep(TICK_MILLIS);
+            } catch (InterruptedException ignored) {
+                continue;
+            }
+            synchronized (lock) {
+                wheel.advance(now(), collect);
+            }
+            // Completing a future runs its dependents, so it's done outside the lock.
+            for (TimedFuture<?> future : expired)
+                future.timedOut();
+            expired.clear();
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
 }
@@ -23,9 +23,12 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.adapters.Listener;
 import com.esotericsoftware.kryonet.network.impl.Server;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.CancelQuery;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.DiscoverHost;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.RegisterTCP;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.RegisterUDP;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.StreamCredit;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.StreamEnd;
 import com.esotericsoftware.kryonet.network.messages.MessageToServer;
 import com.esotericsoftware.kryonet.network.messages.QueryToClient;
 import com.esotericsoftware.kryonet.serializers.KryoSerialization;
@@ -58,6 +61,10 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 
 	private final T connection;
 	private volatile boolean tcpRegistered, udpRegistered;
+	/** Whether the server offered compression when it registered the connection, and the IDs of its compression
+	 * dictionaries. Only used by the update thread. */
+	private boolean compressionOffered;
+	private long offeredDictionaries;
 	private volatile boolean shutdown;
 	private int connectTimeout;
 	private InetAddress connectHost;
@@ -74,11 +81,12 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 		this(connection, DEFAULT_WRITE_BUFFER, DEFAULT_OBJ_BUFFER);
 	}
 
-	/** @param writeBufferSize One buffer of this size is allocated. Objects are serialized to the write buffer where the bytes are
-	 *           queued until they can be written to the TCP socket.
+	/** @param writeBufferSize The most bytes that may be queued until they can be written to the TCP socket. Queued bytes are
+	 *           held in pooled segments, so memory is only used while bytes are actually waiting.
 	 *           <p>
 	 *           Normally the socket is writable and the bytes are written immediately. If the socket cannot be written to and
-	 *           enough serialized objects are queued to overflow the buffer, then the connection will be closed.
+	 *           enough serialized objects are queued to exceed this size, then the connection will be closed, unless a different
+	 *           {@link Connection#setWriteOverflowPolicy(WriteOverflowPolicy) overflow policy} is set.
 	 *           <p>
 	 *           The write buffer should be sized at least as large as the largest object that will be sent, plus some head room to
 	 *           allow for some serialized objects to be queued in case the buffer is temporarily not writable. The amount of head
@@ -87,7 +95,9 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 	 *           buffers are used to hold the bytes for a single object graph until it can be sent over the network or
 	 *           deserialized.
 	 *           <p>
-	 *           The object buffers should be sized at least as large as the largest object that will be sent or received. */
+	 *           The object buffers should be sized at least as large as the largest object that will be sent or received
+	 *           over UDP, and as large as typical TCP messages. Larger TCP messages are fragmented, up to the
+	 *           {@link Connection#setMaxMessageSize(int) max message size}. */
 	protected AbstractClient(T connection, int writeBufferSize, int objectBufferSize) {
 		this(connection, writeBufferSize, objectBufferSize, new KryoSerialization());
 	}
@@ -99,10 +109,11 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 
 		this.discoveryHandler = ClientDiscoveryHandler.DEFAULT;
 
-		connection.initialize(serialization, delegator, writeBufferSize, objectBufferSize);
+		connection.initialize(serialization, clock, writePool, messagePool, delegator, writeBufferSize, objectBufferSize);
 
 		try {
 			selector = Selector.open();
+			selectorWakeup = new SelectorWakeup(selector);
 		} catch (IOException ex) {
 			throw new RuntimeException("Error opening selector.", ex);
 		}
@@ -126,6 +137,14 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 			throw new UnsupportedOperationException();
 		}
 
+		@Override
+		public void onWritabilityChanged(Connection c, boolean writable) {
+			final List<Listener<? super T>> listeners = AbstractClient.this.listeners;
+
+			for (int i = 0, n = listeners.size(); i < n; ++i)
+				listeners.get(i).onWritabilityChanged(connection, writable);
+		}
+
 		@Override
 		public void received(Connection connection, Object msg) {
 			throw new UnsupportedOperationException();
@@ -184,14 +203,14 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 		}
 		connection.id = -1;
 		try {
-			if (udpPort != -1) connection.udp = new UdpConnection(serializer, connection.tcp.readBuffer.capacity());
+			if (udpPort != -1) connection.udp = new UdpConnection(serializer, clock, connection.tcp.readBuffer.capacity());
 
 			long endTime;
 			synchronized (updateLock) {
 				tcpRegistered = false;
 				selector.wakeup();
 				endTime = System.currentTimeMillis() + timeout;
-				connection.tcp.connect(selector, new InetSocketAddress(host, tcpPort), 5000);
+				connection.tcp.connect(selectorWakeup, new InetSocketAddress(host, tcpPort), 5000);
 			}
 
 			// Wait for RegisterTCP.
@@ -286,7 +305,22 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 
 
 
-	private void handleTCP(Object msg, T fromConnection){
+	/** Agrees to compression if the server offered it and this client has it enabled too, naming the dictionaries both
+	 * have. Called once registered, since the server closes connections that send TCP messages before UDP is
+	 * registered. */
+	private void agreeToCompression () {
+		final int threshold = compressionThreshold;
+		if (!compressionOffered || threshold == -1) return;
+		final RegisterTCP agreement = new RegisterTCP();
+		agreement.connectionID = connection.id;
+		agreement.compression = true;
+		agreement.dictionaries = compressionDictionaryIds() & offeredDictionaries;
+		connection.sendObjectTCP(agreement);
+		connection.tcp.compressionDictionary = highestCompressionDictionary(agreement.dictionaries);
+		connection.tcp.compressionThreshold = threshold;
+	}
+
+	private void handleTCP(Object msg, int typeId, T fromConnection){
 		final List<Listener<? super T>> listeners = AbstractClient.this.listeners;
 
 		if(msg instanceof FrameworkMessage){
@@ -305,18 +339,18 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 
 
 		if(msg instanceof QueryToClient){
-			((Query) msg).setOrigin(connection);
+			connection.receiveQuery((Query) msg);
 		} else if (msg instanceof Response){
 			connection.accept((Response) msg);
 			return;
 		}
 
 		for (int i = 0, n = listeners.size(); i < n; ++i)
-			listeners.get(i).received(connection, msg);
+			listeners.get(i).received(connection, msg, typeId);
 	}
 
 
-	private void handleUDP(Object msg, T fromConnection){
+	private void handleUDP(Object msg, int typeId, T fromConnection){
 		final List<Listener<? super T>> listeners = AbstractClient.this.listeners;
 
 		if(msg instanceof FrameworkMessage){
@@ -334,7 +368,7 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 
 
 		for (int i = 0, n = listeners.size(); i < n; ++i)
-			listeners.get(i).received(connection, msg);
+			listeners.get(i).received(connection, msg, typeId);
 	}
 
 
@@ -371,63 +405,88 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 	 * @param timeout Wait for up to the specified milliseconds for data to be ready to process. May be zero to return immediately
 	 *           if there is no data to process. */
 	public void update (int timeout) throws IOException {
+		connection.tcp.ioThread = Thread.currentThread();
 		if(isSelectReady(timeout)) {
 			isClosed = false;
 			emptySelects = 0;
 			Set<SelectionKey> keys = selector.selectedKeys();
 			synchronized (keys) {
 				for (Iterator<SelectionKey> iter = keys.iterator(); iter.hasNext();) {
-					keepAlive();
 					SelectionKey selectionKey = iter.next();
 					iter.remove();
 					try {
 						final int ops = selectionKey.readyOps();
 						if ((ops & SelectionKey.OP_READ) == SelectionKey.OP_READ) {
 							if (selectionKey.attachment() == connection.tcp) {
-								while (true) {
-									Object object = connection.tcp.readObject();
-									if (object == null) break;
-									if (object instanceof FrameworkMessage) {
-										if (!tcpRegistered) {
-											if (object instanceof RegisterTCP) {
-												connection.id = ((RegisterTCP) object).connectionID;
-												synchronized (tcpRegistrationLock) {
-													tcpRegistered = true;
-													tcpRegistrationLock.notifyAll();
-													if (TRACE) trace(TAG, this + " received TCP: RegisterTCP");
-													if (connection.udp == null) connection.setConnected(true);
+								// Everything the handlers send while this batch of frames is read goes out in one write.
+								connection.tcp.cork();
+								try {
+									while (true) {
+										Object object = connection.tcp.readObject();
+										if (object == null) break;
+										if (object instanceof FrameworkMessage) {
+											if (!tcpRegistered) {
+												if (object instanceof RegisterTCP) {
+													connection.id = ((RegisterTCP) object).connectionID;
+													compressionOffered = ((RegisterTCP) object).compression;
+													offeredDictionaries = ((RegisterTCP) object).dictionaries;
+													synchronized (tcpRegistrationLock) {
+														tcpRegistered = true;
+														tcpRegistrationLock.notifyAll();
+														if (TRACE) trace(TAG, this + " received TCP: RegisterTCP");
+														if (connection.udp == null) {
+															agreeToCompression();
+															connection.setConnected(true);
+														}
+													}
+													if (connection.udp == null) handleOnConnect(connection);
 												}
-												if (connection.udp == null) handleOnConnect(connection);
+												continue;
 											}
-											continue;
-										}
-										if (connection.udp != null && !udpRegistered) {
-											if (object instanceof RegisterUDP) {
-												synchronized (udpRegistrationLock) {
-													udpRegistered = true;
-													udpRegistrationLock.notifyAll();
-													if (TRACE) trace(TAG, this + " received UDP: RegisterUDP");
-													if (DEBUG) {
-														debug(TAG, "Port " + connection.udp.datagramChannel.socket().getLocalPort()
-																+ "/UDP connected to: " + connection.udp.connectedAddress);
+											if (connection.udp != null && !udpRegistered) {
+												if (object instanceof RegisterUDP) {
+													synchronized (udpRegistrationLock) {
+														udpRegistered = true;
+														udpRegistrationLock.notifyAll();
+														if (TRACE) trace(TAG, this + " received UDP: RegisterUDP");
+														if (DEBUG) {
+															debug(TAG, "Port " + connection.udp.datagramChannel.socket().getLocalPort()
+																	+ "/UDP connected to: " + connection.udp.connectedAddress);
+														}
+														agreeToCompression();
+														connection.setConnected(true);
 													}
-													connection.setConnected(true);
+													handleOnConnect(connection);
 												}
-												handleOnConnect(connection);
+												continue;
+											}
+											if (object instanceof StreamCredit) {
+												connection.acceptStreamCredit((StreamCredit) object);
+											} else if (object instanceof StreamEnd) {
+												connection.acceptStreamEnd((StreamEnd) object);
+											} else if (object instanceof CancelQuery) {
+												connection.acceptCancelQuery((CancelQuery) object);
 											}
 											continue;
 										}
-										continue;
+										if (!connection.isConnected) continue;
+										if (object instanceof RawFrame) {
+											if (receivedRaw(connection, (RawFrame) object)) continue;
+											object = ((RawFrame) object).decode();
+										}
+										handleTCP(object, connection.tcp.typeId, connection);
 									}
-									if (!connection.isConnected) continue;
-									handleTCP(object, connection);
+								} catch (IOException | RuntimeException ex) {
+									connection.tcp.uncork(ex);
+									throw ex;
 								}
+								connection.tcp.uncork();
 							} else {
 								if (connection.udp.readFromAddress() == null) continue;
 								Object object = connection.udp.readObject();
 								if (object == null)
 									continue;
-								handleUDP(object, connection);
+								handleUDP(object, connection.udp.typeId, connection);
 							}
 						}
 						if ((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE) connection.tcp.writeOperation();
@@ -438,21 +497,20 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 			}
 		}
 		if (connection.isConnected) {
-			long time = System.currentTimeMillis();
+			long time = clock.millis();
 			if (connection.tcp.isTimedOut(time)) {
 				if (DEBUG) debug(TAG, this + " timed out.");
 				close();
 			} else
-				keepAlive();
+				keepAlive(time);
 			if (isIdle())
 				handleOnIdle(connection);
 		}
 	}
 
 
-	void keepAlive () {
+	void keepAlive (long time) {
 		if (!connection.isConnected) return;
-		long time = System.currentTimeMillis();
 		if (connection.tcp.needsKeepAlive(time)) connection.sendObjectTCP(FrameworkMessage.keepAlive);
 		if (connection.udp != null && udpRegistered && connection.udp.needsKeepAlive(time)) connection.sendObjectUDP(FrameworkMessage.keepAlive);
 	}
@@ -523,6 +581,7 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 			selector.wakeup();
 			try {
 				selector.selectNow();
+				selectorWakeup.selected();
 			} catch (IOException ignored) {
 			}
 		}
@@ -670,6 +729,11 @@ public abstract class AbstractClient<T extends ServerConnection> extends EndPoin
 		return connection.sendTCP(msg);
 	}
 
+	/** @see Connection#sendDeltaTCP(int, com.esotericsoftware.kryonet.network.messages.Message) */
+	public int sendDeltaTCP(int key, MessageToServer msg) {
+		return connection.sendDeltaTCP(key, msg);
+	}
+
 	public int sendUDP(CachedMessage<? extends MessageToServer> msg){
 		return connection.sendUDP(msg);
 	}
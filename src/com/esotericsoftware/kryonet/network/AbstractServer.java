@@ -22,13 +22,18 @@ package com.esotericsoftware.kryonet.network;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.util.IntMap;
 import com.esotericsoftware.kryonet.adapters.Listener;
+import com.esotericsoftware.kryonet.network.messages.BidirectionalMessage;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.RegisterTCP;
 import com.esotericsoftware.kryonet.network.messages.MessageToClient;
+import com.esotericsoftware.kryonet.network.messages.QueryToClient;
 import com.esotericsoftware.kryonet.network.messages.QueryToServer;
 import com.esotericsoftware.kryonet.serializers.KryoSerialization;
 import com.esotericsoftware.kryonet.serializers.Serialization;
+import com.esotericsoftware.kryonet.util.CoarseClock;
 import com.esotericsoftware.kryonet.util.KryoNetException;
+import com.esotericsoftware.kryonet.util.ProtocolUtils;
+import com.esotericsoftware.kryonet.util.TimerWheel;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
@@ -37,11 +42,21 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.eclipse.jdt.annotation.Nullable;
 
 import static com.esotericsoftware.minlog.Log.DEBUG;
 import static com.esotericsoftware.minlog.Log.ERROR;
@@ -61,10 +76,16 @@ import static com.esotericsoftware.minlog.Log.warn;
  * @author Evan Darke <evancdarke@gmail.com>
  */
 public abstract class AbstractServer<T extends ClientConnection> extends EndPoint<MessageToClient, T> {
+    private static final int TIMER_WHEEL_SIZE = 512, TIMER_TICK_MILLIS = 50;
+    private static final TimerWheel.Task<Connection> UPDATE_TIMERS = Connection::updateTimers;
 
     private final IntMap<T> pendingConnections = new IntMap<>();
     private final List<T> connections = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Integer, T> connectionsByID = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<InetSocketAddress, T> connectionsByUdpAddress = new ConcurrentHashMap<>();
     private final Class<T> classTag;
+    /** Bytes in the length of each TCP frame, the same for every connection since they share a write buffer size. */
+    private final int lengthLength;
     private final Listener<Connection> dispatchListener = new Listener<Connection>() {
 
         public void onConnected(Connection conn) {
@@ -99,15 +120,29 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
             }
         }
 
+        public void onWritabilityChanged(Connection conn, boolean writable) {
+            final T connection = classTag.cast(conn);
+            final List<Listener<? super T>> listeners = AbstractServer.this.listeners;
+
+            for (Listener<? super T> listener : listeners)
+                listener.onWritabilityChanged(connection, writable);
+        }
+
         public void received(Connection conn, Object object) {
             throw new UnsupportedOperationException();
         }
     };
     private ServerSocketChannel serverChannel;
     private UdpConnection udp;
-    private int nextConnectionID = 1;
+    private final AtomicInteger nextConnectionID = new AtomicInteger(1);
+    /** Counts down from -1, so queries sent to many connections never share an ID with one sent to a single connection. */
+    private final AtomicInteger nextSharedQueryID = new AtomicInteger();
     private volatile boolean shutdown;
     private ServerDiscoveryHandler discoveryHandler;
+    private int reactorCount;
+    private volatile Reactor[] reactors = new AbstractServer.Reactor[0];
+    /** Owns the connections processed on the update thread when no reactors are in use. */
+    private final Reactor updateReactor;
 
     /**
      * Creates a Server with a write buffer size of 16384 and an object buffer size of 2048.
@@ -117,11 +152,13 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
     }
 
     /**
-     * @param writeBufferSize  One buffer of this size is allocated for each onConnected client. Objects are serialized to the write
-     *                         buffer where the bytes are queued until they can be written to the TCP socket.
+     * @param writeBufferSize  The most bytes that may be queued for each onConnected client until they can be written to the
+     *                         TCP socket. Queued bytes are held in segments from a pool shared by all connections, so memory
+     *                         is only used while bytes are actually waiting.
      *                         <p>
      *                         Normally the socket is writable and the bytes are written immediately. If the socket cannot be written to and
-     *                         enough serialized objects are queued to overflow the buffer, then the connection will be closed.
+     *                         enough serialized objects are queued to exceed this size, then the connection will be closed, unless
+     *                         a different {@link Connection#setWriteOverflowPolicy(WriteOverflowPolicy) overflow policy} is set.
      *                         <p>
      *                         The write buffer should be sized at least as large as the largest object that will be sent, plus some head room to
      *                         allow for some serialized objects to be queued in case the buffer is temporarily not writable. The amount of head
@@ -130,7 +167,9 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
      *                         buffers are used to hold the bytes for a single object graph until it can be sent over the network or
      *                         deserialized.
      *                         <p>
-     *                         The object buffers should be sized at least as large as the largest object that will be sent or received.
+     *                         The object buffers should be sized at least as large as the largest object that will be sent or received
+     *                         over UDP, and as large as typical TCP messages. Larger TCP messages are fragmented, up to the
+     *                         {@link Connection#setMaxMessageSize(int) max message size}.
      */
     public AbstractServer(Class<T> tag, int writeBufferSize, int objectBufferSize) {
         this(tag, writeBufferSize, objectBufferSize, new KryoSerialization());
@@ -138,6 +177,7 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
 
     public AbstractServer(Class<T> tag, int writeBufferSize, int objectBufferSize, Serialization serialization) {
         super(serialization, writeBufferSize, objectBufferSize);
+        lengthLength = TcpConnection.lengthLength(writeBufferSize);
         this.discoveryHandler = ServerDiscoveryHandler.DEFAULT;
         this.classTag = tag;
 
@@ -146,12 +186,49 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
         } catch (IOException ex) {
             throw new RuntimeException("Error opening selector.", ex);
         }
+        selectorWakeup = new SelectorWakeup(selector);
+        updateReactor = new Reactor(-1, selectorWakeup, clock);
     }
 
     public void setDiscoveryHandler(ServerDiscoveryHandler newDiscoveryHandler) {
         discoveryHandler = newDiscoveryHandler;
     }
 
+    /**
+     * Sets the number of worker event loops that TCP connections are spread across. Each reactor owns its own
+     * {@link Selector} and thread, and performs all TCP reads, writes and listener callbacks for the connections assigned
+     * to it. The thread that calls {@link #update(int)} only accepts new connections and handles UDP.
+     * <p>
+     * With a count of zero (the default), every connection is processed on the update thread.
+     * Listener callbacks for different connections may run concurrently when reactors are in use, but callbacks
+     * for a single connection's TCP traffic are always invoked on the same thread.
+     * <p>
+     * Must be called before {@link #bind(InetSocketAddress, InetSocketAddress) bind}; reactors are started when
+     * the server is bound and stopped when it is closed.
+     */
+    public void setReactorCount(int reactorCount) {
+        if (reactorCount < 0) throw new IllegalArgumentException("reactorCount cannot be negative: " + reactorCount);
+        this.reactorCount = reactorCount;
+    }
+
+    public int getReactorCount() {
+        return reactorCount;
+    }
+
+    /**
+     * Returns the number of connections currently owned by each reactor, indexed by reactor. When no reactors are in use,
+     * a single element array containing the total number of connections is returned.
+     */
+    public int[] getReactorConnectionCounts() {
+        final Reactor[] reactors = this.reactors;
+        if (reactors.length == 0) return new int[]{connections.size()};
+
+        int[] counts = new int[reactors.length];
+        for (int i = 0; i < reactors.length; ++i)
+            counts[i] = reactors[i].connections.size();
+        return counts;
+    }
+
     /**
      * Opens a TCP only server.
      *
@@ -176,10 +253,11 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
                 if (DEBUG) debug(TAG, "Accepting connections on port: " + tcpPort + "/TCP");
 
                 if (udpPort != null) {
-                    udp = new UdpConnection(serializer, objectBufferSize);
+                    udp = new UdpConnection(serializer, clock, objectBufferSize);
                     udp.bind(selector, udpPort);
                     if (DEBUG) debug(TAG, "Accepting connections on port: " + udpPort + "/UDP");
                 }
+                startReactors();
             } catch (IOException ex) {
                 close();
                 throw ex;
@@ -199,7 +277,15 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
 
     void removeConnection(T connection) {
         connections.remove(connection);
-        pendingConnections.remove(connection.id);
+        connectionsByID.remove(connection.id, connection);
+        final InetSocketAddress udpRemoteAddress = connection.udpRemoteAddress;
+        if (udpRemoteAddress != null) connectionsByUdpAddress.remove(udpRemoteAddress, connection);
+        synchronized (pendingConnections) {
+            pendingConnections.remove(connection.id);
+        }
+        updateReactor.connections.remove(connection);
+        for (Reactor reactor : reactors)
+            reactor.connections.remove(connection);
     }
 
     public void sendToAll(MessageToClient object, Iterable<T> targets) {
@@ -210,9 +296,52 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
         }
     }
 
+    /**
+     * Serializes the message once for every target. If it reaches the compression threshold, it is also compressed once
+     * for all of the targets that compress.
+     */
     public void sendToAllTCP(MessageToClient object, Iterable<T> targets) {
         final CachedMessage<MessageToClient> raw = cachedMessageFactory.createTemp(object);
-        sendToAllTCP(raw, targets);
+        broadcastTCP(raw, targets, -1, compressionThreshold);
+    }
+
+    /**
+     * Serializes each message once, then sends all of them to every target as one batch, with a single lock acquisition
+     * and at most one socket write per connection.
+     *
+     * @see Connection#sendBatchTCP(java.util.Collection)
+     */
+    public void sendBatchToAllTCP(Collection<? extends MessageToClient> msgs, Iterable<T> targets) {
+        final List<CachedMessage<MessageToClient>> cached = new ArrayList<>(msgs.size());
+        for (MessageToClient msg : msgs)
+            cached.add(cachedMessageFactory.createTemp(msg));
+        sendCachedBatchToAllTCP(cached, targets);
+    }
+
+    public void sendBatchToAllTCP(Collection<? extends MessageToClient> msgs) {
+        sendBatchToAllTCP(msgs, this.connections);
+    }
+
+    /**
+     * Sends the pre-serialized messages to every target as one batch. The frames are built once and shared by every
+     * target, as with {@link #sendToAllTCP(CachedMessage, Iterable)}.
+     */
+    public void sendCachedBatchToAllTCP(Collection<? extends CachedMessage<? extends MessageToClient>> msgs, Iterable<T> targets) {
+        if (msgs.isEmpty()) return;
+        final SharedFrame frame = createFrame(msgs);
+        try {
+            final ByteBuffer view = frame.view();
+            for (T target : targets) {
+                view.clear();
+                target.sendFrameTCP(frame, view);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    public void sendCachedBatchToAllTCP(Collection<? extends CachedMessage<? extends MessageToClient>> msgs) {
+        sendCachedBatchToAllTCP(msgs, this.connections);
     }
 
     public void sendToAllUDP(MessageToClient object, Iterable<T> targets) {
@@ -231,16 +360,15 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
         }
     }
 
+    /**
+     * Copies the message once into a shared off heap frame. Each target writes what its socket will take straight from the
+     * frame and queues a reference to the rest, so the cost per target doesn't grow with the size of the message.
+     * Targets that compress are sent the message's compressed form instead, also copied once, if it has one.
+     *
+     * @see CachedMessageFactory#createCompressed(com.esotericsoftware.kryonet.network.messages.Message)
+     */
     public void sendToAllTCP(CachedMessage<? extends MessageToClient> msg, Iterable<T> targets) {
-        final byte[] raw = msg.cached;
-        final int offset = msg.start;
-        final int length = msg.length;
-        ByteBuffer buffer = ByteBuffer.wrap(raw, offset, length);
-
-        for (T target : targets) {
-            target.sendBytesTCP(buffer, length);
-            buffer.position(offset);
-        }
+        broadcastTCP(msg, targets, -1, -1);
     }
 
     public void sendToAllUDP(CachedMessage<? extends MessageToClient> msg, Iterable<T> targets) {
@@ -259,6 +387,58 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
         sendToAllTCP(msg, this.connections);
     }
 
+    /**
+     * Serializes the message once, then sends it to each target as a patch to the last message sent to that target with
+     * the same key, or whole.
+     *
+     * @see Connection#sendDeltaTCP(int, com.esotericsoftware.kryonet.network.messages.Message)
+     */
+    public void sendDeltaToAllTCP(int key, MessageToClient msg, Iterable<T> targets) {
+        final CachedMessage<MessageToClient> raw = cachedMessageFactory.createTemp(msg);
+        final ByteBuffer image = ByteBuffer.wrap(raw.cached, raw.start, raw.length);
+        for (T target : targets)
+            target.sendDeltaBytesTCP(key, image);
+    }
+
+    public void sendDeltaToAllTCP(int key, MessageToClient msg) {
+        sendDeltaToAllTCP(key, msg, this.connections);
+    }
+
+    /**
+     * Serializes the query once and sends it to every target under one ID. The future completes with the responses once
+     * every target answered or was closed, once the quorum answered, or with whatever answered by the timeout, whichever
+     * comes first. The whole query has one timeout, however many targets it was sent to. Responses arriving after the
+     * results are complete are ignored.
+     *
+     * @param quorum The number of responses to wait for. If it is more than the number of targets, waits for all of them.
+     * @param timeout How long to wait for responses, or null to wait until every target answered or was closed.
+     */
+    public <R> CompletableFuture<QueryResults<T, R>> sendQueryToAll(QueryToClient<R> query, Iterable<T> targets, int quorum,
+                                                                    @Nullable Duration timeout) {
+        if (quorum <= 0) throw new IllegalArgumentException("quorum must be positive: " + quorum);
+        final ScatterGather<T, R> gather = new ScatterGather<>(quorum);
+        query.id = nextSharedQueryID.updateAndGet(id -> id == Integer.MIN_VALUE ? -1 : id - 1);
+        final CachedMessage<QueryToClient<R>> raw = cachedMessageFactory.createTemp(query);
+
+        final List<T> sendTo = new ArrayList<>();
+        for (T target : targets) {
+            final ScatterGather.Part<R> part = gather.addTarget(target);
+            if (target.addSharedQuery(query.id, part))
+                sendTo.add(target);
+            else
+                part.completeExceptionally(new KryoNetException(target + " is not connected."));
+        }
+        broadcastTCP(raw, sendTo, -1, compressionThreshold);
+        if (timeout != null) gather.setTimeout(timeout);
+        gather.sent();
+        return gather;
+    }
+
+    /** Sends the query to every connection, completing once all of them answered or were closed, or at the timeout. */
+    public <R> CompletableFuture<QueryResults<T, R>> sendQueryToAll(QueryToClient<R> query, @Nullable Duration timeout) {
+        return sendQueryToAll(query, this.connections, Integer.MAX_VALUE, timeout);
+    }
+
     public void sendToAllTCP(CachedMessage<? extends MessageToClient> msg) {
         sendToAllTCP(msg, this.connections);
     }
@@ -280,7 +460,7 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
     }
 
     public void sendToAllOthersTCP(int connectionID, MessageToClient object) {
-        sendToAllOthersTCP(connectionID, cachedMessageFactory.createTemp(object));
+        broadcastTCP(cachedMessageFactory.createTemp(object), this.connections, connectionID, compressionThreshold);
     }
 
     public void sendToAllOthersUDP(int connectionID, MessageToClient object) {
@@ -296,17 +476,123 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
     }
 
     public void sendToAllOthersTCP(int connectionID, CachedMessage<? extends MessageToClient> msg) {
-        final byte[] buffer = msg.cached;
-        final int length = msg.length;
-        final int offset = msg.start;
-        ByteBuffer raw = ByteBuffer.wrap(buffer, offset, length);
+        broadcastTCP(msg, this.connections, connectionID, -1);
+    }
 
-        final List<T> connections = this.connections;
-        for (T target : connections) {
-            if (target.getID() != connectionID) {
-                target.sendBytesTCP(raw, length);
-                raw.position(offset);
+    /**
+     * Sends the message to every target except the one with the excluded ID. The frame for targets that don't compress
+     * and the compressed frame for those that do are each built once, when the first target needing it is reached.
+     *
+     * @param threshold Messages without a compressed form are compressed if they are at least this many bytes, or -1.
+     */
+    private void broadcastTCP(CachedMessage<?> msg, Iterable<T> targets, int excludedID, int threshold) {
+        SharedFrame frame = null, compressed = null;
+        ByteBuffer view = null, compressedView = null;
+        boolean compressionTried = false;
+        try {
+            for (T target : targets) {
+                if (target.getID() == excludedID) continue;
+                if (target.isCompressing()) {
+                    if (!compressionTried) {
+                        compressionTried = true;
+                        compressed = createCompressedFrame(msg, threshold);
+                        if (compressed != null) compressedView = compressed.view();
+                    }
+                    if (compressed != null) {
+                        compressedView.clear();
+                        target.sendFrameTCP(compressed, compressedView);
+                        continue;
+                    }
+                }
+                if (frame == null) {
+                    frame = createFrame(msg);
+                    view = frame.view();
+                }
+                view.clear();
+                target.sendFrameTCP(frame, view);
+            }
+        } finally {
+            if (frame != null) frame.release();
+            if (compressed != null) compressed.release();
+        }
+    }
+
+    private SharedFrame createFrame(CachedMessage<?> msg) {
+        return SharedFrame.wrap(ByteBuffer.wrap(msg.cached, msg.start, msg.length), lengthLength, writePool);
+    }
+
+    /** Returns a frame holding the message compressed, or null if it has no compressed form and shouldn't be compressed. */
+    private SharedFrame createCompressedFrame(CachedMessage<?> msg, int threshold) {
+        if (msg.compressed != null)
+            return SharedFrame.wrapCompressed(ByteBuffer.wrap(msg.compressed), lengthLength, writePool);
+        if (threshold == -1 || msg.length < threshold) return null;
+        final ByteBuffer compressed = FrameCompression.deflate(ByteBuffer.wrap(msg.cached, msg.start, msg.length), null, messagePool);
+        if (compressed == null) return null;
+        try {
+            return SharedFrame.wrapCompressed(compressed, lengthLength, writePool);
+        } finally {
+            messagePool.release(compressed);
+        }
+    }
+
+    private SharedFrame createFrame(Collection<? extends CachedMessage<?>> msgs) {
+        final ByteBuffer[] payloads = new ByteBuffer[msgs.size()];
+        int i = 0;
+        for (CachedMessage<?> msg : msgs)
+            payloads[i++] = ByteBuffer.wrap(msg.cached, msg.start, msg.length);
+        return SharedFrame.wrap(payloads, lengthLength, writePool);
+    }
+
+    /**
+     * Marks a type as forwardable: TCP messages of this type received from a client are sent on to every other client as
+     * they were received, without being deserialized, reserialized or passed to listeners. Every client must register
+     * the type with the same ID as the server.
+     *
+     * @see #addRelay(Class, Function)
+     */
+    public void addRelay(Class<? extends BidirectionalMessage> type) {
+        addRelay(type, sender -> connections);
+    }
+
+    /**
+     * Marks a type as forwardable to the connections chosen for each sender, such as the members of its party. The
+     * sender is skipped if it is among them. The function is invoked on the thread that read the message.
+     *
+     * @see #addRawListener(Class, com.esotericsoftware.kryonet.adapters.RawListener)
+     */
+    public void addRelay(Class<? extends BidirectionalMessage> type, Function<? super T, ? extends Iterable<T>> recipients) {
+        if (recipients == null) throw new IllegalArgumentException("recipients cannot be null.");
+        addRawListener(type, (sender, frame) -> {
+            relay(sender, frame, recipients.apply(sender));
+            return true;
+        });
+    }
+
+    public void removeRelay(Class<? extends BidirectionalMessage> type) {
+        removeRawListener(type);
+    }
+
+    /** Copies a received frame into the write queue of each target but the sender. */
+    private void relay(T sender, RawFrame frame, Iterable<T> targets) {
+        if (DEBUG) debug(TAG, sender + " relaying: " + frame);
+        if (frame.length() > objectBufferSize) {
+            // Arrived in fragments, so has to be fragmented again for each target.
+            for (T target : targets) {
+                if (target != sender) target.sendBytesTCP(frame.payload(), frame.length());
+            }
+            return;
+        }
+        final SharedFrame shared = SharedFrame.wrap(frame.payload(), lengthLength, writePool);
+        try {
+            final ByteBuffer view = shared.view();
+            for (T target : targets) {
+                if (target != sender) {
+                    view.clear();
+                    target.sendFrameTCP(shared, view);
+                }
             }
+        } finally {
+            shared.release();
         }
     }
 
@@ -338,6 +624,14 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
         return Collections.unmodifiableList(connections);
     }
 
+    /**
+     * Returns the active connection with the specified {@link Connection#getID() ID}, or null if there is none.
+     * This method is thread safe.
+     */
+    public T getConnection(int connectionID) {
+        return connectionsByID.get(connectionID);
+    }
+
     protected String getTag() {
         return "KryoServer";
     }
@@ -356,15 +650,7 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
         if (TRACE) trace(TAG, "Server thread stopped.");
     }
 
-    private void keepAlive() {
-        long time = System.currentTimeMillis();
-        final List<T> connections = this.connections;
-        for (T connection : connections) {
-            if (connection.tcp.needsKeepAlive(time)) connection.sendObjectTCP(FrameworkMessage.keepAlive);
-        }
-    }
-
-    private void handleTCP(Object object, T fromConnection) {
+    private void handleTCP(Object object, int typeId, T fromConnection) {
         if (object instanceof FrameworkMessage) {
             if (TRACE) {
                 trace(TAG, fromConnection + " received: " + object.getClass().getSimpleName());
@@ -372,6 +658,20 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
 
             if (object instanceof FrameworkMessage.Ping) {
                 fromConnection.acceptPing((FrameworkMessage.Ping) object);
+            } else if (object instanceof FrameworkMessage.StreamCredit) {
+                fromConnection.acceptStreamCredit((FrameworkMessage.StreamCredit) object);
+            } else if (object instanceof FrameworkMessage.StreamEnd) {
+                fromConnection.acceptStreamEnd((FrameworkMessage.StreamEnd) object);
+            } else if (object instanceof FrameworkMessage.CancelQuery) {
+                fromConnection.acceptCancelQuery((FrameworkMessage.CancelQuery) object);
+            } else if (object instanceof RegisterTCP && ((RegisterTCP) object).compression) {
+                // The client agreed to compression, which it only does if the server offered it.
+                final int threshold = compressionThreshold;
+                if (threshold != -1) {
+                    final long dictionaries = ((RegisterTCP) object).dictionaries & compressionDictionaryIds();
+                    fromConnection.tcp.compressionDictionary = highestCompressionDictionary(dictionaries);
+                    fromConnection.tcp.compressionThreshold = threshold;
+                }
             }
 
             return;  // Don't expose framework objects to user.
@@ -388,39 +688,47 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
             fromConnection.accept((Response) object);
             return;
         } else if (object instanceof QueryToServer) {
-            ((Query) object).setOrigin(fromConnection);
+            fromConnection.receiveQuery((Query) object);
         }
 
         final List<Listener<? super T>> listeners = AbstractServer.this.listeners;
 
         for (Listener<? super T> listener : listeners)
-            listener.received(fromConnection, object);
+            listener.received(fromConnection, object, typeId);
 
     }
 
-    private void acceptOperation(SocketChannel socketChannel) {
+    private void acceptOperation(SocketChannel socketChannel, Reactor owner) {
         T connection = newConnection();
-        connection.initialize(serializer, dispatchListener, writeBufferSize, objectBufferSize);
+        connection.initialize(serializer, owner.clock, writePool, messagePool, dispatchListener, writeBufferSize, objectBufferSize);
         connection.endPoint = this;
         UdpConnection udp = this.udp;
         if (udp != null) connection.udp = udp;
         try {
-            SelectionKey selectionKey = connection.tcp.accept(selector, socketChannel);
+            SelectionKey selectionKey = connection.tcp.accept(owner.wakeup, socketChannel);
             selectionKey.attach(connection);
 
-            int id = ++nextConnectionID;
-            if (nextConnectionID == -1) nextConnectionID = 1;
+            int id = nextConnectionID.incrementAndGet();
+            if (id == -1) nextConnectionID.compareAndSet(-1, 1);
             connection.id = id;
             connection.setConnected(true);
 
+            owner.connections.add(connection);
+            connection.timerUpdates = owner.timerUpdates;
+            connection.timer = owner.timers.schedule(connection, connection.tcp.nextDeadline(owner.clock.millis()));
 
-            if (udp == null)
+            if (udp == null) {
                 addConnection(connection);
-            else
-                pendingConnections.put(id, connection);
+            } else {
+                synchronized (pendingConnections) {
+                    pendingConnections.put(id, connection);
+                }
+            }
 
             RegisterTCP registerConnection = new RegisterTCP();
             registerConnection.connectionID = id;
+            registerConnection.compression = compressionThreshold != -1;
+            if (registerConnection.compression) registerConnection.dictionaries = compressionDictionaryIds();
             connection.sendObjectTCP(registerConnection);
 
             if (udp == null) connection.notifyConnected();
@@ -430,16 +738,39 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
         }
     }
 
+    /** Hands a newly accepted channel to the least loaded reactor, or accepts it on the update thread if there are none. */
+    private void dispatchAccept(SocketChannel socketChannel) {
+        final Reactor[] reactors = this.reactors;
+        if (reactors.length == 0) {
+            acceptOperation(socketChannel, updateReactor);
+            return;
+        }
+
+        Reactor target = reactors[0];
+        for (int i = 1; i < reactors.length; ++i) {
+            if (reactors[i].load() < target.load()) target = reactors[i];
+        }
+        target.enqueue(socketChannel);
+    }
+
     private void handleUDP(Object object, T fromConnection, InetSocketAddress fromAddress) {
         if (object instanceof FrameworkMessage) {
             if (object instanceof FrameworkMessage.RegisterUDP) {
                 // Store the fromAddress on the connection and reply over TCP with a RegisterUDP to indicate success.
                 int fromConnectionID = ((FrameworkMessage.RegisterUDP) object).connectionID;
-                T connection = pendingConnections.remove(fromConnectionID);
+                T connection;
+                synchronized (pendingConnections) {
+                    connection = pendingConnections.remove(fromConnectionID);
+                }
                 if (connection != null) {
                     if (connection.udpRemoteAddress == null) {
                         connection.udpRemoteAddress = fromAddress;
+                        connectionsByUdpAddress.put(fromAddress, connection);
                         addConnection(connection);
+                        if (!connection.isConnected) { // Closed by another thread while registering.
+                            removeConnection(connection);
+                            return;
+                        }
                         connection.sendObjectTCP(new FrameworkMessage.RegisterUDP());
                         if (DEBUG)
                             debug(TAG, "Port " + udp.datagramChannel.socket().getLocalPort() + "/UDP connected to: " + fromAddress);
@@ -459,8 +790,9 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
         } else if (fromConnection != null) {
             final List<Listener<? super T>> listeners = AbstractServer.this.listeners;
 
+            final int typeId = udp.typeId;
             for (Listener<? super T> listener : listeners)
-                listener.received(fromConnection, object);
+                listener.received(fromConnection, object, typeId);
         } else {
             if (DEBUG) debug(TAG, "Ignoring UDP from unregistered address: " + fromAddress);
         }
@@ -474,12 +806,37 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
 
     private void addConnection(T connection) {
         connections.add(connection);
+        connectionsByID.put(connection.id, connection);
     }
 
     public void start() {
         new Thread(this, "Server").start();
     }
 
+    private void startReactors() throws IOException {
+        final Reactor[] reactors = new AbstractServer.Reactor[reactorCount];
+        try {
+            for (int i = 0; i < reactors.length; ++i)
+                reactors[i] = new Reactor(i);
+        } catch (IOException ex) {
+            for (Reactor reactor : reactors) {
+                if (reactor != null) reactor.selector.close();
+            }
+            throw ex;
+        }
+        for (Reactor reactor : reactors)
+            reactor.start();
+        this.reactors = reactors;
+        if (DEBUG && reactors.length > 0) debug(TAG, "Started " + reactors.length + " reactor threads.");
+    }
+
+    private void stopReactors() {
+        final Reactor[] reactors = this.reactors;
+        this.reactors = new AbstractServer.Reactor[0];
+        for (Reactor reactor : reactors)
+            reactor.stop();
+    }
+
     public void stop() {
         if (shutdown) return;
         close();
@@ -496,6 +853,8 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
         for (T t : connections)
             t.close();
         connections.clear();
+        connectionsByID.clear();
+        connectionsByUdpAddress.clear();
 
         ServerSocketChannel serverChannel = this.serverChannel;
         if (serverChannel != null) {
@@ -514,12 +873,15 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
             this.udp = null;
         }
 
+        stopReactors();
+
         synchronized (updateLock) { // Blocks to avoid a select while the selector is used to bind the server connection.
         }
         // Select one last time to complete closing the socket.
         selector.wakeup();
         try {
             selector.selectNow();
+            selectorWakeup.selected();
         } catch (IOException ignored) {
         }
     }
@@ -537,7 +899,6 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
             synchronized (keys) {
                 UdpConnection udp = this.udp;
                 for (Iterator<SelectionKey> iter = keys.iterator(); iter.hasNext(); ) {
-                    keepAlive();
                     SelectionKey selectionKey = iter.next();
                     iter.remove();
                     T fromConnection = classTag.cast(selectionKey.attachment());
@@ -545,41 +906,7 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
                         final int ops = selectionKey.readyOps();
 
                         if (fromConnection != null) { // Must be a TCP read or write operation.
-                            if (udp != null && fromConnection.udpRemoteAddress == null) {
-                                fromConnection.close();
-                                continue;
-                            }
-                            if ((ops & SelectionKey.OP_READ) == SelectionKey.OP_READ) {
-                                try {
-                                    while (true) {
-                                        Object object = fromConnection.tcp.readObject();
-                                        if (object == null) break;
-                                        handleTCP(object, fromConnection);
-                                    }
-                                } catch (IOException ex) {
-                                    if (TRACE) {
-                                        trace(TAG, "Unable to read TCP from: " + fromConnection, ex);
-                                    } else if (DEBUG) {
-                                        debug(TAG, fromConnection + " update: " + ex.getMessage());
-                                    }
-                                    fromConnection.close();
-                                } catch (KryoNetException ex) {
-                                    if (ERROR) error(TAG, "Error reading TCP from connection: " + fromConnection, ex);
-                                    fromConnection.close();
-                                }
-                            }
-                            if ((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE) {
-                                try {
-                                    fromConnection.tcp.writeOperation();
-                                } catch (IOException ex) {
-                                    if (TRACE) {
-                                        trace(TAG, "Unable to write TCP to connection: " + fromConnection, ex);
-                                    } else if (DEBUG) {
-                                        debug(TAG, fromConnection + " update: " + ex.getMessage());
-                                    }
-                                    fromConnection.close();
-                                }
-                            }
+                            processTCP(fromConnection, ops, udp);
                             continue;
                         }
 
@@ -588,7 +915,7 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
                             if (serverChannel == null) continue;
                             try {
                                 SocketChannel socketChannel = serverChannel.accept();
-                                if (socketChannel != null) acceptOperation(socketChannel);
+                                if (socketChannel != null) dispatchAccept(socketChannel);
                             } catch (IOException ex) {
                                 if (DEBUG) debug(TAG, "Unable to accept new connection.", ex);
                             }
@@ -609,13 +936,7 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
                         }
                         if (fromAddress == null) continue;
 
-                        List<T> connections = this.connections;
-                        for (T connection : connections) {
-                            if (fromAddress.equals(connection.udpRemoteAddress)) {
-                                fromConnection = connection;
-                                break;
-                            }
-                        }
+                        fromConnection = connectionsByUdpAddress.get(fromAddress);
 
                         Object object;
                         try {
@@ -639,17 +960,57 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
                 }
             }
         }
-        long time = System.currentTimeMillis();
-        List<T> connections = this.connections;
-        for (Connection connection : connections) {
-            if (connection.tcp.isTimedOut(time)) {
-                if (DEBUG)
-                    debug(TAG, connection + " timed out.");
-                connection.close();
-            } else {
-                if (connection.tcp.needsKeepAlive(time)) connection.sendObjectTCP(FrameworkMessage.keepAlive);
+        if (reactors.length == 0) updateReactor.updateConnections();
+    }
+
+    /** Reads and writes any pending TCP data for a connection whose key was selected. */
+    private void processTCP(T fromConnection, int ops, UdpConnection udp) {
+        if (udp != null && fromConnection.udpRemoteAddress == null) {
+            fromConnection.close();
+            return;
+        }
+        if ((ops & SelectionKey.OP_READ) == SelectionKey.OP_READ) {
+            try {
+                // Everything the handlers send while this batch of frames is read goes out in one write.
+                fromConnection.tcp.cork();
+                try {
+                    while (true) {
+                        Object object = fromConnection.tcp.readObject();
+                        if (object == null) break;
+                        if (object instanceof RawFrame) {
+                            if (receivedRaw(fromConnection, (RawFrame) object)) continue;
+                            object = ((RawFrame) object).decode();
+                        }
+                        handleTCP(object, fromConnection.tcp.typeId, fromConnection);
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    fromConnection.tcp.uncork(ex);
+                    throw ex;
+                }
+                fromConnection.tcp.uncork();
+            } catch (IOException ex) {
+                if (TRACE) {
+                    trace(TAG, "Unable to read TCP from: " + fromConnection, ex);
+                } else if (DEBUG) {
+                    debug(TAG, fromConnection + " update: " + ex.getMessage());
+                }
+                fromConnection.close();
+            } catch (KryoNetException ex) {
+                if (ERROR) error(TAG, "Error reading TCP from connection: " + fromConnection, ex);
+                fromConnection.close();
+            }
+        }
+        if ((ops & SelectionKey.OP_WRITE) == SelectionKey.OP_WRITE) {
+            try {
+                fromConnection.tcp.writeOperation();
+            } catch (IOException ex) {
+                if (TRACE) {
+                    trace(TAG, "Unable to write TCP to connection: " + fromConnection, ex);
+                } else if (DEBUG) {
+                    debug(TAG, fromConnection + " update: " + ex.getMessage());
+                }
+                fromConnection.close();
             }
-            if (connection.isIdle()) dispatchListener.onIdle(connection);
         }
     }
 
@@ -666,4 +1027,145 @@ public abstract class AbstractServer<T extends ClientConnection> extends EndPoin
     public void sendToAll(MessageToClient msg) {
         sendToAll(msg, this.connections);
     }
+
+
+    /**
+     * A worker event loop with its own selector. Accepted channels are handed to a reactor by the update thread and
+     * registered with the reactor's selector on the reactor's own thread.
+     * <p>
+     * Keep alive and timeout deadlines of the reactor's connections are kept in a timer wheel, so each update only
+     * touches the connections whose deadline has passed. The update thread uses a reactor that is never started to
+     * hold the same state when no reactors are in use.
+     */
+    private final class Reactor implements Runnable {
+        final List<T> connections = new CopyOnWriteArrayList<>();
+        private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Selector selector;
+        private final SelectorWakeup wakeup;
+        private final CoarseClock clock;
+        private final TimerWheel<Connection> timers;
+        /** Connections whose keep alive or timeout was changed and need their deadline recomputed. */
+        private final Queue<Connection> timerUpdates = new ConcurrentLinkedQueue<>();
+        private final int index;
+        private Thread thread;
+        private volatile boolean shutdown;
+        private int emptySelects;
+
+        Reactor(int index) throws IOException {
+            this(index, new SelectorWakeup(Selector.open()), new CoarseClock());
+        }
+
+        Reactor(int index, SelectorWakeup wakeup, CoarseClock clock) {
+            this.index = index;
+            this.selector = wakeup.selector();
+            this.wakeup = wakeup;
+            this.clock = clock;
+            this.timers = new TimerWheel<>(TIMER_WHEEL_SIZE, TIMER_TICK_MILLIS, clock.millis());
+        }
+
+        void start() {
+            thread = new Thread(this, "Server Reactor " + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() {
+            shutdown = true;
+            selector.wakeup();
+        }
+
+        /** The number of connections owned by this reactor, including any accepted channels not yet registered. */
+        int load() {
+            return connections.size() + queued.get();
+        }
+
+        void enqueue(SocketChannel socketChannel) {
+            queued.incrementAndGet();
+            accepted.add(socketChannel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            if (TRACE) trace(TAG, "Reactor " + index + " started.");
+            try {
+                while (!shutdown) {
+                    try {
+                        update(250);
+                    } catch (IOException ex) {
+                        if (ERROR) error(TAG, "Error updating reactor " + index + " connections.", ex);
+                    }
+                }
+            } finally {
+                for (SocketChannel socketChannel; (socketChannel = accepted.poll()) != null; ) {
+                    ProtocolUtils.close(socketChannel, null);
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+            if (TRACE) trace(TAG, "Reactor " + index + " stopped.");
+        }
+
+        private void update(int timeout) throws IOException {
+            for (SocketChannel socketChannel; (socketChannel = accepted.poll()) != null; ) {
+                acceptOperation(socketChannel, this);
+                queued.decrementAndGet();
+            }
+
+            if (select(timeout)) {
+                Set<SelectionKey> keys = selector.selectedKeys();
+                UdpConnection udp = AbstractServer.this.udp;
+                for (Iterator<SelectionKey> iter = keys.iterator(); iter.hasNext(); ) {
+                    SelectionKey selectionKey = iter.next();
+                    iter.remove();
+                    T fromConnection = classTag.cast(selectionKey.attachment());
+                    try {
+                        processTCP(fromConnection, selectionKey.readyOps(), udp);
+                    } catch (CancelledKeyException ex) {
+                        fromConnection.close();
+                    }
+                }
+            }
+            updateConnections();
+        }
+
+        /** Fires expired keep alive and timeout deadlines, then fires idle events for registered connections. */
+        void updateConnections() {
+            final long time = clock.millis();
+            for (Connection connection; (connection = timerUpdates.poll()) != null; ) {
+                if (connection.isConnected) timers.schedule(connection.timer, connection.tcp.nextDeadline(time));
+            }
+            timers.advance(time, UPDATE_TIMERS);
+
+            final UdpConnection udp = AbstractServer.this.udp;
+            for (T connection : connections) {
+                if (udp != null && connection.udpRemoteAddress == null) continue;
+                if (connection.isIdle()) dispatchListener.onIdle(connection);
+            }
+        }
+
+        private boolean select(int timeout) throws IOException {
+            long startTime = System.currentTimeMillis();
+            final int select = selector.select(timeout);
+            wakeup.selected();
+            clock.update();
+            if (select > 0) {
+                emptySelects = 0;
+                return true;
+            }
+            if (++emptySelects == 100) {
+                emptySelects = 0;
+                // NIO freaks and returns immediately with 0 sometimes, so try to keep from hogging the CPU.
+                long elapsedTime = System.currentTimeMillis() - startTime;
+                try {
+                    if (elapsedTime < 25) Thread.sleep(25 - elapsedTime);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            return false;
+        }
+    }
 }
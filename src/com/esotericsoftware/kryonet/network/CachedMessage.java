@@ -6,6 +6,8 @@ package com.esotericsoftware.kryonet.network;
  * CachedMessageFactory created by the server/client
  *
  * <p>See {@link EndPoint#getCachedMessageFactory()} for creating CachedMessages
+ * <p>A message created with {@link CachedMessageFactory#createCompressed} also holds a compressed form, which is sent
+ * as it is to connections that compress, so a broadcast is only compressed once.
  * Created by Evan on 7/14/16.
  */
 public final class CachedMessage<T> {
@@ -14,12 +16,24 @@ public final class CachedMessage<T> {
     public final byte[] cached;
     public final boolean isReliable;
     public final int length;
+    /** The message compressed by {@link FrameCompression}, or null. */
+    final byte[] compressed;
 
     CachedMessage(byte[] src, int start, int end, boolean isReliable){
+        this(src, start, end, isReliable, null);
+    }
+
+    CachedMessage(byte[] src, int start, int end, boolean isReliable, byte[] compressed){
         this.cached = src;
         this.start = start;
         this.length = end - start;
         this.isReliable = isReliable;
+        this.compressed = compressed;
+    }
+
+    /** Returns true if this message also holds a compressed form, for connections that compress. */
+    public boolean isCompressed(){
+        return compressed != null;
     }
 
 }
@@ -59,4 +59,24 @@ public class CachedMessageFactory {
 
         return new CachedMessage<T>(bytes, 0, bytes.length, msg.isReliable());
     }
+
+    /**
+     * Creates a pre-serialized form of a message that also holds its compressed form. Sending it over TCP to a
+     * connection that compresses sends the compressed form as it is, so a message broadcast to many connections is
+     * compressed once rather than for each of them. If compressing wouldn't make the message any smaller, only the
+     * serialized form is kept.
+     *
+     * @see EndPoint#setCompressionThreshold(int)
+     */
+    public <T extends Message> CachedMessage<T> createCompressed(T msg){
+        return compress(create(msg));
+    }
+
+    /** Returns a message with the same serialized form as msg, plus its compressed form if that is any smaller. */
+    <T> CachedMessage<T> compress(CachedMessage<T> msg){
+        if (msg.compressed != null) return msg;
+        final byte[] compressed = FrameCompression.deflate(msg.cached, msg.start, msg.length);
+        if (compressed == null) return msg;
+        return new CachedMessage<>(msg.cached, msg.start, msg.start + msg.length, msg.isReliable, compressed);
+    }
 }
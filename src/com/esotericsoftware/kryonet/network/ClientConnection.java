@@ -2,6 +2,7 @@ package com.esotericsoftware.kryonet.network;
 
 import com.esotericsoftware.kryonet.network.messages.MessageToClient;
 import com.esotericsoftware.kryonet.network.messages.QueryToClient;
+import com.esotericsoftware.kryonet.network.messages.StreamQueryToClient;
 import java.time.Duration;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -67,4 +68,26 @@ public class ClientConnection extends Connection<MessageToClient> {
     public <T> CompletableFuture<T> sendAsync(QueryToClient<T> query) {
         return super.sendAsync(query);
     }
+
+    /**
+     * Sends a stream query to the client, whose responses are taken from the returned stream as they arrive. The
+     * client sends at most window responses before any are taken, then more as they are, so neither end holds more than
+     * the window.
+     *
+     * @param timeout The stream is cancelled if no response arrives for this long. If timeout is null, it waits until
+     *                the stream ends or the connection closes.
+     */
+    public <T> QueryStream<T> sendStream(StreamQueryToClient<T> query, int window, @Nullable Duration timeout) {
+        query.window = window;
+        return super.sendStream(query, window, timeout);
+    }
+
+    /**
+     * Sends a stream query to the client, cancelling the stream if no response arrives within {@link Query#getTimeout()}.
+     *
+     * @see #sendStream(StreamQueryToClient, int, Duration)
+     */
+    public <T> QueryStream<T> sendStream(StreamQueryToClient<T> query, int window) {
+        return sendStream(query, window, query.getTimeout());
+    }
 }
@@ -0,0 +1,160 @@
+package com.esotericsoftware.kryonet.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A preset dictionary for compressing TCP messages, made of byte sequences common to the serialized messages an
+ * application sends. Deflate finds the repeats in a small message only within that message, so most messages of a few
+ * hundred bytes barely compress. With a dictionary it also finds them in the dictionary, so the field layouts, type IDs
+ * and strings messages have in common are sent as short references.
+ * <p>
+ * Dictionaries are registered with {@link EndPoint#addCompressionDictionary(CompressionDictionary)}. A connection
+ * compresses with the dictionary of the highest ID registered at both ends, and each compressed frame names the ID of
+ * the dictionary it used. As with Kryo registrations, both ends must register the same bytes under each ID.
+ * <p>
+ * {@link #train(int, Collection, int)} builds a dictionary from sample messages, for instance cached with
+ * {@link CachedMessageFactory#create}. The {@link #getBytes() bytes} can be saved and shipped with the client.
+ */
+public final class CompressionDictionary {
+    /** IDs are sent as one byte, and negotiated as bits of a long. */
+    public static final int MAX_ID = 63;
+    /** Deflate only refers back this far, so any more of a dictionary is never used. */
+    public static final int MAX_SIZE = 32 * 1024;
+    /** The shortest sequence the trainer looks for, long enough that a reference to it saves bytes. */
+    private static final int WINDOW = 8;
+
+    private final int id;
+    private final byte[] bytes;
+
+    /** @param bytes The dictionary, with the most useful sequences last since deflate's references to them are shorter. */
+    public CompressionDictionary(int id, byte[] bytes) {
+        if (id < 0 || id > MAX_ID) throw new IllegalArgumentException("id must be from 0 to " + MAX_ID + ": " + id);
+        if (bytes.length == 0 || bytes.length > MAX_SIZE)
+            throw new IllegalArgumentException("Dictionary must be from 1 to " + MAX_SIZE + " bytes: " + bytes.length);
+        this.id = id;
+        this.bytes = bytes.clone();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /** Returns a copy of the dictionary's bytes. */
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    /** The bytes, not copied, for the deflater and inflater. */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * Builds a dictionary from sample messages. Every sequence of {@value #WINDOW} or more bytes found in enough of the
+     * samples is a candidate, and the candidates occurring most often for their length are kept until the dictionary
+     * is full. Samples should be a few hundred or more messages of the kinds and in the proportions the application
+     * sends.
+     *
+     * @param size The most bytes in the dictionary. Small dictionaries compress faster, as deflate indexes the whole
+     *             dictionary for each message; a few kilobytes is plenty for most applications.
+     * @throws IllegalArgumentException if the samples have nothing in common.
+     */
+    public static CompressionDictionary train(int id, Collection<? extends CachedMessage<?>> samples, int size) {
+        if (size <= 0 || size > MAX_SIZE) throw new IllegalArgumentException("size must be from 1 to " + MAX_SIZE + ": " + size);
+        if (samples.size() < 2) throw new IllegalArgumentException("At least 2 samples are needed: " + samples.size());
+
+        // The number of samples each window appears in, and the last sample it was counted for.
+        final Map<Long, int[]> windows = new HashMap<>();
+        int sample = 0;
+        for (CachedMessage<?> msg : samples) {
+            ++sample;
+            for (int i = msg.start, end = msg.start + msg.length - WINDOW; i <= end; ++i) {
+                final int[] count = windows.computeIfAbsent(window(msg.cached, i), key -> new int[2]);
+                if (count[1] != sample) {
+                    ++count[0];
+                    count[1] = sample;
+                }
+            }
+        }
+
+        // Join the common windows of each sample into the longest runs they cover, and count the samples with each run.
+        final int minSamples = Math.max(2, samples.size() / 16);
+        final Map<ByteBuffer, Integer> runs = new LinkedHashMap<>();
+        for (CachedMessage<?> msg : samples) {
+            final boolean[] common = new boolean[msg.length];
+            for (int i = 0; i <= msg.length - WINDOW; ++i) {
+                if (windows.get(window(msg.cached, msg.start + i))[0] >= minSamples) {
+                    for (int j = i; j < i + WINDOW; ++j)
+                        common[j] = true;
+                }
+            }
+            for (int i = 0; i < msg.length; ) {
+                if (!common[i]) {
+                    ++i;
+                    continue;
+                }
+                int end = i;
+                while (end < msg.length && common[end])
+                    ++end;
+                final byte[] run = new byte[end - i];
+                System.arraycopy(msg.cached, msg.start + i, run, 0, run.length);
+                runs.merge(ByteBuffer.wrap(run), 1, Integer::sum);
+                i = end;
+            }
+        }
+
+        final List<Map.Entry<ByteBuffer, Integer>> candidates = new ArrayList<>(runs.entrySet());
+        candidates.sort((a, b) -> Long.compare(
+            (long) b.getValue() * b.getKey().remaining(), (long) a.getValue() * a.getKey().remaining()));
+        final List<byte[]> chosen = new ArrayList<>();
+        int length = 0;
+        for (Map.Entry<ByteBuffer, Integer> candidate : candidates) {
+            final byte[] run = candidate.getKey().array();
+            if (length + run.length > size || contains(chosen, run)) continue;
+            chosen.add(run);
+            length += run.length;
+        }
+        if (length == 0) throw new IllegalArgumentException("The samples have no sequences in common.");
+
+        // The most valuable runs go last, closest to the message.
+        final byte[] dictionary = new byte[length];
+        int position = 0;
+        for (int i = chosen.size() - 1; i >= 0; --i) {
+            final byte[] run = chosen.get(i);
+            System.arraycopy(run, 0, dictionary, position, run.length);
+            position += run.length;
+        }
+        return new CompressionDictionary(id, dictionary);
+    }
+
+    private static long window(byte[] bytes, int offset) {
+        long window = 0;
+        for (int i = 0; i < WINDOW; ++i)
+            window = window << 8 | bytes[offset + i] & 0xFF;
+        return window;
+    }
+
+    /** Returns true if one of the runs already contains the run. */
+    private static boolean contains(List<byte[]> runs, byte[] run) {
+        for (byte[] other : runs) {
+            outer:
+            for (int i = 0; i <= other.length - run.length; ++i) {
+                for (int j = 0; j < run.length; ++j) {
+                    if (other[i + j] != run[j]) continue outer;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -20,14 +20,19 @@
 package com.esotericsoftware.kryonet.network;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.util.IntMap;
 import com.esotericsoftware.kryonet.adapters.Listener;
-import com.esotericsoftware.kryonet.futures.TimedFuture;
 import com.esotericsoftware.kryonet.network.impl.Server;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.CancelQuery;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.Ping;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.StreamCredit;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.StreamEnd;
 import com.esotericsoftware.kryonet.network.messages.Message;
 import com.esotericsoftware.kryonet.serializers.Serialization;
+import com.esotericsoftware.kryonet.util.CoarseClock;
 import com.esotericsoftware.kryonet.util.KryoNetException;
+import com.esotericsoftware.kryonet.util.TimerWheel;
 import com.esotericsoftware.minlog.Log;
 import java.io.IOException;
 import java.net.InetSocketAddress;
@@ -37,11 +42,15 @@ import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -61,13 +70,13 @@ import static com.esotericsoftware.minlog.Log.trace;
  * @author Nathan Sweet <misc@n4te.com>
  */
 public class Connection<MSG extends Message> {
-    protected static final ConcurrentHashMap<Integer, CompletableFuture<?>> queries = new ConcurrentHashMap<>();
+    private static final int MIN_PRUNE_EARLY_CANCELS = 64;
 
     int id = -1;
     EndPoint endPoint;
     TcpConnection tcp;
     UdpConnection udp;
-    InetSocketAddress udpRemoteAddress;
+    volatile InetSocketAddress udpRemoteAddress;
     volatile boolean isConnected;
     volatile KryoNetException lastProtocolError;
     private String name;
@@ -75,26 +84,173 @@ public class Connection<MSG extends Message> {
     private long lastPingSendTime;
     private int returnTripTime;
     private Listener<Connection> listener;
+    private final PendingQueries queries = new PendingQueries(this);
+    private final StreamReplies streamReplies = new StreamReplies(this);
+    /**
+     * The received queries whose handlers asked whether they were cancelled and that haven't been answered, by ID. Queries
+     * a handler never asks about aren't held, so ignoring one doesn't pin it.
+     */
+    private final IntMap<Query<?, ?>> receivedQueries = new IntMap<>();
+    /**
+     * The IDs of received queries cancelled before their handlers asked, so one asking late still learns of it. Each is
+     * removed once its query is tracked or answered. Guarded by receivedQueries.
+     */
+    private final IntMap<Boolean> earlyCancels = new IntMap<>();
+    /** The size earlyCancels may reach before the entries of answered queries are pruned. Guarded by receivedQueries. */
+    private int pruneEarlyCancelsAt = MIN_PRUNE_EARLY_CANCELS;
+    /**
+     * The last received query answered, and the last of those the server sent to many connections, or 0 if none was.
+     * Senders assign IDs counting up, and shared IDs counting down, so a cancel for an ID not after these is taken to be
+     * for a query answered already, which is the usual race when its sender times out. Guarded by receivedQueries.
+     */
+    private int lastAnswered, lastAnsweredShared;
+    /** On the server, the entry of this connection in its update thread's timer wheel and where to request it be moved. */
+    TimerWheel.Entry<Connection> timer;
+    Queue<Connection> timerUpdates;
 
     protected Connection() {
     }
 
-    void initialize(Serialization serialization, Listener<Connection> handler, int writeBufferSize, int objectBufferSize) {
-        tcp = new TcpConnection(serialization, writeBufferSize, objectBufferSize);
+    void initialize(Serialization serialization, CoarseClock clock, BufferPool writePool, MessageBufferPool messagePool,
+                    Listener<Connection> handler, int writeBufferSize, int objectBufferSize) {
+        tcp = new TcpConnection(this, serialization, clock, writePool, messagePool, writeBufferSize, objectBufferSize);
         listener = handler;
     }
 
+    /**
+     * Closes the connection if it has timed out, otherwise sends a TCP keep alive if one is due.
+     *
+     * @return The next time this should be called, or -1 if the connection is closed.
+     */
+    long updateTimers(long time) {
+        if (!isConnected) return -1;
+        if (tcp.isTimedOut(time)) {
+            if (DEBUG) debug("kryonet", this + " timed out.");
+            close();
+            return -1;
+        }
+        if (tcp.needsKeepAlive(time)) sendObjectTCP(FrameworkMessage.keepAlive);
+        return tcp.nextDeadline(time);
+    }
+
 
-    @SuppressWarnings("unchecked")
-    <Q> void accept(Response<Q> response) {
-        final CompletableFuture<Q> future = (CompletableFuture<Q>) queries.remove(response.id);
+    void accept(Response<?> response) {
+        final PendingQuery<?> future = queries.take(response.id);
         if (future != null) {
-            future.complete(response.result);
+            future.accept(response.result);
         } else {
             Log.warn("Received query response, but could not find matching request: " + response);
         }
     }
 
+    void acceptStreamEnd(StreamEnd end) {
+        final PendingQuery<?> future = queries.remove(end.id);
+        if (future == null) {
+            Log.warn("Received the end of a stream, but could not find matching request: " + end.id);
+        } else if (end.error == null) {
+            future.complete(null);
+        } else {
+            future.completeExceptionally(new KryoNetException(this + " failed to stream the response: " + end.error));
+        }
+    }
+
+    void acceptStreamCredit(StreamCredit credit) {
+        streamReplies.grant(credit.id, credit.credits);
+    }
+
+    void replyStream(int id, Iterator<?> source, int window) {
+        streamReplies.start(id, source, window);
+    }
+
+    @SuppressWarnings("unchecked")
+    void receiveQuery(Query query) {
+        query.setOrigin(this);
+    }
+
+    /** Tracks the received query until it is answered, so it learns if its sender cancels it. */
+    void trackQuery(Query<?, ?> query) {
+        final boolean cancelled;
+        synchronized (receivedQueries) {
+            cancelled = !isConnected || takeEarlyCancel(query.id);
+            if (!cancelled) receivedQueries.put(query.id, query);
+        }
+        if (cancelled) query.cancelled();
+    }
+
+    /**
+     * Forgets the received query with the ID once it has been answered.
+     *
+     * @return False if its sender cancelled it already, so the answer needn't be sent.
+     */
+    boolean forgetQuery(int id) {
+        synchronized (receivedQueries) {
+            receivedQueries.remove(id);
+            if (id > 0) {
+                if (lastAnswered == 0 || isAfter(id, lastAnswered)) lastAnswered = id;
+            } else if (lastAnsweredShared == 0 || isAfter(id, lastAnsweredShared)) {
+                lastAnsweredShared = id;
+            }
+            return !takeEarlyCancel(id);
+        }
+    }
+
+    void acceptCancelQuery(CancelQuery cancel) {
+        final Query<?, ?> query;
+        synchronized (receivedQueries) {
+            query = receivedQueries.remove(cancel.id);
+            if (query == null && !isAnswered(cancel.id)) addEarlyCancel(cancel.id);
+        }
+        streamReplies.cancel(cancel.id);
+        if (query != null) query.cancelled();
+    }
+
+    /** Must hold receivedQueries. */
+    private void addEarlyCancel(int id) {
+        earlyCancels.put(id, Boolean.TRUE);
+        if (earlyCancels.size < pruneEarlyCancelsAt) return;
+        // Queries their handlers ignored leave their cancels behind until later queries are answered.
+        final IntMap.Keys ids = earlyCancels.keys();
+        while (ids.hasNext) {
+            if (isAnswered(ids.next())) ids.remove();
+        }
+        pruneEarlyCancelsAt = Math.max(MIN_PRUNE_EARLY_CANCELS, earlyCancels.size * 2);
+    }
+
+    /** Returns true if the query with the ID was cancelled before it was tracked. Must hold receivedQueries. */
+    private boolean takeEarlyCancel(int id) {
+        return earlyCancels.size > 0 && earlyCancels.remove(id) != null;
+    }
+
+    /** Returns true if the received query with the ID is taken to be answered. Must hold receivedQueries. */
+    private boolean isAnswered(int id) {
+        final int last = id > 0 ? lastAnswered : lastAnsweredShared;
+        return last != 0 && !isAfter(id, last);
+    }
+
+    /**
+     * Returns true if the sender assigned the query ID a after b, allowing for its counter wrapping around. Both are
+     * positive, or both are shared IDs, which count down.
+     */
+    private static boolean isAfter(int a, int b) {
+        final long distance = a > 0 ? (long) a - b : (long) b - a;
+        return distance > 0 ? distance < 1L << 30 : distance < -(1L << 30);
+    }
+
+    /** Returns the number of received queries tracked until they are answered or cancelled. */
+    int getTrackedQueries() {
+        synchronized (receivedQueries) {
+            return receivedQueries.size;
+        }
+    }
+
+    /** Tells the other end that a query sent to it was cancelled, so it can stop working on it. */
+    void sendCancelQuery(int id) {
+        if (!isConnected) return;
+        final CancelQuery cancel = new CancelQuery();
+        cancel.id = id;
+        sendObjectTCP(cancel);
+    }
+
     /**
      * Returns the server assigned ID. Will return -1 if this connection has never been onConnected or the last assigned ID if this
      * connection has been onDisconnected.
@@ -126,38 +282,61 @@ public class Connection<MSG extends Message> {
 
     public int send(CachedMessage<? extends MSG> msg) {
         final int length = msg.length;
-        ByteBuffer buffer = ByteBuffer.wrap(msg.cached, msg.start, length);
         if (msg.isReliable) {
-            sendBytesTCP(buffer, length);
+            sendTCP(msg);
         } else {
-            sendBytesUDP(buffer);
+            sendBytesUDP(ByteBuffer.wrap(msg.cached, msg.start, length));
         }
         return length;
     }
 
     public int sendTCP(CachedMessage<? extends MSG> msg) {
+        if (msg.compressed != null && isCompressing()) return sendCompressedTCP(ByteBuffer.wrap(msg.compressed));
         final int length = msg.length;
         ByteBuffer raw = ByteBuffer.wrap(msg.cached, msg.start, msg.length);
         sendBytesTCP(raw, length);
         return length;
     }
 
+    int sendCompressedTCP(ByteBuffer compressed) {
+        try {
+            return tcp.sendCompressed(compressed);
+        } catch (IOException | KryoNetException e) {
+            if (DEBUG) debug("kryonet", "Unable to send compressed TCP with connection: " + this, e);
+            close();
+            return 0;
+        }
+    }
+
     int sendBytesTCP(ByteBuffer buffer, int length) {
         try {
             return tcp.sendRaw(buffer, length);
-        } catch (IOException e) {
+        } catch (IOException | KryoNetException e) {
             if (DEBUG) debug("kryonet", "Unable to sendRaw TCP with connection: " + this, e);
             close();
             return 0;
         }
     }
 
+    int sendFrameTCP(SharedFrame frame, ByteBuffer view) {
+        try {
+            return tcp.sendShared(frame, view);
+        } catch (IOException | KryoNetException e) {
+            if (DEBUG) debug("kryonet", "Unable to send shared frame with connection: " + this, e);
+            close();
+            return 0;
+        }
+    }
+
     public void close() {
         boolean wasConnected = isConnected;
         isConnected = false;
         tcp.close();
         if (udp != null && udp.connectedAddress != null) udp.close();
         setConnected(false);
+        queries.failAll(new KryoNetException(this + " closed before the query was answered."));
+        streamReplies.clear();
+        cancelReceivedQueries();
 
         if (wasConnected) {
             if (INFO) info("kryonet", this + " onDisconnected.");
@@ -165,10 +344,32 @@ public class Connection<MSG extends Message> {
         }
     }
 
+    /** Cancels every query received on this connection that hasn't been answered, since it closed. */
+    private void cancelReceivedQueries() {
+        final List<Query<?, ?>> cancelled;
+        synchronized (receivedQueries) {
+            // A client reconnects with the same connection, and the server's IDs for it start over.
+            earlyCancels.clear();
+            pruneEarlyCancelsAt = MIN_PRUNE_EARLY_CANCELS;
+            lastAnswered = lastAnsweredShared = 0;
+            if (receivedQueries.size == 0) return;
+            cancelled = new ArrayList<>(receivedQueries.size);
+            for (Query<?, ?> query : receivedQueries.values())
+                cancelled.add(query);
+            receivedQueries.clear();
+        }
+        for (Query<?, ?> query : cancelled)
+            query.cancelled();
+    }
+
     private void notifyDisconnected() {
         listener.onDisconnected(this);
     }
 
+    void notifyWritabilityChanged(boolean writable) {
+        listener.onWritabilityChanged(this, writable);
+    }
+
     public int sendUDP(CachedMessage<? extends MSG> msg) {
         sendBytesUDP(ByteBuffer.wrap(msg.cached, msg.start, msg.length));
         return msg.length;
@@ -218,6 +419,56 @@ public class Connection<MSG extends Message> {
         return sendObjectTCP(msg);
     }
 
+    /**
+     * Sends the message over TCP as a patch to the last message sent on this connection with the same key, such as the
+     * ID of the entity whose state it holds, or whole if there was none or the patch wouldn't be any smaller. Listeners
+     * at the other end receive the whole message as usual. Both ends forget every key when the connection closes, so
+     * the first message with each key after reconnecting is sent whole.
+     * <p>
+     * The serialized message must fit in the object buffer. Messages with the same key should be of the same type, and
+     * are best serialized with fixed length fields, so an unchanged field stays at the same offset. Each end keeps the
+     * last message of at most 4096 keys and 4 MB across them, and the connection is closed if a send would exceed
+     * either, so keys no longer used should be forgotten.
+     *
+     * @return The number of bytes sent.
+     * @see #forgetDelta(int)
+     */
+    public int sendDeltaTCP(int key, MSG msg) {
+        if (msg == null) throw new IllegalArgumentException("msg cannot be null.");
+        try {
+            final int length = tcp.sendDelta(key, msg);
+            if (DEBUG) debug("kryonet", this + " sent TCP delta: " + msg.getClass().getSimpleName() + " (" + length + ")");
+            return length;
+        } catch (IOException | KryoNetException ex) {
+            if (DEBUG) debug("kryonet", "Unable to send TCP delta with connection: " + this, ex);
+            close();
+            return 0;
+        }
+    }
+
+    int sendDeltaBytesTCP(int key, ByteBuffer image) {
+        try {
+            return tcp.sendDelta(key, image);
+        } catch (IOException | KryoNetException ex) {
+            if (DEBUG) debug("kryonet", "Unable to send TCP delta with connection: " + this, ex);
+            close();
+            return 0;
+        }
+    }
+
+    /**
+     * Forgets the last message sent with the key at both ends, such as when the entity it describes is removed, so the
+     * memory is freed and the next message with the key is sent whole.
+     */
+    public void forgetDelta(int key) {
+        try {
+            tcp.forgetDelta(key);
+        } catch (IOException | KryoNetException ex) {
+            if (DEBUG) debug("kryonet", "Unable to send TCP with connection: " + this, ex);
+            close();
+        }
+    }
+
     /**
      * Sends the object over the network using UDP.
      *
@@ -229,6 +480,66 @@ public class Connection<MSG extends Message> {
         return sendObjectUDP(msg);
     }
 
+    /**
+     * Sends the messages over TCP as one batch. They are serialized back to back into a single buffer, then written with
+     * one lock acquisition and at most one socket write, so frames from other threads are never interleaved with them.
+     * The batch is admitted or dropped as a whole by the {@link WriteOverflowPolicy}.
+     *
+     * @return The number of bytes sent, or 0 if the batch was empty or dropped.
+     */
+    public int sendBatchTCP(Collection<? extends MSG> msgs) {
+        return sendBatch(msgs);
+    }
+
+    /**
+     * Holds back every message sent over TCP on this connection, by any thread, until the returned batch is closed, then
+     * writes them all at once. Queries sent in the batch go out together, as do the responses to them if the other end
+     * answers them as it reads them. Batches may be nested, and only the outermost one writes.
+     * <pre>
+     * try (TcpBatch batch = connection.batchTCP()) {
+     *     inventory = connection.sendAsync(new InventoryQuery());
+     *     friends = connection.sendAsync(new FriendsQuery());
+     * }
+     * </pre>
+     * Keep batches short, as nothing is written to the connection until the batch is closed.
+     */
+    public TcpBatch batchTCP() {
+        tcp.cork();
+        return new TcpBatch(this);
+    }
+
+    void endBatchTCP() {
+        try {
+            tcp.uncork();
+        } catch (IOException | KryoNetException ex) {
+            if (DEBUG) debug("kryonet", "Unable to send TCP batch with connection: " + this, ex);
+            close();
+        }
+    }
+
+    /**
+     * Sends pre-serialized messages over TCP as one batch, regardless of {@link CachedMessage#isReliable}.
+     *
+     * @return The number of bytes sent, or 0 if the batch was empty or dropped.
+     * @see #sendBatchTCP(Collection)
+     */
+    public int sendCachedBatchTCP(Collection<? extends CachedMessage<? extends MSG>> msgs) {
+        return sendBatch(msgs);
+    }
+
+    private int sendBatch(Collection<?> objects) {
+        Objects.requireNonNull(objects, "Cannot send null batch.");
+        try {
+            final int length = tcp.sendBatch(objects);
+            if (DEBUG) debug("kryonet", this + " sent TCP batch of " + objects.size() + " messages (" + length + ")");
+            return length;
+        } catch (IOException | KryoNetException ex) {
+            if (DEBUG) debug("kryonet", "Unable to send TCP batch with connection: " + this, ex);
+            close();
+            return 0;
+        }
+    }
+
     int sendObjectUDP(Object object) {
         Objects.requireNonNull(object, "Cannot send null object.");
         SocketAddress address = udpRemoteAddress;
@@ -315,6 +626,7 @@ public class Connection<MSG extends Message> {
      */
     public void setKeepAliveTCP(int keepAliveMillis) {
         tcp.keepAliveMillis = keepAliveMillis;
+        requestTimerUpdate();
     }
 
     /**
@@ -327,6 +639,12 @@ public class Connection<MSG extends Message> {
      */
     public void setTimeout(int timeoutMillis) {
         tcp.timeoutMillis = timeoutMillis;
+        requestTimerUpdate();
+    }
+
+    private void requestTimerUpdate() {
+        final Queue<Connection> timerUpdates = this.timerUpdates;
+        if (timerUpdates != null) timerUpdates.add(this);
     }
 
     void notifyConnected() {
@@ -395,24 +713,82 @@ public class Connection<MSG extends Message> {
      * Returns the number of bytes that are waiting to be written to the TCP socket, if any.
      */
     public int getTcpWriteBufferSize() {
-        return tcp.writeBuffer.position();
+        return tcp.getQueuedBytes();
     }
 
     /**
      * @see #setIdleThreshold(float)
      */
     public boolean isIdle() {
-        return tcp.writeBuffer.position() / (float) tcp.writeBuffer.capacity() < tcp.idleThreshold;
+        return tcp.isIdle();
     }
 
     /**
-     * If the percent of the TCP write buffer that is filled is less than the specified threshold,
-     * {@link Listener#onIdle(Connection)} will be called for each network thread update. Default is 0.1.
+     * If the percent of the {@link #setWriteBufferLimit(int) TCP write buffer limit} that is filled is less than the
+     * specified threshold, {@link Listener#onIdle(Connection)} will be called for each network thread update. Default is 0.1.
      */
     public void setIdleThreshold(float idleThreshold) {
         tcp.idleThreshold = idleThreshold;
     }
 
+    /**
+     * Returns false once more bytes than the high water mark are waiting to be written to the TCP socket, and true again
+     * once the queue has drained below the low water mark.
+     *
+     * @see #setWriteWaterMarks(int, int)
+     * @see Listener#onWritabilityChanged(Connection, boolean)
+     */
+    public boolean isWritable() {
+        return tcp.writable;
+    }
+
+    /**
+     * Sets the maximum number of bytes that may wait to be written to the TCP socket. Bytes are held in segments taken from
+     * a pool shared by the end point, so a connection only uses as much memory as it has queued. What happens when a send
+     * would exceed the limit is decided by the {@link #setWriteOverflowPolicy(WriteOverflowPolicy) overflow policy}.
+     * Defaults to the end point's write buffer size.
+     */
+    public void setWriteBufferLimit(int writeBufferLimit) {
+        tcp.setWriteBufferLimit(writeBufferLimit);
+    }
+
+    /**
+     * The connection stops being {@link #isWritable() writable} when more than highWaterMark bytes are queued, and becomes
+     * writable again once no more than lowWaterMark bytes are queued. Defaults to a quarter and half of the end point's
+     * write buffer size.
+     */
+    public void setWriteWaterMarks(int lowWaterMark, int highWaterMark) {
+        tcp.setWaterMarks(lowWaterMark, highWaterMark);
+    }
+
+    /**
+     * Sets what happens when a TCP send would exceed the {@link #setWriteBufferLimit(int) write buffer limit}.
+     * Defaults to {@link WriteOverflowPolicy#CLOSE}.
+     */
+    public void setWriteOverflowPolicy(WriteOverflowPolicy overflowPolicy) {
+        tcp.setOverflowPolicy(overflowPolicy);
+    }
+
+    /**
+     * Sets the largest message, in serialized bytes, that may be sent or received over TCP. Messages that don't fit the
+     * end point's object buffer are split into fragments of that size on send, and reassembled into a temporary pooled
+     * buffer on receipt, so the object buffer only needs to hold typical messages. Both ends must allow a message for it to
+     * be delivered. Set this to the object buffer size or less to disable fragmentation. Defaults to 16 MB.
+     */
+    public void setMaxMessageSize(int maxMessageSize) {
+        if (maxMessageSize <= 0) throw new IllegalArgumentException("maxMessageSize must be positive: " + maxMessageSize);
+        tcp.maxMessageSize = maxMessageSize;
+    }
+
+    /** Returns true if both ends agreed to compress TCP messages when this connection was registered. */
+    public boolean isCompressing() {
+        return tcp.compressionThreshold != -1;
+    }
+
+    public int getMaxMessageSize() {
+        return tcp.maxMessageSize;
+    }
+
     @Override
     public String toString() {
         if (name != null)
@@ -463,19 +839,57 @@ public class Connection<MSG extends Message> {
 
 
     protected <T> CompletableFuture<T> sendAsync(Query<T, ?> query, @Nullable Duration timeout) {
-        CompletableFuture<T> future = new CompletableFuture<>();
-        queries.put(query.id, future);
-        sendObjectTCP(query);
-        if (timeout != null) {
-            TimedFuture.addTimeout(future, timeout);
-            future.exceptionally(error -> {
-                queries.remove(query.id);
-                return null;
-            });
-        }
+        final PendingQuery<T> future = queries.add(query, new PendingQuery<>());
+        if (timeout != null) future.setTimeout(timeout);
+        // Otherwise it is sent once earlier queries leave room in the window.
+        if (future.isInFlight()) sendObjectTCP(query);
+        // Closing fails every query added before it, so one added after is failed here.
+        if (!isConnected) queries.failAll(new KryoNetException(this + " is not connected."));
         return future;
     }
 
+    /**
+     * Sends a stream query, whose responses are taken from the returned stream as they arrive. The other end sends at most
+     * window responses before any are taken, and more as they are.
+     *
+     * @param timeout How long to wait for each response, or null to wait until the stream ends.
+     */
+    protected <T> QueryStream<T> sendStream(Query<T, ?> query, int window, @Nullable Duration timeout) {
+        if (window <= 0) throw new IllegalArgumentException("window must be positive: " + window);
+        final QueryStream<T> stream = new QueryStream<>(this, window, timeout);
+        final PendingQuery<?> future = queries.add(query, stream.pending);
+        if (timeout != null) future.setTimeout(timeout);
+        if (future.isInFlight()) sendObjectTCP(query);
+        if (!isConnected) queries.failAll(new KryoNetException(this + " is not connected."));
+        return stream;
+    }
+
+    /**
+     * Adds the future for a query sent to this and other connections under one ID.
+     *
+     * @return False if this connection is closed or already has a query pending with the ID.
+     */
+    boolean addSharedQuery(int id, PendingQuery<?> future) {
+        if (!isConnected || !queries.add(id, future)) return false;
+        // Closing fails every query added before it, so one added after is failed here.
+        if (!isConnected) queries.failAll(new KryoNetException(this + " is not connected."));
+        return true;
+    }
+
+    /** Returns the number of queries sent on this connection that are waiting for a response, or to be sent. */
+    public int getPendingQueries() {
+        return queries.size();
+    }
+
+    /**
+     * Sets the most queries sent on this connection that may await a response at once. Queries sent beyond it are held
+     * back in order, and sent as responses to earlier queries arrive. Their timeouts include the time spent held back.
+     * Defaults to no limit.
+     */
+    public void setQueryWindow(int window) {
+        queries.setWindow(window);
+    }
+
 
     protected <T> CompletableFuture<T> sendAsync(Query<T, ?> query) {
         return sendAsync(query, query.getTimeout());
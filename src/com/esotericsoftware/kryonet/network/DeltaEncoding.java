@@ -0,0 +1,132 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.util.KryoNetException;
+import java.nio.ByteBuffer;
+
+/**
+ * Byte level patches between two serialized images of a message. A state message sent again usually serializes to the
+ * same bytes but for the few fields that changed, at the same offsets until a variable length field changes length,
+ * and at the same offsets from the end after it.
+ * <p>
+ * A patch is the image's length and the length of the suffix it shares with the base, as variable length ints, then
+ * ops up to the suffix. Each op is the number of bytes to copy from the base at the same offset, then the number of
+ * literal bytes that follow in the patch.
+ */
+final class DeltaEncoding {
+    /** A run of equal bytes shorter than this is cheaper to send as literals than as an op of its own. */
+    private static final int MIN_COPY = 3;
+
+    private DeltaEncoding() {
+    }
+
+    /**
+     * Writes a patch turning the base into the remaining bytes of the image, without consuming them.
+     *
+     * @return False, with nothing written, if the patch would be as large as the image or wouldn't fit in the buffer.
+     */
+    static boolean diff(byte[] base, ByteBuffer image, ByteBuffer out) {
+        final int start = out.position(), offset = image.position(), length = image.remaining();
+        final int limit = Math.min(out.limit(), start + length - 1);
+        final int m = base.length;
+
+        int suffix = 0;
+        while (suffix < length && suffix < m && base[m - 1 - suffix] == image.get(offset + length - 1 - suffix))
+            ++suffix;
+        final int end = length - suffix;
+
+        if (!writeVarInt(out, length, limit) || !writeVarInt(out, suffix, limit)) return fail(out, start);
+        int i = 0;
+        while (i < end) {
+            final int copy = equalRun(base, image, offset, i, end, end);
+            i += copy;
+            final int literal = literalRun(base, image, offset, i, end);
+            if (!writeVarInt(out, copy, limit) || !writeVarInt(out, literal, limit)) return fail(out, start);
+            if (out.position() + literal > limit) return fail(out, start);
+            for (int j = 0; j < literal; ++j)
+                out.put(image.get(offset + i + j));
+            i += literal;
+        }
+        return true;
+    }
+
+    /** Returns the number of equal bytes at the same offset in both, from i, up to max. */
+    private static int equalRun(byte[] base, ByteBuffer image, int offset, int i, int end, int max) {
+        final int limit = Math.min(Math.min(end, base.length), i + max);
+        int j = i;
+        while (j < limit && base[j] == image.get(offset + j))
+            ++j;
+        return j - i;
+    }
+
+    /** Returns the number of bytes from i that differ or are in runs too short to copy, up to the end. */
+    private static int literalRun(byte[] base, ByteBuffer image, int offset, int i, int end) {
+        int j = i;
+        while (j < end) {
+            final int run = equalRun(base, image, offset, j, end, MIN_COPY);
+            // A run reaching the end is copied, however short.
+            if (run == MIN_COPY || j + run == end) break;
+            ++j;
+        }
+        return j - i;
+    }
+
+    private static boolean fail(ByteBuffer out, int start) {
+        out.position(start);
+        return false;
+    }
+
+    /**
+     * Applies the patch in the next length bytes of the buffer to the base, consuming them.
+     *
+     * @param maxLength The largest image the patch may describe, checked before the image is allocated.
+     * @return The new image.
+     */
+    static byte[] patch(byte[] base, ByteBuffer buffer, int length, int maxLength) {
+        final int end = buffer.position() + length;
+        final int imageLength = readVarInt(buffer, end), suffix = readVarInt(buffer, end);
+        if (imageLength > maxLength)
+            throw new KryoNetException("Invalid delta: " + imageLength + " byte image exceeds the max message size: " + maxLength);
+        if (suffix > imageLength || suffix > base.length)
+            throw new KryoNetException("Invalid delta: " + suffix + " byte suffix of a " + base.length + " byte base");
+        final byte[] image = new byte[imageLength];
+        final int prefixEnd = imageLength - suffix;
+        int i = 0;
+        while (i < prefixEnd) {
+            final int copy = readVarInt(buffer, end), literal = readVarInt(buffer, end);
+            if (copy > Math.min(prefixEnd, base.length) - i || literal > prefixEnd - i - copy || literal > end - buffer.position())
+                throw new KryoNetException("Invalid delta op at " + i + " of a " + imageLength + " byte image");
+            System.arraycopy(base, i, image, i, copy);
+            i += copy;
+            buffer.get(image, i, literal);
+            i += literal;
+            if (copy == 0 && literal == 0) throw new KryoNetException("Invalid empty delta op.");
+        }
+        if (buffer.position() != end) throw new KryoNetException("Invalid delta: " + (end - buffer.position()) + " bytes left over");
+        System.arraycopy(base, base.length - suffix, image, prefixEnd, suffix);
+        return image;
+    }
+
+    private static boolean writeVarInt(ByteBuffer out, int value, int limit) {
+        do {
+            if (out.position() >= limit) return false;
+            final int bits = value & 0x7F;
+            value >>>= 7;
+            out.put((byte) (value == 0 ? bits : bits | 0x80));
+        } while (value != 0);
+        return true;
+    }
+
+    private static int readVarInt(ByteBuffer buffer, int end) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (buffer.position() >= end) break;
+            final byte b = buffer.get();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (result < 0) break;
+                return result;
+            }
+        }
+        throw new KryoNetException("Invalid variable length int in delta.");
+    }
+}
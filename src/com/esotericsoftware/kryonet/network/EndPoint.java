@@ -21,14 +21,18 @@ package com.esotericsoftware.kryonet.network;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryonet.adapters.Listener;
+import com.esotericsoftware.kryonet.adapters.RawListener;
 import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage;
 import com.esotericsoftware.kryonet.network.messages.Message;
 import com.esotericsoftware.kryonet.serializers.KryoSerialization;
 import com.esotericsoftware.kryonet.serializers.Serialization;
+import com.esotericsoftware.kryonet.util.CoarseClock;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.channels.Selector;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -40,14 +44,27 @@ import static com.esotericsoftware.minlog.Log.trace;
  * @author Nathan Sweet <misc@n4te.com> */
 public abstract class EndPoint<FM extends Message, C extends Connection<FM>> implements Runnable, Closeable {
 	public static final int DEFAULT_WRITE_BUFFER = 16384, DEFAULT_OBJ_BUFFER = 2048;
+	private static final int WRITE_SEGMENT_SIZE = 4096, MAX_POOLED_SEGMENTS = 256;
+	private static final int MAX_POOLED_MESSAGE_BUFFERS = 2, MAX_RETAINED_MESSAGE_BUFFER = 1024 * 1024;
 
 	protected Thread updateThread;
 	protected int emptySelects;
 	protected final Object updateLock = new Object();
 	protected Selector selector;
+	/** Coalesces the wakeups sends request from {@link #selector}. Created along with the selector. */
+	SelectorWakeup selectorWakeup;
 	protected CachedMessageFactory cachedMessageFactory;
+	/** Updated once per select by the update thread. */
+	final CoarseClock clock = new CoarseClock();
+	/** Segments for the TCP write queues of this end point's connections. */
+	final BufferPool writePool;
+	/** Buffers for TCP messages too large for the object buffer, while they are fragmented or reassembled. */
+	final MessageBufferPool messagePool = new MessageBufferPool(MAX_POOLED_MESSAGE_BUFFERS, MAX_RETAINED_MESSAGE_BUFFER);
 
 	protected final List<Listener<? super C>> listeners = new CopyOnWriteArrayList<>();
+	/** Raw listeners indexed by the type ID of the messages they receive. Replaced whenever one is added or removed. */
+	private volatile RawListener[] rawListeners = new RawListener[0];
+	private final Object rawListenerLock = new Object();
 
 
 	protected final String TAG = getTag();
@@ -56,12 +73,19 @@ public abstract class EndPoint<FM extends Message, C extends Connection<FM>> imp
 
 	protected final int writeBufferSize, objectBufferSize;
 
+	/** Read when each connection is registered, so changes only apply to later connections. */
+	volatile int compressionThreshold = -1;
+	/** Compression dictionaries indexed by ID. Replaced whenever one is added. */
+	volatile CompressionDictionary[] compressionDictionaries = new CompressionDictionary[0];
+	private final Object dictionaryLock = new Object();
+
 
 
 	protected EndPoint(Serialization serializer, int writeBufferSize, int objectBufferSize){
 		this.serializer = serializer;
 		this.writeBufferSize = writeBufferSize;
 		this.objectBufferSize = objectBufferSize;
+		this.writePool = new BufferPool(Math.min(writeBufferSize, WRITE_SEGMENT_SIZE), MAX_POOLED_SEGMENTS);
 		this.cachedMessageFactory = new CachedMessageFactory(serializer, objectBufferSize);
 	}
 
@@ -79,7 +103,8 @@ public abstract class EndPoint<FM extends Message, C extends Connection<FM>> imp
 
 		long startTime = System.currentTimeMillis();
 		int select = timeout > 0 ? selector.select(timeout) : selector.selectNow();
-
+		selectorWakeup.selected();
+		clock.update();
 
 		if (select == 0) {
 			++emptySelects;
@@ -120,6 +145,104 @@ public abstract class EndPoint<FM extends Message, C extends Connection<FM>> imp
 	}
 
 
+	/** Passes TCP messages of the given type to the listener without deserializing them, replacing any raw listener
+	 * already added for the type. The type must be registered with the serialization first.
+	 * @see RawListener */
+	public void addRawListener (Class<?> type, RawListener<? super C> listener) {
+		if (listener == null) throw new IllegalArgumentException("listener cannot be null.");
+		if (FrameworkMessage.class.isAssignableFrom(type) || type == Response.class)
+			throw new IllegalArgumentException("Framework messages can't be received raw: " + type.getName());
+		final int typeId = serializer.typeId(type);
+		if (typeId < 0) throw new IllegalArgumentException("Type has no ID in the serialization: " + type.getName());
+		synchronized (rawListenerLock) {
+			final RawListener[] rawListeners = Arrays.copyOf(this.rawListeners, Math.max(typeId + 1, this.rawListeners.length));
+			rawListeners[typeId] = listener;
+			this.rawListeners = rawListeners;
+		}
+		if (TRACE) trace(TAG, "Added RawListener for " + type.getName());
+	}
+
+	public void removeRawListener (Class<?> type) {
+		final int typeId = serializer.typeId(type);
+		synchronized (rawListenerLock) {
+			if (typeId < 0 || typeId >= rawListeners.length) return;
+			final RawListener[] rawListeners = this.rawListeners.clone();
+			rawListeners[typeId] = null;
+			this.rawListeners = rawListeners;
+		}
+		if (TRACE) trace(TAG, "Removed RawListener for " + type.getName());
+	}
+
+	boolean wantsRaw (int typeId) {
+		final RawListener[] rawListeners = this.rawListeners;
+		return typeId >= 0 && typeId < rawListeners.length && rawListeners[typeId] != null;
+	}
+
+	/** Passes a frame read from the connection to the raw listener for its type.
+	 * @return true if the listener handled it, false if the message should be decoded and passed to the listeners. */
+	@SuppressWarnings("unchecked")
+	boolean receivedRaw (C connection, RawFrame frame) {
+		final RawListener[] rawListeners = this.rawListeners;
+		final int typeId = frame.typeId();
+		// The listener may have been removed since the frame was read.
+		final RawListener listener = typeId < rawListeners.length ? rawListeners[typeId] : null;
+		return listener != null && listener.received(connection, frame);
+	}
+
+
+	/** Compresses TCP messages of at least this many serialized bytes, on connections whose other end has compression
+	 * enabled too. Messages that deflate wouldn't make smaller are sent as they are. Messages sent one at a time and
+	 * broadcasts are compressed, not batches or cached messages unless they were created compressed. This only applies
+	 * to connections made afterwards.
+	 * @see #addCompressionDictionary(CompressionDictionary)
+	 * @param threshold The smallest message to compress in bytes, or -1 to disable compression, the default. */
+	public void setCompressionThreshold (int threshold) {
+		if (threshold < -1) throw new IllegalArgumentException("threshold must be -1 or more: " + threshold);
+		compressionThreshold = threshold;
+	}
+
+	public int getCompressionThreshold () {
+		return compressionThreshold;
+	}
+
+	/** Registers a dictionary for compressing TCP messages. When a connection is registered, each end offers the IDs of
+	 * its dictionaries, and messages are compressed with the dictionary of the highest ID both ends have. Any registered
+	 * dictionary can be used to inflate, so a new dictionary can be rolled out under a higher ID while older clients
+	 * keep using the one they have. This only applies to connections made afterwards.
+	 * @throws IllegalArgumentException if a dictionary is already registered with the same ID. */
+	public void addCompressionDictionary (CompressionDictionary dictionary) {
+		synchronized (dictionaryLock) {
+			final int id = dictionary.getId();
+			final CompressionDictionary[] old = compressionDictionaries;
+			if (id < old.length && old[id] != null)
+				throw new IllegalArgumentException("A compression dictionary is already registered with ID: " + id);
+			final CompressionDictionary[] dictionaries = Arrays.copyOf(old, Math.max(old.length, id + 1));
+			dictionaries[id] = dictionary;
+			compressionDictionaries = dictionaries;
+		}
+	}
+
+	/** Returns the compression dictionary registered with the ID, or null. */
+	public CompressionDictionary getCompressionDictionary (int id) {
+		final CompressionDictionary[] dictionaries = compressionDictionaries;
+		return id >= 0 && id < dictionaries.length ? dictionaries[id] : null;
+	}
+
+	/** Returns the IDs of the registered compression dictionaries as bits. */
+	long compressionDictionaryIds () {
+		long ids = 0;
+		for (CompressionDictionary dictionary : compressionDictionaries) {
+			if (dictionary != null) ids |= 1L << dictionary.getId();
+		}
+		return ids;
+	}
+
+	/** Returns the registered dictionary with the highest of the IDs, or null if there are none. */
+	CompressionDictionary highestCompressionDictionary (long ids) {
+		return ids == 0 ? null : getCompressionDictionary(Long.SIZE - 1 - Long.numberOfLeadingZeros(ids));
+	}
+
+
 	/** Gets the serialization instance that will be used to serialize and deserialize objects. */
 	public Serialization getSerialization() {
 		return serializer;
@@ -0,0 +1,182 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.util.KryoNetException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses and inflates the serialized messages of TCP frames flagged as compressed. A compressed message is the 4
+ * byte length of the message once inflated, followed by its deflated bytes. A message compressed with a
+ * {@link CompressionDictionary} starts with the one byte ID of the dictionary instead, and its bytes are raw deflate
+ * without the zlib header and checksums, which would be a large part of a small message.
+ * <p>
+ * Each sending thread deflates with its own {@link Deflater}s, and each connection inflates with its own
+ * {@link Inflater}s, created the first time it receives a compressed frame. They are reset and reused for every message.
+ */
+final class FrameCompression {
+    /** Messages are small and sent often, so speed matters more than ratio. */
+    static final int LEVEL = Deflater.BEST_SPEED;
+
+    private static final ThreadLocal<FrameCompression> DEFLATING = new ThreadLocal<FrameCompression>() {
+        @Override
+        protected FrameCompression initialValue() {
+            return new FrameCompression(new Deflater(LEVEL), null);
+        }
+    };
+
+    private final Deflater deflater;
+    private final Inflater inflater;
+    /** Created when first needed, for messages compressed with a dictionary. */
+    private Deflater rawDeflater;
+    private Inflater rawInflater;
+    /** Holds messages copied out of direct buffers, which have no array for the deflater. */
+    private byte[] input = new byte[0];
+
+    private FrameCompression(Deflater deflater, Inflater inflater) {
+        this.deflater = deflater;
+        this.inflater = inflater;
+    }
+
+    /** Returns a compression for inflating the messages of one connection, only to be used by its reading thread. */
+    static FrameCompression inflating() {
+        return new FrameCompression(null, new Inflater());
+    }
+
+    /**
+     * Compresses the remaining bytes of the message, without consuming them, into a buffer from the pool.
+     *
+     * @param dictionary The dictionary to compress with, or null.
+     * @return The compressed message, or null if compressing wouldn't make it any smaller.
+     */
+    static ByteBuffer deflate(ByteBuffer message, CompressionDictionary dictionary, MessageBufferPool pool) {
+        final int length = message.remaining();
+        final int header = dictionary == null ? 4 : 5;
+        if (length <= header) return null;
+        final ByteBuffer output = pool.acquire(length);
+        final int deflated = deflate(message, dictionary, output.array(), output.arrayOffset() + header, length - header);
+        if (deflated == -1) {
+            pool.release(output);
+            return null;
+        }
+        if (dictionary != null) output.put(0, (byte) dictionary.getId());
+        output.putInt(header - 4, length);
+        output.limit(header + deflated);
+        return output;
+    }
+
+    /**
+     * Compresses length bytes of the array into a new array, without a dictionary, for messages that are compressed
+     * once and sent many times.
+     *
+     * @return The compressed message, or null if compressing wouldn't make it any smaller.
+     */
+    static byte[] deflate(byte[] message, int offset, int length) {
+        if (length <= 4) return null;
+        final byte[] output = new byte[length];
+        final int deflated = deflate(ByteBuffer.wrap(message, offset, length), null, output, 4, length - 4);
+        if (deflated == -1) return null;
+        ByteBuffer.wrap(output).putInt(length);
+        return Arrays.copyOf(output, 4 + deflated);
+    }
+
+    /** Returns the number of bytes deflated into the array, or -1 if they didn't fit in capacity bytes. */
+    private static int deflate(ByteBuffer message, CompressionDictionary dictionary, byte[] out, int start, int capacity) {
+        final FrameCompression compression = DEFLATING.get();
+        final Deflater deflater;
+        if (dictionary == null) {
+            deflater = compression.deflater;
+            deflater.reset();
+        } else {
+            if (compression.rawDeflater == null) compression.rawDeflater = new Deflater(LEVEL, true);
+            deflater = compression.rawDeflater;
+            deflater.reset();
+            deflater.setDictionary(dictionary.bytes());
+        }
+        compression.setInput(deflater, null, message, message.remaining());
+        deflater.finish();
+        int deflated = 0;
+        while (!deflater.finished() && deflated < capacity)
+            deflated += deflater.deflate(out, start + deflated, capacity - deflated);
+        return deflater.finished() ? deflated : -1;
+    }
+
+    /**
+     * Inflates the compressed message in the next length bytes of the buffer, consuming them, into a buffer from the
+     * pool.
+     *
+     * @param withDictionary True if the message was compressed with a dictionary.
+     * @param dictionaries The dictionaries registered at this end, indexed by ID.
+     * @param maxMessageSize The largest message allowed once inflated.
+     */
+    ByteBuffer inflate(ByteBuffer buffer, int length, boolean withDictionary, CompressionDictionary[] dictionaries,
+                       int maxMessageSize, MessageBufferPool pool) {
+        final int header = withDictionary ? 5 : 4;
+        if (length <= header) throw new KryoNetException("Invalid compressed message length: " + length);
+        final Inflater inflater;
+        if (withDictionary) {
+            final int id = buffer.get() & 0xFF;
+            final CompressionDictionary dictionary = id < dictionaries.length ? dictionaries[id] : null;
+            if (dictionary == null) throw new KryoNetException("Message compressed with unknown dictionary: " + id);
+            if (rawInflater == null) rawInflater = new Inflater(true);
+            inflater = rawInflater;
+            inflater.reset();
+            inflater.setDictionary(dictionary.bytes());
+        } else {
+            inflater = this.inflater;
+            inflater.reset();
+        }
+        final int inflatedLength = buffer.getInt();
+        if (inflatedLength <= 0 || inflatedLength > maxMessageSize)
+            throw new KryoNetException("Compressed message length " + inflatedLength + " exceeds the max message size: " + maxMessageSize);
+        final int deflatedLength = length - header;
+
+        final ByteBuffer output = pool.acquire(inflatedLength);
+        final byte[] out = output.array();
+        final int start = output.arrayOffset();
+        setInput(null, inflater, buffer, deflatedLength);
+        int inflated = 0;
+        try {
+            while (inflated < inflatedLength) {
+                final int n = inflater.inflate(out, start + inflated, inflatedLength - inflated);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated += n;
+            }
+        } catch (DataFormatException ex) {
+            pool.release(output);
+            throw new KryoNetException("Invalid compressed message.", ex);
+        }
+        if (inflated != inflatedLength) {
+            pool.release(output);
+            throw new KryoNetException("Compressed message inflated to " + inflated + " bytes, expected " + inflatedLength);
+        }
+
+        buffer.position(buffer.position() + deflatedLength);
+        output.limit(inflatedLength);
+        return output;
+    }
+
+    /** Passes the next length bytes of the buffer, without consuming them, to the deflater or inflater. */
+    private void setInput(Deflater deflater, Inflater inflater, ByteBuffer buffer, int length) {
+        byte[] array;
+        int offset;
+        if (buffer.hasArray()) {
+            array = buffer.array();
+            offset = buffer.arrayOffset() + buffer.position();
+        } else {
+            if (input.length < length) input = new byte[length];
+            array = input;
+            offset = 0;
+            final int position = buffer.position();
+            buffer.get(array, 0, length);
+            buffer.position(position);
+        }
+        if (deflater != null) {
+            deflater.setInput(array, offset, length);
+        } else {
+            inflater.setInput(array, offset, length);
+        }
+    }
+}
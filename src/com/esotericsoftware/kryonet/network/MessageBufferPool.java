@@ -0,0 +1,56 @@
+package com.esotericsoftware.kryonet.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread safe pool of temporary heap buffers for messages too large for a connection's object buffer, shared by the
+ * connections of an {@link EndPoint}. Buffers come in power of two sizes. A few released buffers of each size are
+ * retained, up to {@code maxRetainedCapacity}; larger ones are left to the garbage collector so an occasional huge
+ * message doesn't pin its memory.
+ */
+class MessageBufferPool {
+    private static final int SIZES = 31;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedQueue<ByteBuffer>[] pools = new ConcurrentLinkedQueue[SIZES];
+    private final AtomicInteger[] pooled = new AtomicInteger[SIZES];
+    private final int maxPooledPerSize, maxRetainedCapacity;
+
+    MessageBufferPool(int maxPooledPerSize, int maxRetainedCapacity) {
+        this.maxPooledPerSize = maxPooledPerSize;
+        this.maxRetainedCapacity = maxRetainedCapacity;
+        for (int i = 0; i < SIZES; ++i) {
+            pools[i] = new ConcurrentLinkedQueue<>();
+            pooled[i] = new AtomicInteger();
+        }
+    }
+
+    /** Returns a cleared buffer with a capacity of at least minCapacity bytes, rounded up to a power of two. */
+    ByteBuffer acquire(int minCapacity) {
+        if (minCapacity <= 0 || minCapacity > 1 << (SIZES - 1))
+            throw new IllegalArgumentException("Invalid capacity: " + minCapacity);
+        final int size = sizeOf(minCapacity);
+        final ByteBuffer buffer = pools[size].poll();
+        if (buffer == null) return ByteBuffer.allocate(1 << size);
+        pooled[size].decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        if (capacity > maxRetainedCapacity || Integer.bitCount(capacity) != 1) return;
+        final int size = sizeOf(capacity);
+        if (pooled[size].incrementAndGet() <= maxPooledPerSize) {
+            pools[size].offer(buffer);
+        } else {
+            pooled[size].decrementAndGet();
+        }
+    }
+
+    private static int sizeOf(int capacity) {
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1);
+    }
+}
@@ -0,0 +1,168 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryo.util.IntMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The queries a connection sent that are waiting for a response, by ID. IDs are assigned from a counter per connection,
+ * so they only need to be unique among the connection's own pending queries, and are kept as primitive ints.
+ * <p>
+ * At most {@link #setWindow(int) window} queries are in flight at once. Queries added beyond it wait in order, and are
+ * sent as responses to earlier ones arrive, or as they time out or are cancelled.
+ * <p>
+ * Queries are added by the threads sending them and removed by the update thread when the response arrives, or by
+ * whichever thread times them out or closes the connection. The table is only locked to add or remove an entry; futures
+ * are always completed, and waiting queries sent, outside the lock.
+ */
+final class PendingQueries {
+    private final Connection<?> connection;
+    private final IntMap<PendingQuery<?>> futures = new IntMap<>();
+    private final ArrayDeque<PendingQuery<?>> waiting = new ArrayDeque<>();
+    private int nextId, inFlight, window = Integer.MAX_VALUE;
+
+    PendingQueries(Connection<?> connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Adds the future for the query and assigns the ID the query is sent with.
+     *
+     * @return The future, which is {@link PendingQuery#isInFlight() in flight} if the query should be sent now.
+     */
+    synchronized <F extends PendingQuery<?>> F add(Query<?, ?> query, F future) {
+        future.table = this;
+        int id;
+        do {
+            id = ++nextId;
+            // After wrapping, skip 0 and negative IDs, which are for queries sent to many connections, and any ID still
+            // pending from the last time around.
+            if (id <= 0) id = nextId = 1;
+        } while (futures.containsKey(id));
+        future.id = query.id = id;
+        futures.put(id, future);
+        if (inFlight < window && waiting.isEmpty()) {
+            future.inFlight = true;
+            ++inFlight;
+        } else {
+            future.query = query;
+            waiting.add(future);
+        }
+        return future;
+    }
+
+    /**
+     * Adds a future for a query sent to many connections under one ID, which doesn't count against the window.
+     *
+     * @return False if the ID is already pending.
+     */
+    synchronized boolean add(int id, PendingQuery<?> future) {
+        if (futures.containsKey(id)) return false;
+        future.table = this;
+        future.id = id;
+        futures.put(id, future);
+        return true;
+    }
+
+    /**
+     * Returns the future for a response to the query with the ID, or null if there is none. It is removed unless it is a
+     * stream's, which stays until the end of the stream.
+     */
+    PendingQuery<?> take(int id) {
+        final PendingQuery<?> future;
+        synchronized (this) {
+            future = futures.get(id);
+            if (future == null || future.isStream()) return future;
+            futures.remove(id);
+            if (!release(future)) return future;
+        }
+        sendWaiting();
+        return future;
+    }
+
+    /** Removes and returns the future for the ID, or null if there is none, and sends the queries it was holding back. */
+    PendingQuery<?> remove(int id) {
+        final PendingQuery<?> future;
+        synchronized (this) {
+            future = futures.remove(id);
+            if (future == null || !release(future)) return future;
+        }
+        sendWaiting();
+        return future;
+    }
+
+    /**
+     * Removes the cancelled future for the ID only if it is the given one. If its query was sent, the other end is told to
+     * stop working on it.
+     */
+    void cancel(int id, PendingQuery<?> future) {
+        final boolean sent, released;
+        synchronized (this) {
+            if (futures.get(id) != future) return;
+            futures.remove(id);
+            // Queries waiting for room in the window keep the query to send until then.
+            sent = future.query == null;
+            future.query = null;
+            released = release(future);
+        }
+        if (sent) connection.sendCancelQuery(id);
+        if (released) sendWaiting();
+    }
+
+    /** Returns true if the removed future was in flight, leaving room for a waiting query. */
+    private boolean release(PendingQuery<?> future) {
+        if (!future.inFlight) return false;
+        future.inFlight = false;
+        --inFlight;
+        return !waiting.isEmpty();
+    }
+
+    /** Sets the most queries that may be in flight at once, sending waiting queries if it grew. */
+    void setWindow(int window) {
+        if (window <= 0) throw new IllegalArgumentException("window must be positive: " + window);
+        synchronized (this) {
+            this.window = window;
+        }
+        sendWaiting();
+    }
+
+    synchronized int size() {
+        return futures.size;
+    }
+
+    /** Sends waiting queries while there is room in the window. */
+    private void sendWaiting() {
+        while (true) {
+            final Query<?, ?> query;
+            synchronized (this) {
+                if (inFlight >= window) return;
+                final PendingQuery<?> next = waiting.poll();
+                if (next == null) return;
+                // Timed out or cancelled while waiting.
+                if (futures.get(next.id) != next) continue;
+                next.inFlight = true;
+                ++inFlight;
+                query = next.query;
+                next.query = null;
+            }
+            connection.sendObjectTCP(query);
+        }
+    }
+
+    /** Removes every future and completes each with the error. */
+    void failAll(Throwable error) {
+        final List<PendingQuery<?>> failed;
+        synchronized (this) {
+            if (futures.size == 0) return;
+            failed = new ArrayList<>(futures.size);
+            for (PendingQuery<?> future : futures.values())
+                failed.add(future);
+            futures.clear();
+            waiting.clear();
+            inFlight = 0;
+        }
+        for (PendingQuery<?> future : failed)
+            future.completeExceptionally(error);
+    }
+}
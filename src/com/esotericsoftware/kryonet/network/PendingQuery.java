@@ -0,0 +1,43 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.futures.TimedFuture;
+
+/**
+ * The future of a query waiting for its response, which leaves its connection's table of pending queries when it is
+ * cancelled or times out.
+ */
+class PendingQuery<T> extends TimedFuture<T> {
+    /** The table the future was added to. */
+    PendingQueries table;
+    int id;
+    /** Whether the query was sent and counts against the window. Guarded by the table. */
+    boolean inFlight;
+    /** The query while it waits for room in the window. Guarded by the table. */
+    Query<?, ?> query;
+
+    /** Returns true if the future takes many responses, staying in the table until the end of the stream. */
+    boolean isStream() {
+        return false;
+    }
+
+    /** Called with each response to the query. */
+    @SuppressWarnings("unchecked")
+    void accept(Object response) {
+        complete((T) response);
+    }
+
+    /** Returns true if the query was sent, false if it is waiting for room in the window. */
+    boolean isInFlight() {
+        synchronized (table) {
+            return inFlight;
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        // Removed first, so it's gone by the time anything waiting on it sees it cancelled.
+        final PendingQueries table = this.table;
+        if (table != null) table.cancel(id, this);
+        return super.cancel(mayInterruptIfRunning);
+    }
+}
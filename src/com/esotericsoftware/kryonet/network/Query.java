@@ -4,8 +4,8 @@ import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryonet.network.messages.Message;
 
 import java.time.Duration;
+import java.util.Iterator;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class is used to sendRaw messages that require a response.
@@ -17,15 +17,21 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Created by Evan on 6/16/16.
  */
 public abstract class Query<T, C extends Connection> implements Message {
-    private static final AtomicInteger counter = new AtomicInteger(0);
-
-    public final int id;
+    /**
+     * Assigned by the connection sending the query, unique among that connection's queries awaiting a response. Negative
+     * for a query the server sent to many connections at once.
+     */
+    public int id;
 
     private transient C origin;
+    private transient volatile boolean cancelled;
+    /** Whether the origin tracks this for cancellation, or needn't since it was answered. */
+    private transient volatile boolean tracked;
+    /** Guarded by this. */
+    private transient Runnable onCancel;
 
 
     protected Query(){
-        id = counter.incrementAndGet();
     }
 
 
@@ -34,9 +40,23 @@ public abstract class Query<T, C extends Connection> implements Message {
      * and the response must be non-null*/
     public void reply(T response){
         Objects.requireNonNull(response, "Cannot reply to query with null response.");
+        tracked = true;
+        if (cancelled || !origin.forgetQuery(id)) return;
         origin.sendObjectTCP(new Response<>(id, response));
     }
 
+    /**
+     * Replies to a received stream query with each element of the source as its own response, then the end of the
+     * stream. At most window responses are sent before the sender of the query takes any, and then one more for each it
+     * takes, so the source is drained on this thread and then on the update thread, which receives the sender's credit.
+     * The source must not block, or it stalls every connection of the end point.
+     */
+    protected void replyStream(Iterator<? extends T> source, int window) {
+        // Tracked until the stream ends, so a cancel that arrived before it started isn't missed.
+        if (isCancelled()) return;
+        origin.replyStream(id, source, window);
+    }
+
 
     /** This method determines how long the client will wait to get a response from a query before timing out.
      * If a query times out, an error condition is returned instead of a result.
@@ -50,6 +70,52 @@ public abstract class Query<T, C extends Connection> implements Message {
 
 
 
+    /**
+     * Returns true once the sender of this received query stopped waiting for the response, because it timed out or was
+     * cancelled, or the connection closed. Handlers doing long work may check it to stop early. Replies to a cancelled
+     * query are not sent.
+     * <p>
+     * A received query is only tracked for cancellation from the first call to this or {@link #onCancel(Runnable)}, so
+     * queries a handler never asks about cost nothing once it returns.
+     */
+    public boolean isCancelled() {
+        track();
+        return cancelled;
+    }
+
+    /**
+     * Runs the action once the sender of this received query stops waiting for the response, on the thread that learns
+     * of it, or at once if it already has. Replaces any action set before.
+     */
+    public void onCancel(Runnable action) {
+        track();
+        synchronized (this) {
+            if (!cancelled) {
+                onCancel = action;
+                return;
+            }
+        }
+        action.run();
+    }
+
+    private void track() {
+        if (tracked || origin == null) return;
+        tracked = true;
+        origin.trackQuery(this);
+    }
+
+    /** Called by the connection the query came from when its sender cancels it or the connection closes. */
+    void cancelled() {
+        final Runnable action;
+        synchronized (this) {
+            if (cancelled) return;
+            cancelled = true;
+            action = onCancel;
+            onCancel = null;
+        }
+        if (action != null) action.run();
+    }
+
     void setOrigin(C sender){
         if(origin != null)
             throw new KryoException("Origin is already set");
@@ -0,0 +1,38 @@
+package com.esotericsoftware.kryonet.network;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The responses to a query sent to many connections, by connection in the order they arrived, and the connections that
+ * didn't answer before the results were complete: because the quorum was reached, the deadline passed, or they were
+ * closed. See {@link AbstractServer#sendQueryToAll}.
+ */
+public final class QueryResults<C, R> {
+    private final Map<C, R> responses;
+    private final List<C> unanswered;
+
+    QueryResults(Map<C, R> responses, List<C> unanswered) {
+        this.responses = Collections.unmodifiableMap(responses);
+        this.unanswered = Collections.unmodifiableList(unanswered);
+    }
+
+    public Map<C, R> getResponses() {
+        return responses;
+    }
+
+    public List<C> getUnanswered() {
+        return unanswered;
+    }
+
+    /** Returns true if every connection the query was sent to answered. */
+    public boolean isComplete() {
+        return unanswered.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResults(" + responses.size() + " answered, " + unanswered.size() + " unanswered)";
+    }
+}
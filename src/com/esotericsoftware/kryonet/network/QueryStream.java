@@ -0,0 +1,170 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.StreamCredit;
+import com.esotericsoftware.kryonet.util.KryoNetException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The responses to a stream query, in the order they were sent. Each is available as soon as it arrives, and taking
+ * responses grants the other end credit to send more, so at most the window of responses is ever sent but not yet taken.
+ * <p>
+ * The stream fails with a {@link KryoNetException} if the other end's source failed or the connection closed, and with a
+ * {@link CancellationException} if no response arrived within the timeout or it was {@link #close() closed}.
+ */
+public final class QueryStream<T> implements Iterator<T>, AutoCloseable {
+    private final Connection<?> connection;
+    private final int window;
+    private final @Nullable Duration timeout;
+    final Pending pending = new Pending();
+    /** Guarded by this. */
+    private final ArrayDeque<T> responses = new ArrayDeque<>();
+    /** Responses taken since credit was last granted. Guarded by this. */
+    private int taken;
+
+    QueryStream(Connection<?> connection, int window, @Nullable Duration timeout) {
+        this.connection = connection;
+        this.window = window;
+        this.timeout = timeout;
+    }
+
+    /** Blocks until the next response arrives or the stream ends, returning false if it ended. */
+    @Override
+    public synchronized boolean hasNext() {
+        while (responses.isEmpty()) {
+            if (pending.isDone()) {
+                checkFailed();
+                return false;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KryoNetException("Interrupted while waiting for a response.", e);
+            }
+        }
+        return true;
+    }
+
+    /** Blocks until the next response arrives. */
+    @Override
+    public T next() {
+        final T next;
+        final int credits;
+        synchronized (this) {
+            if (!hasNext()) throw new NoSuchElementException();
+            next = responses.poll();
+            credits = take();
+        }
+        grant(credits);
+        return next;
+    }
+
+    /** Returns the next response if it has arrived, or null. Never blocks, so it may be called from the update thread. */
+    public @Nullable T poll() {
+        final T next;
+        final int credits;
+        synchronized (this) {
+            if (responses.isEmpty()) {
+                if (pending.isDone()) checkFailed();
+                return null;
+            }
+            next = responses.poll();
+            credits = take();
+        }
+        grant(credits);
+        return next;
+    }
+
+    /** Returns true once the stream ended and every response was taken. */
+    public synchronized boolean isDone() {
+        return responses.isEmpty() && pending.isDone();
+    }
+
+    /** Stops waiting for responses. Those arriving later are ignored. */
+    @Override
+    public void close() {
+        pending.cancel(false);
+    }
+
+    /**
+     * Counts a taken response, returning the credit to grant once those taken are half the window, or 0. Must hold this.
+     */
+    private int take() {
+        if (++taken < Math.max(1, window / 2) || pending.isDone()) return 0;
+        final int credits = taken;
+        taken = 0;
+        return credits;
+    }
+
+    /**
+     * Sends the credit. Must not hold this, since the send may block on a full write buffer while the update thread waits
+     * for this to accept a response.
+     */
+    private void grant(int credits) {
+        if (credits == 0) return;
+        final StreamCredit credit = new StreamCredit();
+        credit.id = pending.id;
+        credit.credits = credits;
+        connection.sendObjectTCP(credit);
+    }
+
+    private void checkFailed() {
+        try {
+            pending.getNow(null);
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            throw cause instanceof KryoNetException ? (KryoNetException) cause : new KryoNetException(cause);
+        }
+    }
+
+    private synchronized void wake() {
+        notifyAll();
+    }
+
+
+    /** Stays in the connection's table of pending queries until the stream ends, taking each response as it arrives. */
+    final class Pending extends PendingQuery<Void> {
+        @Override
+        boolean isStream() {
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void accept(Object response) {
+            synchronized (QueryStream.this) {
+                responses.add((T) response);
+                QueryStream.this.notifyAll();
+            }
+            // The timeout is for each response, so a long stream that keeps arriving doesn't time out.
+            if (timeout != null) setTimeout(timeout);
+        }
+
+        @Override
+        public boolean complete(Void value) {
+            if (!super.complete(value)) return false;
+            wake();
+            return true;
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable error) {
+            if (!super.completeExceptionally(error)) return false;
+            wake();
+            return true;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!super.cancel(mayInterruptIfRunning)) return false;
+            wake();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.RawListener;
+import java.nio.ByteBuffer;
+
+/** A TCP message that has been read but not deserialized, passed to a {@link RawListener}. Each connection reuses one
+ * frame and the buffer it reads into, so a frame is only valid until the listener returns: {@link #decode()} it or copy
+ * its {@link #payload()} to keep the message. */
+public final class RawFrame {
+	private final TcpConnection tcp;
+	private final ByteBuffer readBuffer, readView;
+	private ByteBuffer source, view;
+	private int typeId, start, length;
+	private Object message;
+	private boolean decoded;
+
+	RawFrame (TcpConnection tcp, ByteBuffer readBuffer) {
+		this.tcp = tcp;
+		this.readBuffer = readBuffer;
+		readView = readBuffer.asReadOnlyBuffer();
+	}
+
+	RawFrame set (ByteBuffer source, int start, int length, int typeId) {
+		this.source = source;
+		// Messages that arrived in fragments are reassembled in their own buffer, only those need a new view.
+		view = source == readBuffer ? readView : source.asReadOnlyBuffer();
+		this.start = start;
+		this.length = length;
+		this.typeId = typeId;
+		message = null;
+		decoded = false;
+		return this;
+	}
+
+	/** Returns the ID the serialization gave the message's type. */
+	public int typeId () {
+		return typeId;
+	}
+
+	/** Returns the number of bytes in the serialized message. */
+	public int length () {
+		return length;
+	}
+
+	/** Returns a read-only view of the serialized message, positioned at its first byte and limited to its last. Each
+	 * call resets the position and limit of the same view. */
+	public ByteBuffer payload () {
+		view.limit(start + length);
+		view.position(start);
+		return view;
+	}
+
+	/** Deserializes the message. Later calls return the same object without deserializing it again.
+	 * @throws com.esotericsoftware.kryonet.util.KryoNetException if the message can't be deserialized, in which case the
+	 *            connection will be closed. */
+	public Object decode () {
+		if (!decoded) {
+			final int position = source.position();
+			source.position(start);
+			try {
+				message = tcp.deserialize(source, length);
+			} finally {
+				source.position(position);
+			}
+			decoded = true;
+		}
+		return message;
+	}
+
+	@Override
+	public String toString () {
+		return "RawFrame(type " + typeId + ", " + length + " bytes)";
+	}
+}
@@ -15,8 +15,9 @@ public final class Response<T> {
     public int id;
 
 
-    /**no-arg constructor for use by serialization libraries*/
-    Response() {
+    /**no-arg constructor for use by serialization libraries. It is private so Kryo creates instances by reflection,
+     * as the classes ReflectASM generates can't call package private constructors on newer JVMs.*/
+    private Response() {
 
     }
 
@@ -0,0 +1,146 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.futures.TimedFuture;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The future results of a query sent to many connections. Each connection's response completes a {@link Part} in that
+ * connection's table of pending queries, and the results are complete once every connection answered or failed, the
+ * quorum answered, or the one timeout for the whole query passed. The parts still pending are then cancelled, which
+ * removes them from their tables, so late responses are ignored.
+ */
+final class ScatterGather<C extends Connection<?>, R> extends TimedFuture<QueryResults<C, R>> {
+    private final List<C> targets = new ArrayList<>();
+    private final List<Part<R>> parts = new ArrayList<>();
+    /** The responses in the order they arrived. Guarded by this. */
+    private final Map<C, R> responses = new LinkedHashMap<>();
+    private final int quorum;
+    private int failed;
+    /** True until every target was added and the query sent, so parts failing meanwhile don't finish early. */
+    private boolean sending = true;
+    private boolean finished;
+
+    ScatterGather(int quorum) {
+        this.quorum = quorum;
+    }
+
+    /** Adds a target before the query is sent, returning the part for its response. */
+    Part<R> addTarget(C target) {
+        final Part<R> part = new Part<>(this, targets.size());
+        targets.add(target);
+        parts.add(part);
+        return part;
+    }
+
+    /** Called once every target was added and the query sent, in case the parts already completed. */
+    void sent() {
+        synchronized (this) {
+            sending = false;
+            if (finished || !ready()) return;
+            finished = true;
+        }
+        finish();
+    }
+
+    private void answered(int index, R response) {
+        synchronized (this) {
+            if (finished) return;
+            responses.put(targets.get(index), response);
+            if (!ready()) return;
+            finished = true;
+        }
+        finish();
+    }
+
+    private void failed() {
+        synchronized (this) {
+            if (finished) return;
+            ++failed;
+            if (!ready()) return;
+            finished = true;
+        }
+        finish();
+    }
+
+    /** Returns true if the quorum answered, or every target answered or failed. Must hold this. */
+    private boolean ready() {
+        return !sending && (responses.size() >= quorum || responses.size() + failed >= targets.size());
+    }
+
+    @Override
+    protected void timedOut() {
+        synchronized (this) {
+            if (finished) return;
+            finished = true;
+        }
+        finish();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (finished) return false;
+            finished = true;
+        }
+        cancelParts();
+        return super.cancel(mayInterruptIfRunning);
+    }
+
+    /**
+     * Cancels the parts still pending, then completes with the responses so far, so the parts have left their tables by
+     * the time anything waiting on the results sees them.
+     */
+    private void finish() {
+        final QueryResults<C, R> results;
+        synchronized (this) {
+            final List<C> unanswered = new ArrayList<>(targets.size() - responses.size());
+            for (C target : targets) {
+                if (!responses.containsKey(target)) unanswered.add(target);
+            }
+            results = new QueryResults<>(new LinkedHashMap<>(responses), unanswered);
+        }
+        cancelParts();
+        complete(results);
+    }
+
+    private void cancelParts() {
+        for (Part<R> part : parts)
+            part.cancel(false);
+    }
+
+
+    /** One target's response, which reports to the gather when it completes. */
+    static final class Part<R> extends PendingQuery<R> {
+        private final ScatterGather<?, R> gather;
+        private final int index;
+
+        Part(ScatterGather<?, R> gather, int index) {
+            this.gather = gather;
+            this.index = index;
+        }
+
+        @Override
+        public boolean complete(R response) {
+            if (!super.complete(response)) return false;
+            gather.answered(index, response);
+            return true;
+        }
+
+        @Override
+        public boolean completeExceptionally(Throwable error) {
+            if (!super.completeExceptionally(error)) return false;
+            gather.failed();
+            return true;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!super.cancel(mayInterruptIfRunning)) return false;
+            gather.failed();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.esotericsoftware.kryonet.network;
+
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces the wakeups that sends request from a selector's loop, so idle events fire after a write. The first send
+ * after the loop clears the flag wakes the selector, and every other send until the loop runs again skips the system
+ * call. This is safe because a wakeup made while the loop isn't selecting makes its next select return immediately,
+ * and the loop only clears the flag after select returns, before it processes keys and fires idle events.
+ * <p>
+ * Coalescing can be turned off with the system property {@code kryonet.coalesceWakeups=false}, read when an end point
+ * or reactor is created, to compare against a wakeup per send.
+ */
+final class SelectorWakeup {
+    private final Selector selector;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final boolean coalesce = Boolean.parseBoolean(System.getProperty("kryonet.coalesceWakeups", "true"));
+
+    SelectorWakeup(Selector selector) {
+        this.selector = selector;
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /** Wakes up the selector unless a wakeup is already pending. This method is thread safe. */
+    void wakeup() {
+        if (!coalesce || !pending.get() && pending.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    /** Called by the selecting thread each time select returns. */
+    void selected() {
+        pending.set(false);
+    }
+}
@@ -0,0 +1,85 @@
+package com.esotericsoftware.kryonet.network;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A complete TCP frame, length included, or several back to back, held off heap and shared by every connection it is broadcast to. Connections
+ * that can't write the frame right away queue a read only view of it rather than a copy, and hold a reference until
+ * the view has been written. The buffer goes back to its pool when the last reference is released.
+ * <p>
+ * The creator holds the first reference and must {@link #release()} it once the frame has been handed to every
+ * connection.
+ */
+final class SharedFrame {
+    private final ByteBuffer buffer;
+    /** Null if the buffer was too large for a pooled segment. */
+    private final BufferPool pool;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private SharedFrame(ByteBuffer buffer, BufferPool pool) {
+        this.buffer = buffer;
+        this.pool = pool;
+    }
+
+    /** Copies the remaining bytes of payload into a new frame, prefixed with their length in lengthLength bytes. */
+    static SharedFrame wrap(ByteBuffer payload, int lengthLength, BufferPool pool) {
+        return wrap(new ByteBuffer[] {payload}, lengthLength, pool);
+    }
+
+    /**
+     * Copies the remaining bytes of each payload into a new buffer of back to back frames, each prefixed with its length
+     * in lengthLength bytes, so they can be sent together.
+     */
+    static SharedFrame wrap(ByteBuffer[] payloads, int lengthLength, BufferPool pool) {
+        int size = 0;
+        for (ByteBuffer payload : payloads)
+            size += lengthLength + payload.remaining();
+        final boolean pooled = size <= pool.getBufferSize();
+        final ByteBuffer buffer = pooled ? pool.acquire() : ByteBuffer.allocateDirect(size);
+        for (ByteBuffer payload : payloads) {
+            TcpConnection.writeLength(buffer, payload.remaining(), lengthLength);
+            buffer.put(payload);
+        }
+        buffer.flip();
+        return new SharedFrame(buffer, pooled ? pool : null);
+    }
+
+    /** Copies a message compressed by {@link FrameCompression} into a new frame flagged as compressed. */
+    static SharedFrame wrapCompressed(ByteBuffer compressed, int lengthLength, BufferPool pool) {
+        final int size = lengthLength + 1 + lengthLength + compressed.remaining();
+        final boolean pooled = size <= pool.getBufferSize();
+        final ByteBuffer buffer = pooled ? pool.acquire() : ByteBuffer.allocateDirect(size);
+        TcpConnection.writeCompressedHeader(buffer, TcpConnection.FLAG_COMPRESSED, compressed.remaining(), lengthLength);
+        buffer.put(compressed);
+        buffer.flip();
+        return new SharedFrame(buffer, pooled ? pool : null);
+    }
+
+    /** Returns a new read only view of the whole frame, with its own position. Its capacity is the frame size. */
+    ByteBuffer view() {
+        return buffer.asReadOnlyBuffer().slice();
+    }
+
+    int size() {
+        return buffer.limit();
+    }
+
+    void retain() {
+        if (references.getAndIncrement() <= 0) throw new IllegalStateException("Frame was already released.");
+    }
+
+    void release() {
+        final int remaining = references.decrementAndGet();
+        if (remaining == 0) {
+            if (pool != null) pool.release(buffer);
+        } else if (remaining < 0) {
+            throw new IllegalStateException("Frame was released too many times.");
+        }
+    }
+
+    /** Returns the number of references still held, for tests. */
+    int references() {
+        return references.get();
+    }
+}
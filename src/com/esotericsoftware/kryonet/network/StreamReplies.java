@@ -0,0 +1,149 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryo.util.IntMap;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.StreamEnd;
+import java.util.Iterator;
+
+/**
+ * The streams a connection is sending in reply to stream queries, by query ID. Each stream sends a response only for a
+ * credit the sender of the query granted, so neither end holds more than the window of responses at once.
+ * <p>
+ * A stream is drained by one thread at a time: whichever started it, or granted it credit while it was out, so credit
+ * arriving while another thread drains it is picked up by that thread instead. The source is only pulled outside locks,
+ * and must not block, since credit arrives on the update thread and that thread then pulls the source.
+ */
+final class StreamReplies {
+    private final Connection<?> connection;
+    private final IntMap<Reply> replies = new IntMap<>();
+
+    StreamReplies(Connection<?> connection) {
+        this.connection = connection;
+    }
+
+    /** Starts streaming the source in reply to the query with the ID, sending up to window responses now. */
+    void start(int id, Iterator<?> source, int window) {
+        if (window <= 0) throw new IllegalArgumentException("window must be positive: " + window);
+        final Reply reply = new Reply(id, source);
+        synchronized (this) {
+            replies.put(id, reply);
+        }
+        grant(reply, window);
+    }
+
+    /** Lets the stream for the query with the ID send more responses. */
+    void grant(int id, int credits) {
+        final Reply reply;
+        synchronized (this) {
+            reply = replies.get(id);
+        }
+        // Ended already, the credit for its last responses arriving after.
+        if (reply != null) grant(reply, credits);
+    }
+
+    private void grant(Reply reply, int credits) {
+        synchronized (reply) {
+            reply.credits += credits;
+            if (reply.draining || reply.ended) return;
+            reply.draining = true;
+        }
+        drain(reply);
+    }
+
+    /**
+     * Sends responses while there are credits, ending the stream once the source runs out or fails. The source is only
+     * pulled with a credit in hand, so it is never asked for a response that can't be sent yet.
+     */
+    private void drain(Reply reply) {
+        final Iterator<?> source = reply.source;
+        while (true) {
+            synchronized (reply) {
+                if (reply.credits == 0 || reply.ended) {
+                    reply.draining = false;
+                    return;
+                }
+                --reply.credits;
+            }
+            final Object next;
+            try {
+                if (!source.hasNext()) {
+                    end(reply, null);
+                    return;
+                }
+                next = source.next();
+            } catch (RuntimeException e) {
+                end(reply, e.toString());
+                return;
+            }
+            connection.sendObjectTCP(new Response<>(reply.id, next));
+        }
+    }
+
+    private void end(Reply reply, String error) {
+        final boolean cancelled;
+        synchronized (this) {
+            cancelled = replies.get(reply.id) != reply;
+            if (!cancelled) replies.remove(reply.id);
+        }
+        synchronized (reply) {
+            reply.ended = true;
+            reply.draining = false;
+        }
+        // The sender of the query stopped waiting for the stream, so doesn't need its end.
+        if (cancelled) return;
+        connection.forgetQuery(reply.id);
+        final StreamEnd end = new StreamEnd();
+        end.id = reply.id;
+        end.error = error;
+        connection.sendObjectTCP(end);
+    }
+
+    /** Stops the stream for the query with the ID without ending it, since its sender stopped waiting for it. */
+    void cancel(int id) {
+        final Reply reply;
+        synchronized (this) {
+            reply = replies.remove(id);
+        }
+        if (reply == null) return;
+        synchronized (reply) {
+            reply.ended = true;
+        }
+    }
+
+    /** Stops every stream without ending it, since the connection closed. */
+    void clear() {
+        final Reply[] stopped;
+        synchronized (this) {
+            stopped = new Reply[replies.size];
+            int i = 0;
+            for (Reply reply : replies.values())
+                stopped[i++] = reply;
+            replies.clear();
+        }
+        for (Reply reply : stopped) {
+            synchronized (reply) {
+                reply.ended = true;
+            }
+        }
+    }
+
+    synchronized int size() {
+        return replies.size;
+    }
+
+
+    private static final class Reply {
+        final int id;
+        final Iterator<?> source;
+        /** Guarded by this. */
+        int credits;
+        /** Whether a thread is draining the source. Guarded by this. */
+        boolean draining;
+        /** Guarded by this. */
+        boolean ended;
+
+        Reply(int id, Iterator<?> source) {
+            this.id = id;
+            this.source = source;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.esotericsoftware.kryonet.network;
+
+/**
+ * Messages sent over TCP on a connection while a batch is open, which are written together when it is closed. See
+ * {@link Connection#batchTCP()}.
+ */
+public final class TcpBatch implements AutoCloseable {
+    private final Connection<?> connection;
+    private boolean closed;
+
+    TcpBatch(Connection<?> connection) {
+        this.connection = connection;
+    }
+
+    /** Writes the messages sent since the batch was opened. Does nothing if the batch is already closed. */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        connection.endBatchTCP();
+    }
+}
@@ -19,17 +19,22 @@
 
 package com.esotericsoftware.kryonet.network;
 
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryonet.serializers.Serialization;
+import com.esotericsoftware.kryonet.util.CoarseClock;
 import com.esotericsoftware.kryonet.util.KryoNetException;
 import com.esotericsoftware.kryonet.util.ProtocolUtils;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.esotericsoftware.minlog.Log.DEBUG;
 import static com.esotericsoftware.minlog.Log.TRACE;
@@ -41,57 +46,157 @@ class TcpConnection {
 
 	private static final int IPTOS_LOWDELAY = 0x10;
 	private static final String TAG = "Kryonet";
+	/** How often a connection with both keep alive and timeout disabled is checked again for new settings. */
+	private static final int TIMER_RECHECK_MILLIS = 1000;
+	/** Default for {@link #maxMessageSize}. */
+	static final int DEFAULT_MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * A frame whose length is 0 is followed by a flags byte describing it, then the length of the rest of the frame. A
+	 * fragment frame continues with, for the first fragment of a message, the 4 byte length of the whole message.
+	 */
+	static final byte FLAG_FRAGMENT = 0x01;
+	/** The frame's message, or every fragment of it, is compressed by {@link FrameCompression}. */
+	static final byte FLAG_COMPRESSED = 0x02;
+	/** With {@link #FLAG_COMPRESSED}, the message is compressed with the {@link CompressionDictionary} it names. */
+	static final byte FLAG_DICTIONARY = 0x04;
+	/**
+	 * The frame continues with a 4 byte delta key, then {@link #DELTA_FULL} and a message, {@link #DELTA_PATCH} and a
+	 * {@link DeltaEncoding} patch to the last message with that key, or {@link #DELTA_FORGET} and nothing.
+	 */
+	static final byte FLAG_DELTA = 0x08;
+	static final byte DELTA_FULL = 0, DELTA_PATCH = 1, DELTA_FORGET = 2;
+	private static final int DELTA_HEADER = 4 + 1;
+	/**
+	 * The most delta keys, and bytes of last messages across them, each end keeps per connection. Sending past either
+	 * fails, and a peer that does is closed, so it can't grow the heap without bound.
+	 */
+	static final int MAX_DELTA_KEYS = 4096, MAX_DELTA_BYTES = 4 * 1024 * 1024;
+	private static final CompressionDictionary[] NO_DICTIONARIES = {};
+
+	/**
+	 * Each sending thread serializes into its own scratch buffer, so serialization doesn't hold the write lock. Grown to
+	 * the largest object buffer plus length of any connection the thread has sent with.
+	 */
+	private static final ThreadLocal<ByteBuffer> SCRATCH = new ThreadLocal<>();
 
 	SocketChannel socketChannel;
 	int keepAliveMillis = 8000;
-	final ByteBuffer readBuffer, writeBuffer;
+	final ByteBuffer readBuffer;
 	boolean bufferPositionFix;
 	int timeoutMillis = 12000;
 	float idleThreshold = 0.1f;
-
+	/** The largest message that will be fragmented to send or reassembled on receipt. */
+	volatile int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+	/** Messages this many bytes or larger are compressed, or -1 until the other end has agreed to compression. */
+	volatile int compressionThreshold = -1;
+	/** The dictionary messages are compressed with, or null. Set before the compression threshold. */
+	volatile CompressionDictionary compressionDictionary;
+	/** The thread that reads and writes this connection's socket. Sends from it must never wait for the queue to drain. */
+	volatile Thread ioThread;
+	volatile boolean writable = true;
+
+	private final Connection connection;
 	private final Serialization serialization;
+	private final CoarseClock clock;
 	private SelectionKey selectionKey;
+	private SelectorWakeup wakeup;
 	private volatile long lastWriteTime, lastReadTime;
 	private int currentObjectLength;
+	/** The type ID of the last object returned by {@link #readObject()}. Only used by the reading thread. */
+	int typeId = -1;
+	private boolean currentFragment;
+	/** The flags of the current frame, and of the first fragment of the message being reassembled. */
+	private byte currentFlags, reassemblyFlags;
+	/** The message being reassembled from fragments, or null. Only used by the reading thread. */
+	private ByteBuffer reassembly;
+	/** Created when the first compressed message arrives. Only used by the reading thread. */
+	private FrameCompression inflation;
+	/** The last reassembled message, kept until the next read in case it was returned as a raw frame. */
+	private ByteBuffer reassembled;
+	/** The last message received with each delta key. Only used by the reading thread. */
+	private final Map<Integer, byte[]> receivedImages = new HashMap<>();
+	/** The bytes of every image in {@link #receivedImages}. Only used by the reading thread. */
+	private int receivedImageBytes;
+	/** Returned by {@link #readObject()} for messages a raw listener wants. Only used by the reading thread. */
+	private final RawFrame rawFrame;
+	private final MessageBufferPool messagePool;
 
 	private final Object writeLock = new Object();
 	private final int lengthLength;
-
-	public TcpConnection (Serialization serialization, int writeBufferSize, int objectBufferSize) {
+	private final WriteQueue writeQueue;
+	/** The last message sent with each delta key. Guarded by writeLock. */
+	private final Map<Integer, byte[]> sentImages = new HashMap<>();
+	/** The bytes of every image in {@link #sentImages}. Guarded by writeLock. */
+	private int sentImageBytes;
+	/** Frame headers for raw sends and fragments. Guarded by writeLock. */
+	private final ByteBuffer header;
+	private final int objectBufferSize;
+	private final ByteBuffer[] frame = new ByteBuffer[2];
+	private int writeLimit, lowWaterMark, highWaterMark;
+	private WriteOverflowPolicy overflowPolicy = WriteOverflowPolicy.CLOSE;
+	private int blockedSenders;
+	/** While positive, frames are only queued, so they are written together by uncork. Guarded by writeLock. */
+	private int corks;
+
+	public TcpConnection (Connection connection, Serialization serialization, CoarseClock clock, BufferPool writePool,
+		MessageBufferPool messagePool, int writeBufferSize, int objectBufferSize) {
+		this.connection = connection;
 		this.serialization = serialization;
-		writeBuffer = ByteBuffer.allocateDirect(writeBufferSize);
+		this.clock = clock;
+		this.messagePool = messagePool;
+		writeQueue = new WriteQueue(writePool);
+		writeLimit = writeBufferSize;
+		highWaterMark = writeBufferSize / 2;
+		lowWaterMark = writeBufferSize / 4;
 		readBuffer = ByteBuffer.allocateDirect(objectBufferSize);
 		readBuffer.flip();
-		if (writeBufferSize <= Byte.MAX_VALUE) {
-			lengthLength = 1;
-		} else if (writeBufferSize <= Short.MAX_VALUE) {
-			lengthLength = 2;
-		} else if (writeBufferSize < 0x01_00_00_00) {
-			lengthLength = 3;
-		} else {
-			lengthLength = 4;
-		}
+		rawFrame = new RawFrame(this, readBuffer);
+		lengthLength = lengthLength(writeBufferSize);
+		this.objectBufferSize = objectBufferSize;
+		header = ByteBuffer.allocateDirect(lengthLength + 1 + lengthLength + 4);
 	}
 
-	public SelectionKey accept (Selector selector, SocketChannel socketChannel) throws IOException {
-		writeBuffer.clear();
-		readBuffer.clear();
-		readBuffer.flip();
-		currentObjectLength = 0;
+	/** Returns the number of bytes used for the length of each frame sent by connections with this write buffer size. */
+	static int lengthLength (int writeBufferSize) {
+		if (writeBufferSize <= Byte.MAX_VALUE) return 1;
+		if (writeBufferSize <= Short.MAX_VALUE) return 2;
+		if (writeBufferSize < 0x01_00_00_00) return 3;
+		return 4;
+	}
+
+	static void writeLength (ByteBuffer buffer, int length, int lengthLength) {
+		ProtocolUtils.writeInt(buffer, length, lengthLength);
+	}
+
+	/** Writes the header of a single frame holding a compressed message of length bytes. */
+	static void writeCompressedHeader (ByteBuffer buffer, byte flags, int length, int lengthLength) {
+		ProtocolUtils.writeInt(buffer, 0, lengthLength);
+		buffer.put(flags);
+		ProtocolUtils.writeInt(buffer, length, lengthLength);
+	}
+
+	public SelectionKey accept (SelectorWakeup wakeup, SocketChannel socketChannel) throws IOException {
+		resetWriteQueue();
+		ioThread = Thread.currentThread();
+		resetReadBuffer();
+		compressionThreshold = -1;
+		compressionDictionary = null;
 		try {
 			this.socketChannel = socketChannel;
 			socketChannel.configureBlocking(false);
 			Socket socket = socketChannel.socket();
 			socket.setTcpNoDelay(true);
 
-			selectionKey = socketChannel.register(selector, SelectionKey.OP_READ);
+			this.wakeup = wakeup;
+			selectionKey = socketChannel.register(wakeup.selector(), SelectionKey.OP_READ);
 
 			if (DEBUG) {
 				debug(TAG, "Port " + socketChannel.socket().getLocalPort() + "/TCP onConnected to: "
 					+ socketChannel.socket().getRemoteSocketAddress());
 			}
 
-			lastReadTime = lastWriteTime = System.currentTimeMillis();
+			lastReadTime = lastWriteTime = clock.update();
 
 			return selectionKey;
 		} catch (IOException ex) {
@@ -100,12 +205,13 @@ class TcpConnection {
 		}
 	}
 
-	public void connect (Selector selector, SocketAddress remoteAddress, int timeout) throws IOException {
+	public void connect (SelectorWakeup wakeup, SocketAddress remoteAddress, int timeout) throws IOException {
+		final Selector selector = wakeup.selector();
 		close();
-		writeBuffer.clear();
-		readBuffer.clear();
-		readBuffer.flip();
-		currentObjectLength = 0;
+		resetWriteQueue();
+		resetReadBuffer();
+		compressionThreshold = -1;
+		compressionDictionary = null;
 		try {
 			SocketChannel socketChannel = selector.provider().openSocketChannel();
 			Socket socket = socketChannel.socket();
@@ -115,6 +221,7 @@ class TcpConnection {
 			socketChannel.configureBlocking(false);
 			this.socketChannel = socketChannel;
 
+			this.wakeup = wakeup;
 			selectionKey = socketChannel.register(selector, SelectionKey.OP_READ);
 			selectionKey.attach(this);
 
@@ -123,7 +230,7 @@ class TcpConnection {
 					+ socketChannel.socket().getRemoteSocketAddress());
 			}
 
-			lastReadTime = lastWriteTime = System.currentTimeMillis();
+			lastReadTime = lastWriteTime = clock.update();
 		} catch (IOException ex) {
 			close();
 			throw new IOException("Unable to connect to: " + remoteAddress, ex);
@@ -143,7 +250,7 @@ class TcpConnection {
 			buffer.flip();
 
 			if (bytesRead == -1) throw new SocketException("Connection is closed.");
-			lastReadTime = System.currentTimeMillis();
+			lastReadTime = clock.millis();
 
 			return buffer.remaining() >= length;
 		}
@@ -153,41 +260,170 @@ class TcpConnection {
 
 
 
+	/** Returns the next message, a {@link RawFrame} over it if a raw listener wants messages of its type, or null if
+	 * it hasn't fully arrived. A raw frame is only valid until the next call. */
 	public Object readObject() throws IOException {
 		SocketChannel socketChannel = this.socketChannel;
 		if (socketChannel == null) throw new SocketException("Connection is closed.");
+		releaseReassembled();
 
-		if (currentObjectLength == 0) {
+		while (true) {
+			if (currentObjectLength == 0 && !readHeader()) return null;
 
-			// Read the length of the next object from the socket.
-			if(!fillReadBuffer(lengthLength)){
+			final int length = currentObjectLength;
+			if(!fillReadBuffer(length)){
 				return null;
 			}
-			currentObjectLength = ProtocolUtils.readInt(readBuffer, lengthLength);
+			currentObjectLength = 0;
+
+			if (!currentFragment) {
+				if ((currentFlags & FLAG_DELTA) != 0) {
+					final ByteBuffer message = applyDelta(readBuffer, length);
+					if (message == null) continue;
+					reassembled = message;
+					return read(message, message.limit());
+				}
+				if ((currentFlags & FLAG_COMPRESSED) == 0) return read(readBuffer, length);
+				final ByteBuffer message = inflate(readBuffer, length, currentFlags);
+				reassembled = message;
+				return read(message, message.limit());
+			}
 
-			if (currentObjectLength <= 0) throw new KryoNetException("Invalid object length: " + currentObjectLength);
-			if (currentObjectLength > readBuffer.capacity())
-				throw new KryoNetException("Unable to fillReadBuffer object larger than fillReadBuffer buffer: " + currentObjectLength);
+			final ByteBuffer message = reassembly;
+			if (length > message.remaining())
+				throw new KryoNetException("Fragment of " + length + " bytes overruns message of " + message.limit() + " bytes.");
+			final int oldLimit = readBuffer.limit();
+			readBuffer.limit(readBuffer.position() + length);
+			message.put(readBuffer);
+			readBuffer.limit(oldLimit);
+
+			if (!message.hasRemaining()) {
+				reassembly = null;
+				message.flip();
+				if ((reassemblyFlags & FLAG_COMPRESSED) != 0) {
+					final ByteBuffer inflated = inflate(message, message.limit(), reassemblyFlags);
+					messagePool.release(message);
+					reassembled = inflated;
+				} else {
+					reassembled = message;
+				}
+				return read(reassembled, reassembled.limit());
+			}
 		}
+	}
 
+	/** Reads the header of the next frame, setting currentObjectLength. Returns false if it hasn't fully arrived. */
+	private boolean readHeader () throws IOException {
+		if (!fillReadBuffer(lengthLength)) return false;
+		final int start = readBuffer.position();
+		int length = ProtocolUtils.readInt(readBuffer, lengthLength);
+
+		if (length != 0) {
+			if (length < 0) throw new KryoNetException("Invalid object length: " + length);
+			if (length > readBuffer.capacity())
+				throw new KryoNetException("Unable to fillReadBuffer object larger than fillReadBuffer buffer: " + length);
+			currentFragment = false;
+			currentFlags = 0;
+			currentObjectLength = length;
+			return true;
+		}
 
-		final int length = currentObjectLength;
-		if(!fillReadBuffer(length)){
-			return null;
+		// An extended header, don't consume any of it until all of it has arrived.
+		readBuffer.position(start);
+		if (!fillReadBuffer(lengthLength + 1 + lengthLength)) return false;
+		final byte flags = readBuffer.get(readBuffer.position() + lengthLength);
+		if (flags == 0 || (flags & ~(FLAG_FRAGMENT | FLAG_COMPRESSED | FLAG_DICTIONARY | FLAG_DELTA)) != 0
+			|| (flags & (FLAG_COMPRESSED | FLAG_DICTIONARY)) == FLAG_DICTIONARY
+			|| (flags & FLAG_DELTA) != 0 && flags != FLAG_DELTA)
+			throw new KryoNetException("Unsupported frame flags: " + flags);
+		final boolean fragment = (flags & FLAG_FRAGMENT) != 0, first = fragment && reassembly == null;
+		if (first && !fillReadBuffer(lengthLength + 1 + lengthLength + 4)) return false;
+		readBuffer.position(readBuffer.position() + lengthLength + 1);
+
+		length = ProtocolUtils.readInt(readBuffer, lengthLength);
+		if (length <= 0 || length > readBuffer.capacity()) throw new KryoNetException("Invalid frame length: " + length);
+		if (first) {
+			final int messageLength = readBuffer.getInt();
+			if (messageLength <= 0 || messageLength > maxMessageSize)
+				throw new KryoNetException("Message length " + messageLength + " exceeds the max message size: " + maxMessageSize);
+			reassembly = messagePool.acquire(messageLength);
+			reassembly.limit(messageLength);
+			reassemblyFlags = flags;
 		}
-		currentObjectLength = 0;
+		currentFragment = fragment;
+		currentFlags = flags;
+		currentObjectLength = length;
+		return true;
+	}
 
+	/** Inflates the compressed message in the next length bytes of the buffer into a buffer from the message pool. */
+	private ByteBuffer inflate (ByteBuffer buffer, int length, byte flags) {
+		if (inflation == null) inflation = FrameCompression.inflating();
+		final EndPoint endPoint = connection.endPoint;
+		final CompressionDictionary[] dictionaries = endPoint == null ? NO_DICTIONARIES : endPoint.compressionDictionaries;
+		return inflation.inflate(buffer, length, (flags & FLAG_DICTIONARY) != 0, dictionaries, maxMessageSize, messagePool);
+	}
+
+	/**
+	 * Reads the delta frame in the next length bytes of the buffer into a buffer from the message pool holding the whole
+	 * message, or returns null if the frame only forgot a key.
+	 */
+	private ByteBuffer applyDelta (ByteBuffer buffer, int length) {
+		if (length < DELTA_HEADER) throw new KryoNetException("Invalid delta frame length: " + length);
+		final int key = buffer.getInt();
+		final byte mode = buffer.get();
+		final int rest = length - DELTA_HEADER;
+		final byte[] image;
+		switch (mode) {
+		case DELTA_FULL:
+			image = new byte[rest];
+			buffer.get(image);
+			break;
+		case DELTA_PATCH:
+			final byte[] base = receivedImages.get(key);
+			if (base == null) throw new KryoNetException("Delta for key " + key + " without a full message to patch.");
+			image = DeltaEncoding.patch(base, buffer, rest, maxMessageSize);
+			break;
+		case DELTA_FORGET:
+			buffer.position(buffer.position() + rest);
+			final byte[] forgotten = receivedImages.remove(key);
+			if (forgotten != null) receivedImageBytes -= forgotten.length;
+			return null;
+		default:
+			throw new KryoNetException("Unsupported delta mode: " + mode);
+		}
+		final byte[] previous = receivedImages.put(key, image);
+		receivedImageBytes += image.length - (previous == null ? 0 : previous.length);
+		if (receivedImages.size() > MAX_DELTA_KEYS || receivedImageBytes > MAX_DELTA_BYTES) {
+			throw new KryoNetException("Delta messages exceed " + MAX_DELTA_KEYS + " keys or " + MAX_DELTA_BYTES + " bytes: "
+				+ receivedImages.size() + " keys, " + receivedImageBytes + " bytes");
+		}
+		final ByteBuffer message = messagePool.acquire(image.length);
+		message.put(image);
+		message.flip();
+		return message;
+	}
 
-		final int startPosition = readBuffer.position();
-		final int oldLimit = readBuffer.limit();
-		readBuffer.limit(startPosition + length);
+	/** Reads the message in the next length bytes of the buffer, or skips them and returns a raw frame over them. */
+	private Object read (ByteBuffer buffer, int length) {
+		typeId = serialization.typeId(buffer);
+		final EndPoint endPoint = connection.endPoint;
+		if (endPoint == null || !endPoint.wantsRaw(typeId)) return deserialize(buffer, length);
+		final int start = buffer.position();
+		buffer.position(start + length);
+		return rawFrame.set(buffer, start, length, typeId);
+	}
 
+	Object deserialize (ByteBuffer buffer, int length) {
+		final int startPosition = buffer.position();
+		final int oldLimit = buffer.limit();
+		buffer.limit(startPosition + length);
 
 		try {
-			final Object object = serialization.read(readBuffer);
-			readBuffer.limit(oldLimit);
-			if (readBuffer.position() - startPosition != length) {
-				throw new KryoNetException("Incorrect number of bytes (" + (startPosition + length - readBuffer.position())
+			final Object object = serialization.read(buffer);
+			buffer.limit(oldLimit);
+			if (buffer.position() - startPosition != length) {
+				throw new KryoNetException("Incorrect number of bytes (" + (startPosition + length - buffer.position())
 						+ " remaining) used to deserialize object: " + object);
 			}
 
@@ -197,102 +433,670 @@ class TcpConnection {
 		}
 	}
 
+	private void resetReadBuffer () {
+		readBuffer.clear();
+		readBuffer.flip();
+		currentObjectLength = 0;
+		if (reassembly != null) {
+			messagePool.release(reassembly);
+			reassembly = null;
+		}
+		releaseReassembled();
+		receivedImages.clear();
+		receivedImageBytes = 0;
+	}
+
+	private void releaseReassembled () {
+		if (reassembled != null) {
+			messagePool.release(reassembled);
+			reassembled = null;
+		}
+	}
+
+	/**
+	 * Queues every frame sent until {@link #uncork()}, from any thread, instead of writing it. The update thread corks a
+	 * connection while it reads a batch of frames from it, so the responses and other messages sent by their handlers go
+	 * out in one gathering write rather than one write each. Corks nest, and the frames are written by the last uncork.
+	 */
+	void cork () {
+		synchronized (writeLock) {
+			++corks;
+		}
+	}
+
+	/** Writes the frames queued since the first {@link #cork()}, and requests OP_WRITE for any the socket didn't take. */
+	void uncork () throws IOException {
+		synchronized (writeLock) {
+			if (corks > 0 && --corks > 0) return;
+			if (writeQueue.isEmpty()) return;
+		}
+		writeOperation();
+		synchronized (writeLock) {
+			final SelectionKey selectionKey = this.selectionKey;
+			if (!writeQueue.isEmpty() && selectionKey != null)
+				selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+	}
+
+	/**
+	 * Uncorks after the read that corked failed. Any error writing the queued frames is added to the failure as suppressed,
+	 * rather than replacing the error that stopped the read.
+	 */
+	void uncork (Throwable failure) {
+		try {
+			uncork();
+		} catch (IOException | RuntimeException ex) {
+			failure.addSuppressed(ex);
+		}
+	}
+
 	public void writeOperation () throws IOException {
+		boolean becameWritable = false;
 		synchronized (writeLock) {
-			if (writeToSocket()) {
+			SocketChannel socketChannel = this.socketChannel;
+			if (socketChannel == null) throw new SocketException("Connection is closed.");
+			if (writeQueue.writeTo(socketChannel, bufferPositionFix)) {
 				// Write successful, clear OP_WRITE.
 				selectionKey.interestOps(SelectionKey.OP_READ);
 			}
-			lastWriteTime = System.currentTimeMillis();
+			lastWriteTime = clock.millis();
+
+			if (!writable && writeQueue.size() <= lowWaterMark) {
+				writable = true;
+				becameWritable = true;
+			}
+			if (blockedSenders > 0) writeLock.notifyAll();
 		}
+		if (becameWritable) connection.notifyWritabilityChanged(true);
 	}
 
-	private boolean writeToSocket () throws IOException {
-		SocketChannel socketChannel = this.socketChannel;
+	/**
+	 * Serializes the object into the calling thread's scratch buffer, or a pooled message buffer if it's too large, then
+	 * takes the write lock only to write or queue the bytes. This method is thread safe.
+	 */
+	public int send (Object object) throws IOException {
 		if (socketChannel == null) throw new SocketException("Connection is closed.");
+		ByteBuffer buffer = scratch(objectBufferSize + lengthLength);
+		// Leave room for length. The scratch buffer may be larger, so only allow as much data as fits in a frame.
+		buffer.clear();
+		buffer.limit(objectBufferSize + lengthLength);
+		buffer.position(lengthLength);
+
+		// Write data.
+		boolean pooled = false;
+		try {
+			serialization.write(buffer, object);
+		} catch (KryoNetException ex) {
+			throw new KryoNetException("Error serializing object of type: " + object.getClass().getName(), ex);
+		} catch (RuntimeException ex) {
+			if (!isBufferOverflow(ex) || maxMessageSize <= objectBufferSize) throw ex;
+			buffer = serializeMessage(object, objectBufferSize * 2);
+			pooled = true;
+		}
+		if (!pooled) {
+			buffer.flip();
+			buffer.position(lengthLength);
+		}
 
-		ByteBuffer buffer = writeBuffer;
-		buffer.flip();
-		while (buffer.hasRemaining()) {
-			if (bufferPositionFix) {
-				buffer.compact();
-				buffer.flip();
+		final int compressionThreshold = this.compressionThreshold;
+		final CompressionDictionary dictionary = compressionDictionary;
+		final ByteBuffer compressed = compressionThreshold != -1 && buffer.remaining() >= compressionThreshold
+			? FrameCompression.deflate(buffer, dictionary, messagePool) : null;
+
+		final int size;
+		final boolean becameUnwritable;
+		try {
+			synchronized (writeLock) {
+				final boolean wasWritable = writable;
+				if (compressed != null) {
+					size = enqueueCompressed(compressed, dictionary == null ? FLAG_COMPRESSED : FLAG_COMPRESSED | FLAG_DICTIONARY);
+				} else if (buffer.remaining() <= objectBufferSize && !pooled) {
+					// Write data length.
+					ProtocolUtils.writeInt(buffer, buffer.remaining(), lengthLength, 0);
+					buffer.position(0);
+					size = enqueue(buffer, buffer.remaining());
+				} else {
+					size = enqueueFragments(buffer, FLAG_FRAGMENT);
+				}
+				becameUnwritable = wasWritable && !writable;
 			}
-			if (socketChannel.write(buffer) == 0) break;
+		} finally {
+			if (pooled) messagePool.release(buffer);
+			if (compressed != null) messagePool.release(compressed);
 		}
-		buffer.compact();
+		if (becameUnwritable) connection.notifyWritabilityChanged(false);
+		return size;
+	}
 
-		return buffer.position() == 0;
+	/** Returns the calling thread's scratch buffer, growing it to at least capacity bytes. */
+	private static ByteBuffer scratch (int capacity) {
+		ByteBuffer buffer = SCRATCH.get();
+		if (buffer == null || buffer.capacity() < capacity) {
+			buffer = ByteBuffer.allocateDirect(capacity);
+			SCRATCH.set(buffer);
+		}
+		return buffer;
 	}
 
-	/** This method is thread safe. */
-	public int send (Object object) throws IOException {
-		final SocketChannel socketChannel = this.socketChannel;
+
+	/**
+	 * Serializes every object into one pooled buffer, each in its own frame, then takes the write lock once to write or
+	 * queue all of the frames with a single write. Objects larger than the object buffer are fragmented within the
+	 * batch. {@link CachedMessage}s are copied as they are, already serialized. The batch is admitted or dropped as a
+	 * whole, and frames from other senders are never interleaved with it. This method is thread safe.
+	 *
+	 * @return The number of bytes written or queued, or 0 if the batch was empty or dropped.
+	 */
+	public int sendBatch (Iterable<?> objects) throws IOException {
 		if (socketChannel == null) throw new SocketException("Connection is closed.");
-		synchronized (writeLock) {
-			// Leave room for length.
-			final int start = writeBuffer.position();
-			final int objectOffset = start + lengthLength;
-			writeBuffer.position(objectOffset);
+		// Holds the batch buffer, so the current one is released even if appending throws after it was replaced.
+		final ByteBuffer[] holder = {messagePool.acquire(lengthLength + objectBufferSize)};
+		try {
+			for (Object object : objects)
+				appendFrames(holder, object);
+			final ByteBuffer batch = holder[0];
+			batch.flip();
+			if (!batch.hasRemaining()) return 0;
+
+			final int size;
+			final boolean becameUnwritable;
+			synchronized (writeLock) {
+				final boolean wasWritable = writable;
+				size = enqueue(batch, batch.remaining());
+				becameUnwritable = wasWritable && !writable;
+			}
+			if (becameUnwritable) connection.notifyWritabilityChanged(false);
+			return size;
+		} finally {
+			messagePool.release(holder[0]);
+		}
+	}
 
-			// Write data.
+	/** Appends the frames for one object to the batch in holder. */
+	private void appendFrames (ByteBuffer[] holder, Object object) {
+		if (object instanceof CachedMessage) {
+			final CachedMessage<?> cached = (CachedMessage<?>)object;
+			final ByteBuffer batch = ensureRemaining(holder, lengthLength + cached.length);
+			ProtocolUtils.writeInt(batch, cached.length, lengthLength);
+			batch.put(cached.cached, cached.start, cached.length);
+			return;
+		}
+
+		final ByteBuffer batch = ensureRemaining(holder, lengthLength + objectBufferSize);
+		final int start = batch.position();
+		final int limit = batch.limit();
+		// Leave room for length, and only allow as much data as fits in a frame.
+		batch.position(start + lengthLength);
+		batch.limit(start + lengthLength + objectBufferSize);
+		try {
+			serialization.write(batch, object);
+		} catch (KryoNetException ex) {
+			throw new KryoNetException("Error serializing object of type: " + object.getClass().getName(), ex);
+		} catch (RuntimeException ex) {
+			if (!isBufferOverflow(ex) || maxMessageSize <= objectBufferSize) throw ex;
+			batch.limit(limit);
+			batch.position(start);
+			final ByteBuffer message = serializeMessage(object, objectBufferSize * 2);
 			try {
-				serialization.write(writeBuffer, object);
-			} catch (KryoNetException ex) {
-				throw new KryoNetException("Error serializing object of type: " + object.getClass().getName(), ex);
+				appendFragments(holder, message);
+			} finally {
+				messagePool.release(message);
 			}
-			final int end = writeBuffer.position();
-			// Write data length.
-			ProtocolUtils.writeInt(writeBuffer, end - objectOffset, lengthLength, start);
+			return;
+		}
+		batch.limit(limit);
+		ProtocolUtils.writeInt(batch, batch.position() - start - lengthLength, lengthLength, start);
+	}
 
-			postWrite(start);
-			return end - start;
+	private void appendFragments (ByteBuffer[] holder, ByteBuffer message) {
+		final int length = message.remaining();
+		final ByteBuffer batch = ensureRemaining(holder, fragmentedSize(length));
+		final int limit = message.limit();
+		for (boolean first = true; message.hasRemaining(); first = false) {
+			final int fragmentLength = Math.min(objectBufferSize, limit - message.position());
+			putFragmentHeader(batch, FLAG_FRAGMENT, fragmentLength, first ? length : -1);
+			message.limit(message.position() + fragmentLength);
+			batch.put(message);
+			message.limit(limit);
 		}
 	}
 
+	/** Replaces the batch in holder with a larger pooled copy if it has fewer than length bytes remaining. */
+	private ByteBuffer ensureRemaining (ByteBuffer[] holder, int length) {
+		final ByteBuffer batch = holder[0];
+		if (batch.remaining() >= length) return batch;
+		final ByteBuffer larger = messagePool.acquire(Math.max(batch.capacity() * 2, batch.position() + length));
+		batch.flip();
+		larger.put(batch);
+		holder[0] = larger;
+		messagePool.release(batch);
+		return larger;
+	}
+
 
 	/** This method is thread safe. */
 	public int sendRaw (ByteBuffer buffer, int length) throws IOException {
 		if (socketChannel == null) throw new SocketException("Connection is closed.");
+		if (length > objectBufferSize) return sendRawFragments(buffer);
 		final int size = length + lengthLength;
+		final boolean becameUnwritable;
+		synchronized (writeLock) {
+			final boolean wasWritable = writable;
+			if (!admit(size)) return 0;
+
+			// The header is shared by senders, so only fill it in once admit can no longer release the lock.
+			final ByteBuffer header = this.header;
+			header.clear();
+			ProtocolUtils.writeInt(header, length, lengthLength);
+			header.flip();
+			write(header, buffer);
+			updateWritability();
+
+			becameUnwritable = wasWritable && !writable;
+		}
+		if (becameUnwritable) connection.notifyWritabilityChanged(false);
+		return size;
+	}
 
+	/**
+	 * Sends a message already compressed by {@link FrameCompression}, without a dictionary. Only for connections whose
+	 * other end agreed to compression. This method is thread safe.
+	 */
+	public int sendCompressed (ByteBuffer compressed) throws IOException {
+		if (socketChannel == null) throw new SocketException("Connection is closed.");
+		final int size;
+		final boolean becameUnwritable;
 		synchronized (writeLock) {
-			final int start = writeBuffer.position();
+			final boolean wasWritable = writable;
+			size = enqueueCompressed(compressed, FLAG_COMPRESSED);
+			becameUnwritable = wasWritable && !writable;
+		}
+		if (becameUnwritable) connection.notifyWritabilityChanged(false);
+		return size;
+	}
 
-			// Write data.
+	/**
+	 * Serializes the object into the calling thread's scratch buffer, then sends it as a patch to the last message sent
+	 * with the same key, or whole if there was none or the patch wouldn't be smaller. This method is thread safe.
+	 */
+	public int sendDelta (int key, Object object) throws IOException {
+		if (socketChannel == null) throw new SocketException("Connection is closed.");
+		final ByteBuffer buffer = scratch(objectBufferSize);
+		buffer.clear();
+		buffer.limit(objectBufferSize - DELTA_HEADER);
+		try {
+			serialization.write(buffer, object);
+		} catch (KryoNetException ex) {
+			throw new KryoNetException("Error serializing object of type: " + object.getClass().getName(), ex);
+		} catch (RuntimeException ex) {
+			if (!isBufferOverflow(ex)) throw ex;
+			throw new KryoNetException("Object of type " + object.getClass().getName()
+				+ " is too large to send as a delta, larger than the object buffer: " + objectBufferSize, ex);
+		}
+		buffer.flip();
+		return sendDelta(key, buffer);
+	}
+
+	/**
+	 * Sends the remaining bytes of a serialized message, without consuming them, as a patch to the last message sent
+	 * with the same key, or whole. The last message for the key only changes if this one is written or queued, so one
+	 * dropped by the overflow policy is patched against next time. This method is thread safe.
+	 */
+	public int sendDelta (int key, ByteBuffer image) throws IOException {
+		if (socketChannel == null) throw new SocketException("Connection is closed.");
+		final int length = image.remaining();
+		if (length > objectBufferSize - DELTA_HEADER)
+			throw new KryoNetException("Message of " + length + " bytes is too large to send as a delta, larger than the object buffer: " + objectBufferSize);
+		final int headerLength = lengthLength + 1 + lengthLength;
+		final int maxSize = headerLength + DELTA_HEADER + length;
+		final ByteBuffer frame = messagePool.acquire(maxSize);
+		final boolean becameUnwritable;
+		final int size;
+		try {
+			synchronized (writeLock) {
+				final boolean wasWritable = writable;
+				// Admit first, since it may release the lock while blocked, and the patch must be against the last
+				// message queued for the key.
+				if (!admit(maxSize)) return 0;
+
+				final byte[] base = sentImages.get(key);
+				final int keys = sentImages.size() + (base == null ? 1 : 0);
+				final int bytes = sentImageBytes + length - (base == null ? 0 : base.length);
+				if (keys > MAX_DELTA_KEYS || bytes > MAX_DELTA_BYTES) {
+					throw new KryoNetException("Delta messages would exceed " + MAX_DELTA_KEYS + " keys or " + MAX_DELTA_BYTES
+						+ " bytes, the most the other end keeps: " + keys + " keys, " + bytes + " bytes");
+				}
+				frame.position(headerLength);
+				frame.putInt(key);
+				frame.put(DELTA_PATCH);
+				if (base == null || !DeltaEncoding.diff(base, image, frame)) {
+					frame.put(frame.position() - 1, DELTA_FULL);
+					frame.put(image.duplicate());
+				}
+				final int payloadLength = frame.position() - headerLength;
+				frame.flip();
+				writeLength(frame, 0, lengthLength);
+				frame.put(FLAG_DELTA);
+				writeLength(frame, payloadLength, lengthLength);
+				frame.position(0);
+				size = frame.remaining();
+				write(null, frame);
+				updateWritability();
+
+				if (base != null && base.length == length) {
+					image.duplicate().get(base);
+				} else {
+					final byte[] copy = new byte[length];
+					image.duplicate().get(copy);
+					sentImages.put(key, copy);
+				}
+				sentImageBytes = bytes;
+				becameUnwritable = wasWritable && !writable;
+			}
+		} finally {
+			messagePool.release(frame);
+		}
+		if (becameUnwritable) connection.notifyWritabilityChanged(false);
+		return size;
+	}
+
+	/**
+	 * Forgets the last message sent with the key at both ends, so the next one with the key is sent whole. This method
+	 * is thread safe.
+	 */
+	public void forgetDelta (int key) throws IOException {
+		if (socketChannel == null) throw new SocketException("Connection is closed.");
+		final int headerLength = lengthLength + 1 + lengthLength;
+		final ByteBuffer frame = messagePool.acquire(headerLength + DELTA_HEADER);
+		final boolean becameUnwritable;
+		try {
+			synchronized (writeLock) {
+				final boolean wasWritable = writable;
+				// Admit first, since it may release the lock while blocked and another message with the key be queued.
+				if (!sentImages.containsKey(key) || !admit(headerLength + DELTA_HEADER)) return;
+				final byte[] forgotten = sentImages.remove(key);
+				if (forgotten == null) return;
+				sentImageBytes -= forgotten.length;
+				writeLength(frame, 0, lengthLength);
+				frame.put(FLAG_DELTA);
+				writeLength(frame, DELTA_HEADER, lengthLength);
+				frame.putInt(key);
+				frame.put(DELTA_FORGET);
+				frame.flip();
+				write(null, frame);
+				updateWritability();
+				becameUnwritable = wasWritable && !writable;
+			}
+		} finally {
+			messagePool.release(frame);
+		}
+		if (becameUnwritable) connection.notifyWritabilityChanged(false);
+	}
+
+	/** Sends serialized bytes too large for one frame as fragments, as {@link #send(Object)} does. */
+	private int sendRawFragments (ByteBuffer message) throws IOException {
+		final int size;
+		final boolean becameUnwritable;
+		synchronized (writeLock) {
+			final boolean wasWritable = writable;
+			size = enqueueFragments(message, FLAG_FRAGMENT);
+			becameUnwritable = wasWritable && !writable;
+		}
+		if (becameUnwritable) connection.notifyWritabilityChanged(false);
+		return size;
+	}
+
+
+	/**
+	 * Writes as much of a shared frame as the socket will take, then queues a reference to the rest. The frame must have
+	 * been written with this connection's length length. This method is thread safe.
+	 *
+	 * @param view A view of the frame, which is consumed.
+	 */
+	public int sendShared (SharedFrame frame, ByteBuffer view) throws IOException {
+		if (socketChannel == null) throw new SocketException("Connection is closed.");
+		final int size = view.remaining();
+		final boolean becameUnwritable;
+		synchronized (writeLock) {
+			final boolean wasWritable = writable;
+			if (!admit(size)) return 0;
+
+			final SocketChannel socketChannel = this.socketChannel;
+			if (socketChannel == null) throw new SocketException("Connection is closed.");
+			final boolean wasEmpty = writeQueue.isEmpty();
+			if (wasEmpty && !bufferPositionFix && corks == 0) socketChannel.write(view);
+			if (view.hasRemaining()) writeQueue.appendShared(view.slice(), frame);
+			afterWrite(wasEmpty);
+			updateWritability();
+
+			becameUnwritable = wasWritable && !writable;
+		}
+		if (becameUnwritable) connection.notifyWritabilityChanged(false);
+		return size;
+	}
+
+
+	/**
+	 * Applies the overflow policy, then writes or queues a frame. The frame must be owned by the calling thread, since
+	 * the lock is released while blocked. Must hold writeLock.
+	 *
+	 * @return The number of bytes written or queued, or 0 if the frame was dropped.
+	 */
+	private int enqueue (ByteBuffer frame, int size) throws IOException {
+		if (!admit(size)) return 0;
+		write(null, frame);
+		updateWritability();
+		return size;
+	}
+
+	/**
+	 * Writes or queues a serialized message as fragments no larger than the object buffer. All fragments are queued
+	 * together, so frames from other senders are never interleaved with them. Must hold writeLock.
+	 *
+	 * @param message The serialized message, without a length, owned by the calling thread.
+	 * @return The number of bytes written or queued, or 0 if the message was dropped.
+	 */
+	private int enqueueFragments (ByteBuffer message, byte flags) throws IOException {
+		final int length = message.remaining();
+		final int fragments = fragmentCount(length);
+		final int size = fragmentedSize(length);
+		if (!admit(size)) return 0;
+
+		if (DEBUG) debug(TAG, connection + " sending " + length + " bytes in " + fragments + " fragments.");
+		final ByteBuffer header = this.header;
+		final int limit = message.limit();
+		for (int i = 0; i < fragments; ++i) {
+			final int fragmentLength = Math.min(objectBufferSize, limit - message.position());
+			header.clear();
+			putFragmentHeader(header, flags, fragmentLength, i == 0 ? length : -1);
+			header.flip();
+
+			message.limit(message.position() + fragmentLength);
+			write(header, message);
+			message.limit(limit);
+		}
+		updateWritability();
+		return size;
+	}
+
+	/**
+	 * Writes or queues a compressed message in a single frame flagged as compressed, or as compressed fragments if it is
+	 * still larger than the object buffer. Must hold writeLock.
+	 *
+	 * @param flags {@link #FLAG_COMPRESSED}, plus {@link #FLAG_DICTIONARY} if it was compressed with a dictionary.
+	 * @return The number of bytes written or queued, or 0 if the message was dropped.
+	 */
+	private int enqueueCompressed (ByteBuffer message, int flags) throws IOException {
+		final int length = message.remaining();
+		if (length > objectBufferSize) return enqueueFragments(message, (byte)(FLAG_FRAGMENT | flags));
+		final int size = lengthLength + 1 + lengthLength + length;
+		if (!admit(size)) return 0;
+
+		// The header is shared by senders, so only fill it in once admit can no longer release the lock.
+		final ByteBuffer header = this.header;
+		header.clear();
+		writeCompressedHeader(header, (byte)flags, length, lengthLength);
+		header.flip();
+		write(header, message);
+		updateWritability();
+		return size;
+	}
+
+	private int fragmentCount (int length) {
+		return (length + objectBufferSize - 1) / objectBufferSize;
+	}
+
+	/** Returns the number of bytes a message of length bytes takes once fragmented, headers included. */
+	private int fragmentedSize (int length) {
+		return length + fragmentCount(length) * (lengthLength + 1 + lengthLength) + 4;
+	}
+
+	/** @param messageLength The length of the whole message for its first fragment, else -1. */
+	private void putFragmentHeader (ByteBuffer buffer, byte flags, int fragmentLength, int messageLength) {
+		ProtocolUtils.writeInt(buffer, 0, lengthLength);
+		buffer.put(flags);
+		ProtocolUtils.writeInt(buffer, fragmentLength, lengthLength);
+		if (messageLength != -1) buffer.putInt(messageLength);
+	}
+
+	/**
+	 * Serializes an object into pooled message buffers of doubling size, starting at capacity, until it fits or reaches
+	 * the max message size. The caller must release the returned buffer to the message pool.
+	 */
+	private ByteBuffer serializeMessage (Object object, int capacity) {
+		final int maxMessageSize = this.maxMessageSize;
+		for (; ; capacity *= 2) {
+			final ByteBuffer buffer = messagePool.acquire(Math.min(capacity, maxMessageSize));
 			try {
-				ProtocolUtils.writeInt(writeBuffer, length, lengthLength);
-				writeBuffer.put(buffer);
-				postWrite(start);
-				return size;
-			} catch (KryoNetException ex) {
-				throw new KryoNetException("Error serializing broadcast message", ex);
+				serialization.write(buffer, object);
+			} catch (RuntimeException ex) {
+				messagePool.release(buffer);
+				if (ex instanceof KryoNetException)
+					throw new KryoNetException("Error serializing object of type: " + object.getClass().getName(), ex);
+				if (!isBufferOverflow(ex)) throw ex;
+				if (buffer.capacity() >= maxMessageSize) {
+					throw new KryoNetException("Object of type " + object.getClass().getName()
+						+ " is larger than the max message size: " + maxMessageSize, ex);
+				}
+				continue;
 			}
+			buffer.flip();
+			if (buffer.limit() > maxMessageSize) {
+				messagePool.release(buffer);
+				throw new KryoNetException("Object of type " + object.getClass().getName() + " is " + buffer.limit()
+					+ " bytes, larger than the max message size: " + maxMessageSize);
+			}
+			return buffer;
 		}
 	}
 
+	private static boolean isBufferOverflow (Throwable ex) {
+		for (; ex != null; ex = ex.getCause()) {
+			if (ex instanceof BufferOverflowException) return true;
+			if (ex instanceof KryoException && ex.getMessage() != null && ex.getMessage().startsWith("Buffer overflow"))
+				return true;
+		}
+		return false;
+	}
+
+	/** Returns true if queueing size more bytes would exceed the write limit. Anything fits in an empty queue. */
+	private boolean overflows (int size) {
+		return !writeQueue.isEmpty() && writeQueue.size() + size > writeLimit;
+	}
 
-	private void postWrite(int start) throws IOException {
-		// Write to socket if no data was queued.
-		if (start == 0 && !writeToSocket()) {
+	/** Applies the overflow policy if size more bytes don't fit in the queue. Returns false if they should be dropped. */
+	private boolean admit (int size) throws IOException {
+		if (!overflows(size)) return true;
+		final SocketChannel socketChannel = this.socketChannel;
+		if (corks > 0 && socketChannel != null) {
+			// The queue may only be full because it is corked. Whatever the socket doesn't take is left to OP_WRITE.
+			if (!writeQueue.writeTo(socketChannel, bufferPositionFix))
+				selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			if (!overflows(size)) return true;
+		}
+		if (overflowPolicy == WriteOverflowPolicy.DROP) {
+			if (DEBUG) debug(TAG, connection + " write buffer limit reached, dropping " + size + " bytes.");
+			return false;
+		}
+		if (overflowPolicy == WriteOverflowPolicy.CLOSE || Thread.currentThread() == ioThread) {
+			throw new KryoNetException("Write buffer limit reached: " + writeQueue.size() + " bytes queued, " + size
+				+ " more exceeds the limit of " + writeLimit);
+		}
+		return awaitRoom(size);
+	}
+
+	/** Updates writability after writing or queueing frames. Must hold writeLock. */
+	private void updateWritability () {
+		if (writable && writeQueue.size() > highWaterMark) writable = false;
+		if (DEBUG || TRACE) checkBufferCapacity();
+	}
+
+	/** Waits until size more bytes fit in the queue, or the queue is empty. Returns false if interrupted. */
+	private boolean awaitRoom (int size) throws SocketException {
+		++blockedSenders;
+		try {
+			while (socketChannel != null && overflows(size))
+				writeLock.wait();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			if (DEBUG) debug(TAG, connection + " interrupted while waiting for write buffer, dropping " + size + " bytes.");
+			return false;
+		} finally {
+			--blockedSenders;
+		}
+		if (socketChannel == null) throw new SocketException("Connection is closed.");
+		return true;
+	}
+
+	/** Writes the frame directly to the socket if nothing is queued, then queues whatever wasn't written. */
+	private void write (ByteBuffer header, ByteBuffer body) throws IOException {
+		final SocketChannel socketChannel = this.socketChannel;
+		if (socketChannel == null) throw new SocketException("Connection is closed.");
+
+		final boolean wasEmpty = writeQueue.isEmpty();
+		if (wasEmpty && !bufferPositionFix && corks == 0) {
+			if (header == null) {
+				socketChannel.write(body);
+			} else {
+				frame[0] = header;
+				frame[1] = body;
+				socketChannel.write(frame);
+				frame[0] = frame[1] = null;
+			}
+		}
+		if (header != null && header.hasRemaining()) writeQueue.append(header);
+		if (body.hasRemaining()) writeQueue.append(body);
+		afterWrite(wasEmpty);
+	}
+
+	/** Requests OP_WRITE if the queue just became non-empty. Must hold writeLock. */
+	private void afterWrite (boolean wasEmpty) {
+		if (corks > 0) {
+			// Written by uncork.
+		} else if (wasEmpty && !writeQueue.isEmpty()) {
 			// A partial write, set OP_WRITE to be notified when more writing can occur.
 			selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
 		} else {
 			// Full write, wake up selector so onIdle event will be fired.
-			selectionKey.selector().wakeup();
-		}
-
-		if (DEBUG || TRACE) {
-			checkBufferCapacity();
+			wakeup.wakeup();
 		}
 
-		lastWriteTime = System.currentTimeMillis();
+		lastWriteTime = clock.millis();
 	}
 
+	private void resetWriteQueue () {
+		synchronized (writeLock) {
+			writeQueue.clear();
+			sentImages.clear();
+			sentImageBytes = 0;
+			writable = true;
+			corks = 0;
+		}
+	}
 
 
 	private void checkBufferCapacity() {
-		final float percentage = writeBuffer.position() / (float) writeBuffer.capacity();
+		final float percentage = writeQueue.size() / (float) writeLimit;
 		if (percentage > 0.75f)
 			debug(TAG, "TCP write buffer is approaching capacity: " + percentage + "%");
 		else if (TRACE && percentage > 0.25f)
@@ -300,12 +1104,48 @@ class TcpConnection {
 	}
 
 
+	/** Returns the number of bytes waiting to be written to the socket. */
+	int getQueuedBytes () {
+		return writeQueue.size();
+	}
+
+	boolean isIdle () {
+		return writeQueue.size() / (float) writeLimit < idleThreshold;
+	}
+
+	void setWriteBufferLimit (int writeLimit) {
+		if (writeLimit <= 0) throw new IllegalArgumentException("writeLimit must be positive: " + writeLimit);
+		synchronized (writeLock) {
+			this.writeLimit = writeLimit;
+		}
+	}
+
+	void setWaterMarks (int lowWaterMark, int highWaterMark) {
+		if (lowWaterMark < 0 || highWaterMark < lowWaterMark)
+			throw new IllegalArgumentException("Invalid water marks, low: " + lowWaterMark + ", high: " + highWaterMark);
+		synchronized (writeLock) {
+			this.lowWaterMark = lowWaterMark;
+			this.highWaterMark = highWaterMark;
+		}
+	}
+
+	void setOverflowPolicy (WriteOverflowPolicy overflowPolicy) {
+		if (overflowPolicy == null) throw new IllegalArgumentException("overflowPolicy cannot be null.");
+		synchronized (writeLock) {
+			this.overflowPolicy = overflowPolicy;
+		}
+	}
+
 
 
 	public void close () {
 		if(ProtocolUtils.close(socketChannel, selectionKey)) {
 			socketChannel = null;
 		}
+		synchronized (writeLock) {
+			writeQueue.clear();
+			if (blockedSenders > 0) writeLock.notifyAll();
+		}
 	}
 
 	public boolean needsKeepAlive (long time) {
@@ -316,6 +1156,14 @@ class TcpConnection {
 		return socketChannel != null && timeoutMillis > 0 && time - lastReadTime > timeoutMillis;
 	}
 
+	/** Returns the earliest time at which {@link #needsKeepAlive(long)} or {@link #isTimedOut(long)} could become true. */
+	public long nextDeadline (long time) {
+		long deadline = Long.MAX_VALUE;
+		if (keepAliveMillis > 0) deadline = lastWriteTime + keepAliveMillis + 1;
+		if (timeoutMillis > 0) deadline = Math.min(deadline, lastReadTime + timeoutMillis + 1);
+		return deadline == Long.MAX_VALUE ? time + TIMER_RECHECK_MILLIS : deadline;
+	}
+
 
 	@Override
 	public String toString(){
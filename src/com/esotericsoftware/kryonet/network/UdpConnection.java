@@ -22,6 +22,7 @@ package com.esotericsoftware.kryonet.network;
 import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryonet.serializers.Serialization;
+import com.esotericsoftware.kryonet.util.CoarseClock;
 import com.esotericsoftware.kryonet.util.KryoNetException;
 import com.esotericsoftware.kryonet.util.ProtocolUtils;
 
@@ -39,16 +40,20 @@ class UdpConnection {
 	InetSocketAddress connectedAddress;
 	DatagramChannel datagramChannel;
 	int keepAliveMillis = 19000;
+	/** The type ID of the last object returned by {@link #readObject()}. Only used by the reading thread. */
+	int typeId = -1;
 	private final ByteBuffer readBuffer, writeBuffer;
 	private final Serialization serialization;
+	private final CoarseClock clock;
 	private SelectionKey selectionKey;
 	private final Object writeLock = new Object();
 	private long lastCommunicationTime;
 	private final ByteBufferOutput bufferOutput;
 	private final ByteBufferInput bufferInput;
 
-	public UdpConnection (Serialization serialization, int bufferSize) {
+	public UdpConnection (Serialization serialization, CoarseClock clock, int bufferSize) {
 		this.serialization = serialization;
+		this.clock = clock;
 		readBuffer = ByteBuffer.allocate(bufferSize);
 		writeBuffer = ByteBuffer.allocateDirect(bufferSize);
 		bufferOutput = new ByteBufferOutput(writeBuffer);
@@ -65,7 +70,7 @@ class UdpConnection {
 			datagramChannel.configureBlocking(false);
 			selectionKey = datagramChannel.register(selector, SelectionKey.OP_READ);
 
-			lastCommunicationTime = System.currentTimeMillis();
+			lastCommunicationTime = clock.update();
 		} catch (IOException ex) {
 			close();
 			throw ex;
@@ -84,7 +89,7 @@ class UdpConnection {
 
 			selectionKey = datagramChannel.register(selector, SelectionKey.OP_READ);
 
-			lastCommunicationTime = System.currentTimeMillis();
+			lastCommunicationTime = clock.update();
 
 			connectedAddress = remoteAddress;
 		} catch (IOException ex) {
@@ -96,7 +101,7 @@ class UdpConnection {
 	public InetSocketAddress readFromAddress () throws IOException {
 		DatagramChannel datagramChannel = this.datagramChannel;
 		if (datagramChannel == null) throw new SocketException("Connection is closed.");
-		lastCommunicationTime = System.currentTimeMillis();
+		lastCommunicationTime = clock.millis();
 		return (InetSocketAddress)datagramChannel.receive(readBuffer);
 	}
 
@@ -104,6 +109,7 @@ class UdpConnection {
 		readBuffer.flip();
 		try {
 			try {
+				typeId = serialization.typeId(readBuffer);
 				Object object = serialization.read(readBuffer);
 				if (readBuffer.hasRemaining())
 					throw new KryoNetException("Incorrect number of bytes (" + readBuffer.remaining()
@@ -132,7 +138,7 @@ class UdpConnection {
 				final int length = writeBuffer.limit();
 				datagramChannel.send(writeBuffer, address);
 
-				lastCommunicationTime = System.currentTimeMillis();
+				lastCommunicationTime = clock.millis();
 
 				boolean wasFullWrite = !writeBuffer.hasRemaining();
 				return wasFullWrite ? length : -1;
@@ -152,7 +158,7 @@ class UdpConnection {
 		if (datagramChannel == null) throw new SocketException("Connection is closed.");
 
 		datagramChannel.send(buffer, address);
-		lastCommunicationTime = System.currentTimeMillis();
+		lastCommunicationTime = clock.millis();
 	}
 
 
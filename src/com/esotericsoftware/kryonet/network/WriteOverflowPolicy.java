@@ -0,0 +1,22 @@
+package com.esotericsoftware.kryonet.network;
+
+/**
+ * What a connection does when sending a TCP message would queue more than its
+ * {@link Connection#setWriteBufferLimit(int) write buffer limit}.
+ *
+ * @see Connection#setWriteOverflowPolicy(WriteOverflowPolicy)
+ */
+public enum WriteOverflowPolicy {
+    /**
+     * The sending thread waits until enough queued bytes have been written for the message to fit, or the connection is
+     * closed. If the thread is interrupted while waiting, the message is discarded as with {@link #DROP}. Sends made from
+     * the connection's own update thread can't wait for it to drain the queue, so they fall back to {@link #CLOSE}.
+     */
+    BLOCK,
+
+    /** The message is discarded and the send returns 0. The connection stays open. */
+    DROP,
+
+    /** The connection is closed. This is the default. */
+    CLOSE
+}
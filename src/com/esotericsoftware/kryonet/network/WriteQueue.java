@@ -0,0 +1,131 @@
+package com.esotericsoftware.kryonet.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The bytes of a TCP connection that are waiting to be written to the socket, held in a chain of segments borrowed
+ * from a {@link BufferPool}. Segments are taken as bytes are queued and returned as soon as they are written, so an
+ * idle connection holds no segments at all.
+ * <p>
+ * Each queued segment is kept ready for reading: its position is the next byte to write and its limit is the end of
+ * the bytes queued in it. Queued segments are flushed with a single gathering write, so a partial write never copies
+ * unsent bytes around.
+ * <p>
+ * A {@link SharedFrame} is queued as a read only view rather than copied. Views are the only read only segments, and
+ * the frames they belong to are kept in queue order alongside, so each frame is released as its view is written.
+ * <p>
+ * Not thread safe, except for {@link #size()}. Guarded by the owning connection's write lock.
+ */
+class WriteQueue {
+    /** Most segments handed to one gathering write. Well below the IOV_MAX of common platforms. */
+    static final int MAX_GATHER = 64;
+
+    private final BufferPool pool;
+    private final ArrayDeque<ByteBuffer> segments = new ArrayDeque<>();
+    private final ArrayDeque<SharedFrame> sharedFrames = new ArrayDeque<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private volatile int size;
+
+    WriteQueue(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /** Returns the number of queued bytes. */
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Copies the remaining bytes of src to the end of the queue. */
+    void append(ByteBuffer src) {
+        size += src.remaining();
+        ByteBuffer tail = segments.peekLast();
+        final int srcLimit = src.limit();
+        while (src.hasRemaining()) {
+            if (tail == null || tail.isReadOnly() || tail.limit() == tail.capacity()) {
+                tail = pool.acquire();
+                tail.limit(0);
+                segments.addLast(tail);
+            }
+            final int readPosition = tail.position(), end = tail.limit();
+            final int length = Math.min(src.remaining(), tail.capacity() - end);
+
+            tail.limit(end + length);
+            tail.position(end);
+            src.limit(src.position() + length);
+            tail.put(src);
+            src.limit(srcLimit);
+            tail.position(readPosition);
+        }
+    }
+
+    /** Queues a read only view of part of a shared frame, holding a reference to the frame until it is written. */
+    void appendShared(ByteBuffer view, SharedFrame frame) {
+        frame.retain();
+        segments.addLast(view);
+        sharedFrames.addLast(frame);
+        size += view.remaining();
+    }
+
+    /**
+     * Writes queued bytes until the socket stops accepting them. Up to {@link #MAX_GATHER} segments are passed to the
+     * socket at once.
+     *
+     * @param bufferPositionFix see {@link Connection#setBufferPositionFix(boolean)}
+     * @return true if the queue is now empty.
+     */
+    boolean writeTo(SocketChannel socketChannel, boolean bufferPositionFix) throws IOException {
+        if (bufferPositionFix) return writeEachTo(socketChannel);
+        while (!segments.isEmpty()) {
+            int count = 0;
+            for (ByteBuffer segment : segments) {
+                gather[count++] = segment;
+                if (count == gather.length) break;
+            }
+            size -= socketChannel.write(gather, 0, count);
+            Arrays.fill(gather, 0, count, null);
+
+            for (ByteBuffer head; (head = segments.peekFirst()) != null; ) {
+                if (head.hasRemaining()) return false;
+                release(segments.pollFirst());
+            }
+        }
+        return true;
+    }
+
+    /** Writes one segment at a time, for platforms where gathering writes don't update buffer positions correctly. */
+    private boolean writeEachTo(SocketChannel socketChannel) throws IOException {
+        for (ByteBuffer head; (head = segments.peekFirst()) != null; ) {
+            if (!head.isReadOnly()) {
+                head.compact();
+                head.flip();
+            }
+            size -= socketChannel.write(head);
+            if (head.hasRemaining()) return false;
+            release(segments.pollFirst());
+        }
+        return true;
+    }
+
+    /** Discards all queued bytes, returning their segments to the pool and releasing shared frames. */
+    void clear() {
+        for (ByteBuffer segment; (segment = segments.pollFirst()) != null; )
+            release(segment);
+        size = 0;
+    }
+
+    private void release(ByteBuffer segment) {
+        if (segment.isReadOnly()) {
+            sharedFrames.pollFirst().release();
+        } else {
+            pool.release(segment);
+        }
+    }
+}
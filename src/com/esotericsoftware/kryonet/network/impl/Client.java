@@ -29,7 +29,10 @@ public class Client extends AbstractClient<ServerConnection> {
      *           buffers are used to hold the bytes for a single object graph until it can be sent over the network or
      *           deserialized.
      *           <p>
-     *           The object buffers should be sized at least as large as the largest object that will be sent or received. */
+     *           The object buffers should be sized at least as large as the largest object that will be sent or received
+     *           over UDP, and as large as typical TCP messages. Larger TCP messages are fragmented, up to the
+     *           {@link com.esotericsoftware.kryonet.network.Connection#setMaxMessageSize(int) max message
+     *           size}. */
     public Client(int writeBufferSize, int objectBufferSize) {
         this(writeBufferSize, objectBufferSize, new KryoSerialization());
     }
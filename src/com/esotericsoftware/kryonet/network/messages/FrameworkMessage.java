@@ -28,9 +28,14 @@ public interface FrameworkMessage extends BidirectionalMessage {
 	FrameworkMessage.KeepAlive keepAlive = new KeepAlive();
 
 
-	/** Internal message to give the client the server assigned connection ID. */
+	/** Internal message to give the client the server assigned connection ID. The client sends it back to agree to
+	 * compression, if both ends have it enabled. */
 	final class RegisterTCP implements FrameworkMessage {
 		public int connectionID;
+		/** True if the sender has compression enabled. */
+		public boolean compression;
+		/** The IDs of the sender's compression dictionaries as bits, or from the client, those the server has too. */
+		public long dictionaries;
 	}
 
 	/** Internal message to give the server the client's UDP port. */
@@ -54,5 +59,27 @@ public interface FrameworkMessage extends BidirectionalMessage {
 		public boolean isReply;
 	}
 
+	/** Internal message letting the end replying to a stream query send more of the stream. */
+	final class StreamCredit implements FrameworkMessage {
+		/** The ID of the stream query. */
+		public int id;
+		/** How many more responses may be sent. */
+		public int credits;
+	}
+
+	/** Internal message that follows the last response to a stream query. */
+	final class StreamEnd implements FrameworkMessage {
+		/** The ID of the stream query. */
+		public int id;
+		/** Why the stream ended early, or null if it sent every response. */
+		public String error;
+	}
+
+	/** Internal message telling the end a query was sent to that its sender stopped waiting for the response. */
+	final class CancelQuery implements FrameworkMessage {
+		/** The ID of the query. */
+		public int id;
+	}
+
 
 }
@@ -0,0 +1,32 @@
+package com.esotericsoftware.kryonet.network.messages;
+
+import com.esotericsoftware.kryonet.network.ServerConnection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * A query to the server answered with a stream of responses rather than one. Send it with
+ * {@link ServerConnection#sendStream(StreamQueryToServer, int)}, and reply with {@link #stream(Iterator)}.
+ */
+public abstract class StreamQueryToServer<T> extends QueryToServer<T> {
+    /** How many responses may be sent before the sender of the query has taken any. Set when the query is sent. */
+    public int window;
+
+
+    /**
+     * Call on a received query to reply with each element of the source, followed by the end of the stream. Elements are
+     * only taken from the source as the sender of the query makes room for them, so the source should produce them
+     * lazily. It must not block, since it is also pulled on the update thread when room is made.
+     */
+    public void stream(Iterator<? extends T> source) {
+        replyStream(source, window);
+    }
+
+    /** Replies with a stream of just the one response. */
+    @Override
+    public void reply(T response) {
+        Objects.requireNonNull(response, "Cannot reply to query with null response.");
+        stream(Collections.singletonList(response).iterator());
+    }
+}
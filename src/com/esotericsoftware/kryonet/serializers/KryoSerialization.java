@@ -20,17 +20,28 @@
 package com.esotericsoftware.kryonet.serializers;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
 import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryonet.network.Response;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.CancelQuery;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.DiscoverHost;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.KeepAlive;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.Ping;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.RegisterTCP;
 import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.RegisterUDP;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.StreamCredit;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.StreamEnd;
 import java.nio.ByteBuffer;
 
 public class KryoSerialization implements Serialization {
+	/**
+	 * The first of the registration IDs reserved for framework messages beyond the first six, which keep the IDs after Kryo's
+	 * own so application classes are given the same IDs as before. Applications must not register classes with IDs from
+	 * here to {@link #FRAMEWORK_IDS_END}, exclusive.
+	 */
+	public static final int FRAMEWORK_IDS = 8192, FRAMEWORK_IDS_END = FRAMEWORK_IDS + 64;
+
 	private final Kryo kryo;
 	private final ByteBufferInput input = new ByteBufferInput();
 	private final ByteBufferOutput output = new ByteBufferOutput();
@@ -49,6 +60,9 @@ public class KryoSerialization implements Serialization {
 		kryo.register(DiscoverHost.class);
 		kryo.register(Ping.class);
 		kryo.register(Response.class);
+		kryo.register(StreamCredit.class, FRAMEWORK_IDS);
+		kryo.register(StreamEnd.class, FRAMEWORK_IDS + 1);
+		kryo.register(CancelQuery.class, FRAMEWORK_IDS + 2);
 	}
 
 
@@ -70,4 +84,27 @@ public class KryoSerialization implements Serialization {
 		return kryo.readClassAndObject(input);
 	}
 
+
+	/** Returns the registration ID Kryo wrote for the object's class, or -1 for null or a class written by name. */
+	@Override
+	public int typeId (ByteBuffer buffer) {
+		// The class is written as a positive variable length int: the registration ID plus 2, 0 for null or 1 for a name.
+		int position = buffer.position();
+		final int limit = buffer.limit();
+		int result = 0;
+		for (int shift = 0; shift < 32 && position < limit; shift += 7) {
+			final byte b = buffer.get(position++);
+			result |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return result >= 2 ? result - 2 : -1;
+		}
+		return -1;
+	}
+
+	/** Returns the registration ID of the type, or -1 if it isn't registered. */
+	@Override
+	public synchronized int typeId (Class<?> type) {
+		final Registration registration = kryo.getClassResolver().getRegistration(type);
+		return registration == null ? -1 : registration.getId();
+	}
+
 }
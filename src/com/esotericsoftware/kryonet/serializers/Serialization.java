@@ -28,4 +28,15 @@ public interface Serialization {
 
 	Object read(ByteBuffer buffer);
 
+	/** Returns the ID of the type of the object serialized at the buffer's position, without consuming any bytes, or -1
+	 * if it has none. IDs are small, dense and stable for the life of the serialization, so they can index a table. */
+	default int typeId(ByteBuffer buffer) {
+		return -1;
+	}
+
+	/** Returns the ID {@link #typeId(ByteBuffer)} returns for objects of the given type, or -1 if it has none. */
+	default int typeId(Class<?> type) {
+		return -1;
+	}
+
 }
@@ -0,0 +1,251 @@
+package com.esotericsoftware.kryonet.serializers;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.ReferenceResolver;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.StreamFactory;
+import com.esotericsoftware.kryo.factories.SerializerFactory;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
+import com.esotericsoftware.kryo.util.DefaultClassResolver;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.objenesis.strategy.InstantiatorStrategy;
+
+/**
+ * A {@link KryoSerialization} that gives every thread its own Kryo, so sends from many threads and receives on the
+ * update thread never contend on a lock.
+ * <p>
+ * {@link #getKryo()} returns a template that is never used to serialize. Classes are registered and default serializers
+ * and settings changed on the template as usual, before or after the end point is started, and each thread's copy
+ * replays the changes in order, with the same registration IDs, the next time it is used. Registrations that used the
+ * default serializer get a new default serializer in each copy. Serializer instances that were passed to the template
+ * are shared by every copy, so they must be thread safe. Changing the serializer of a class that is already registered
+ * is not seen by copies that already have it. A custom reference resolver and the warning for unregistered classes are
+ * not supported, since copies can't share the one or replay the other, and setting them throws.
+ */
+public class ThreadLocalKryoSerialization extends KryoSerialization {
+	private final Template template;
+	private final ThreadLocal<Copy> copies = new ThreadLocal<Copy>() {
+		@Override
+		protected Copy initialValue () {
+			return new Copy();
+		}
+	};
+
+	public ThreadLocalKryoSerialization () {
+		super(createTemplate());
+		template = (Template)getKryo();
+	}
+
+	private static Kryo createTemplate () {
+		Kryo kryo = new Template();
+		kryo.setReferences(false);
+		kryo.setRegistrationRequired(true);
+		return kryo;
+	}
+
+
+	@Override
+	public void write (ByteBuffer buffer, Object object) {
+		Copy copy = copies.get();
+		copy.update();
+		copy.output.setBuffer(buffer);
+		copy.kryo.writeClassAndObject(copy.output, object);
+	}
+
+
+	@Override
+	public Object read (ByteBuffer buffer) {
+		Copy copy = copies.get();
+		copy.update();
+		copy.input.setBuffer(buffer);
+		return copy.kryo.readClassAndObject(copy.input);
+	}
+
+
+
+	/** One thread's Kryo, kept in step with the template. */
+	private class Copy {
+		final Kryo kryo = new Kryo();
+		final ByteBufferInput input = new ByteBufferInput();
+		final ByteBufferOutput output = new ByteBufferOutput();
+		int replayed;
+
+		void update () {
+			List<Step> steps = template.steps;
+			if (replayed == steps.size()) return;
+			for (int size = steps.size(); replayed < size; ++replayed)
+				steps.get(replayed).replay(kryo);
+		}
+	}
+
+
+
+	/** A change made to the template, made again on each copy. */
+	private interface Step {
+		void replay (Kryo kryo);
+	}
+
+
+
+	/**
+	 * Records every registration, default serializer and setting changed on the template after it was constructed, in
+	 * order. Kryo's own defaults and registrations of primitives and String are left out because every copy makes them
+	 * itself, as are implicit registrations by name, which each copy makes on demand.
+	 */
+	private static class Template extends Kryo {
+		/** Null while Kryo's constructor makes its own changes, so they aren't recorded. */
+		final List<Step> steps = new CopyOnWriteArrayList<>();
+		/** Whether the registration being made uses the default serializer for its type. */
+		boolean registeringDefault;
+
+		Template () {
+			super(new RegistrationLog(), new MapReferenceResolver());
+		}
+
+		void record (Step step) {
+			if (steps != null) steps.add(step);
+		}
+
+		@Override
+		public Registration register (Class type) {
+			registeringDefault = true;
+			try {
+				return super.register(type);
+			} finally {
+				registeringDefault = false;
+			}
+		}
+
+		@Override
+		public Registration register (Class type, int id) {
+			registeringDefault = true;
+			try {
+				return super.register(type, id);
+			} finally {
+				registeringDefault = false;
+			}
+		}
+
+		@Override
+		public void setDefaultSerializer (SerializerFactory serializer) {
+			super.setDefaultSerializer(serializer);
+			record(kryo -> kryo.setDefaultSerializer(serializer));
+		}
+
+		@Override
+		public void setDefaultSerializer (Class<? extends Serializer> serializer) {
+			super.setDefaultSerializer(serializer);
+			record(kryo -> kryo.setDefaultSerializer(serializer));
+		}
+
+		@Override
+		public void addDefaultSerializer (Class type, Serializer serializer) {
+			super.addDefaultSerializer(type, serializer);
+			record(kryo -> kryo.addDefaultSerializer(type, serializer));
+		}
+
+		@Override
+		public void addDefaultSerializer (Class type, SerializerFactory serializerFactory) {
+			super.addDefaultSerializer(type, serializerFactory);
+			record(kryo -> kryo.addDefaultSerializer(type, serializerFactory));
+		}
+
+		@Override
+		public void addDefaultSerializer (Class type, Class<? extends Serializer> serializerClass) {
+			super.addDefaultSerializer(type, serializerClass);
+			record(kryo -> kryo.addDefaultSerializer(type, serializerClass));
+		}
+
+		@Override
+		public void setClassLoader (ClassLoader classLoader) {
+			super.setClassLoader(classLoader);
+			record(kryo -> kryo.setClassLoader(classLoader));
+		}
+
+		@Override
+		public void setRegistrationRequired (boolean registrationRequired) {
+			super.setRegistrationRequired(registrationRequired);
+			record(kryo -> kryo.setRegistrationRequired(registrationRequired));
+		}
+
+		@Override
+		public boolean setReferences (boolean references) {
+			boolean old = super.setReferences(references);
+			record(kryo -> kryo.setReferences(references));
+			return old;
+		}
+
+		@Override
+		public void setCopyReferences (boolean copyReferences) {
+			super.setCopyReferences(copyReferences);
+			record(kryo -> kryo.setCopyReferences(copyReferences));
+		}
+
+		@Override
+		public void setInstantiatorStrategy (InstantiatorStrategy strategy) {
+			super.setInstantiatorStrategy(strategy);
+			record(kryo -> kryo.setInstantiatorStrategy(strategy));
+		}
+
+		@Override
+		public void setAutoReset (boolean autoReset) {
+			super.setAutoReset(autoReset);
+			record(kryo -> kryo.setAutoReset(autoReset));
+		}
+
+		@Override
+		public void setMaxDepth (int maxDepth) {
+			super.setMaxDepth(maxDepth);
+			record(kryo -> kryo.setMaxDepth(maxDepth));
+		}
+
+		@Override
+		public void setStreamFactory (StreamFactory streamFactory) {
+			super.setStreamFactory(streamFactory);
+			record(kryo -> kryo.setStreamFactory(streamFactory));
+		}
+
+		@Override
+		public void setAsmEnabled (boolean flag) {
+			super.setAsmEnabled(flag);
+			record(kryo -> kryo.setAsmEnabled(flag));
+		}
+
+		@Override
+		public void setReferenceResolver (ReferenceResolver referenceResolver) {
+			throw new UnsupportedOperationException("Each thread's Kryo needs its own reference resolver, so it can't be set.");
+		}
+
+		/** Left without @Override, since older Kryo versions don't have it. */
+		public void setWarnUnregisteredClasses (boolean warnUnregisteredClasses) {
+			throw new UnsupportedOperationException("Warnings for unregistered classes can't be replayed on each thread's Kryo.");
+		}
+	}
+
+
+
+	/** Records registrations on the template as it makes them, with the IDs they were given. */
+	private static class RegistrationLog extends DefaultClassResolver {
+		@Override
+		public Registration register (Registration registration) {
+			Registration result = super.register(registration);
+			Template template = (Template)kryo;
+			if (registration.getId() >= 0) {
+				Class type = registration.getType();
+				int id = registration.getId();
+				if (template.registeringDefault)
+					template.record(copy -> copy.register(type, id));
+				else {
+					Serializer serializer = registration.getSerializer();
+					template.record(copy -> copy.register(type, serializer, id));
+				}
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.esotericsoftware.kryonet.util;
+
+/**
+ * A millisecond clock that only reads the system time when {@link #update()} is called. Each network thread updates its
+ * clock once per loop, so reading and writing timestamps on the hot path doesn't cost a system call per message.
+ * The time may be stale by up to one select timeout when read from other threads.
+ */
+public final class CoarseClock {
+    private volatile long millis = System.currentTimeMillis();
+
+    /** Returns the time of the last {@link #update()}. */
+    public long millis() {
+        return millis;
+    }
+
+    /** Reads the system time and returns it. */
+    public long update() {
+        return millis = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,138 @@
+package com.esotericsoftware.kryonet.util;
+
+/**
+ * A hashed timing wheel. Deadlines are hashed into a fixed number of buckets by tick, so scheduling, rescheduling and
+ * cancelling are O(1) and {@link #advance(long, Task)} only visits the buckets that elapsed since the last call.
+ * Deadlines further away than one revolution of the wheel simply stay in their bucket until their tick comes around.
+ * <p>
+ * Entries are intrusive and reusable, so rescheduling a value that is already in the wheel does not allocate.
+ * <p>
+ * This class is not thread safe. It is meant to be owned by a single update thread.
+ */
+public class TimerWheel<T> {
+
+    /** Invoked for each value whose deadline has passed. */
+    public interface Task<T> {
+        /**
+         * @param now The time passed to {@link #advance(long, Task)}.
+         * @return The next deadline for the value, or a negative number to remove it from the wheel.
+         */
+        long expired(T value, long now);
+    }
+
+    /** The scheduling state of a single value. */
+    public static final class Entry<T> {
+        public final T value;
+        private long deadlineTick;
+        private Entry<T> prev, next;
+        private int bucket = -1;
+
+        Entry(T value) {
+            this.value = value;
+        }
+
+        public boolean isScheduled() {
+            return bucket != -1;
+        }
+    }
+
+    private final Entry<T>[] buckets;
+    private final int mask;
+    private final long tickMillis;
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param wheelSize  The number of buckets. Rounded up to a power of two.
+     * @param tickMillis The resolution of the wheel. Deadlines fire on the first {@link #advance(long, Task)} after
+     *                   the tick they fall into has passed.
+     * @param now        The current time.
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int wheelSize, long tickMillis, long now) {
+        if (wheelSize <= 0) throw new IllegalArgumentException("wheelSize must be positive: " + wheelSize);
+        if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis must be positive: " + tickMillis);
+        final int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        this.buckets = new Entry[Math.max(size, 1)];
+        this.mask = buckets.length - 1;
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+    }
+
+
+    /** Creates a new entry for value and schedules it. */
+    public Entry<T> schedule(T value, long deadline) {
+        Entry<T> entry = new Entry<>(value);
+        schedule(entry, deadline);
+        return entry;
+    }
+
+    /** Schedules an entry, moving it if it is already scheduled. A deadline in the past fires on the next advance. */
+    public void schedule(Entry<T> entry, long deadline) {
+        if (entry.isScheduled()) unlink(entry);
+        entry.deadlineTick = Math.max(deadline / tickMillis, currentTick + 1);
+        link(entry, (int) (entry.deadlineTick & mask));
+    }
+
+    /** Removes an entry from the wheel. Does nothing if the entry isn't scheduled. */
+    public void cancel(Entry<T> entry) {
+        if (entry.isScheduled()) unlink(entry);
+    }
+
+    /** Returns the number of scheduled entries. */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Fires every entry whose deadline falls in a tick that has passed.
+     *
+     * @return the number of entries that fired.
+     */
+    public int advance(long now, Task<? super T> task) {
+        final long nowTick = now / tickMillis;
+        // After a long stall every bucket is visited exactly once.
+        final long from = Math.max(currentTick + 1, nowTick - buckets.length + 1);
+        int fired = 0;
+
+        for (long tick = from; tick <= nowTick; ++tick) {
+            currentTick = tick;
+            Entry<T> entry = buckets[(int) (tick & mask)];
+            while (entry != null) {
+                // Rescheduled entries are pushed to the front of a bucket, so they're never revisited here.
+                final Entry<T> next = entry.next;
+                if (entry.deadlineTick <= nowTick) {
+                    unlink(entry);
+                    ++fired;
+                    final long deadline = task.expired(entry.value, now);
+                    if (deadline >= 0) schedule(entry, deadline);
+                }
+                entry = next;
+            }
+        }
+        return fired;
+    }
+
+
+    private void link(Entry<T> entry, int bucket) {
+        final Entry<T> head = buckets[bucket];
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) head.prev = entry;
+        buckets[bucket] = entry;
+        entry.bucket = bucket;
+        ++size;
+    }
+
+    private void unlink(Entry<T> entry) {
+        if (entry.prev != null)
+            entry.prev.next = entry.next;
+        else
+            buckets[entry.bucket] = entry.next;
+        if (entry.next != null) entry.next.prev = entry.prev;
+        entry.prev = entry.next = null;
+        entry.bucket = -1;
+        --size;
+    }
+}
@@ -0,0 +1,84 @@
+package com.esotericsoftware.kryonet.bench;
+
+import com.esotericsoftware.kryonet.network.ServerConnection;
+import com.esotericsoftware.kryonet.network.WriteOverflowPolicy;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import com.esotericsoftware.minlog.Log;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A tick's worth of small messages sent to one connection, either one sendTCP at a time, each with its own lock and
+ * socket write, or as a single batch.
+ */
+@State(Scope.Benchmark)
+public class BatchSendBench {
+    private static final int WRITE_BUFFER = 1024 * 1024;
+
+    @Param({"8", "32", "128"})
+    public int messages;
+
+    private Server server;
+    private Client client;
+    private ServerConnection connection;
+    private List<StringMessage> tick;
+
+    @Setup
+    public void init() throws IOException {
+        Log.ERROR();
+        final int tcp = ThreadLocalRandom.current().nextInt(10_000, 20_000);
+
+        server = new Server(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+        client = new Client(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+        server.getKryo().register(StringMessage.class);
+        client.getKryo().register(StringMessage.class);
+
+        server.start();
+        server.bind(tcp);
+        client.start();
+        client.connect(5_000, "localhost", tcp);
+
+        connection = client.getConnection();
+        connection.setWriteOverflowPolicy(WriteOverflowPolicy.BLOCK);
+
+        tick = new ArrayList<>(messages);
+        for (int i = 0; i < messages; ++i)
+            tick.add(new StringMessage("Position update " + i));
+    }
+
+    @TearDown
+    public void close() {
+        client.stop();
+        server.stop();
+    }
+
+
+    @Benchmark
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public int perMessage() {
+        int size = 0;
+        for (StringMessage msg : tick)
+            size += connection.sendTCP(msg);
+        return size;
+    }
+
+    @Benchmark
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public int batched() {
+        return connection.sendBatchTCP(tick);
+    }
+}
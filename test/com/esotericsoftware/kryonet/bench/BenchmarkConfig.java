@@ -14,6 +14,18 @@ public class BenchmarkConfig {
                 .include(CachedMessageBench.class.getSimpleName())
          //       .include(CompressionBench.class.getSimpleName())
           //      .include(VarIntBench.class.getSimpleName())
+          //      .include(ReactorBench.class.getSimpleName())
+          //      .include(TimerWheelBench.class.getSimpleName())
+          //      .include(UdpDispatchBench.class.getSimpleName())
+          //      .include(GatheringWriteBench.class.getSimpleName())
+          //      .include(ConcurrentSendBench.class.getSimpleName())
+          //      .include(BatchSendBench.class.getSimpleName())
+          //      .include(WakeupBench.class.getSimpleName())
+          //      .include(DispatchBench.class.getSimpleName())
+          //      .include(RelayBench.class.getSimpleName())
+          //      .include(BroadcastCompressionBench.class.getSimpleName())
+          //      .include(DeltaBench.class.getSimpleName())
+          //      .include(QueryBench.class.getSimpleName())
                 .forks(1)
                 .build();
 
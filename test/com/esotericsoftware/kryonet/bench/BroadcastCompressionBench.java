@@ -0,0 +1,125 @@
+package com.esotericsoftware.kryonet.bench;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.serializers.DefaultArraySerializers;
+import com.esotericsoftware.kryonet.bench.CompressionBench.Snapshot;
+import com.esotericsoftware.kryonet.network.CachedMessage;
+import com.esotericsoftware.kryonet.network.ClientConnection;
+import com.esotericsoftware.kryonet.network.WriteOverflowPolicy;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.minlog.Log;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A server broadcasting a snapshot to clients that all compress, either sent to each connection in turn so each one
+ * compresses it, broadcast with sendToAllTCP so it is compressed once per broadcast, or broadcast as a cached message
+ * compressed once up front. Also reports the CPU time the broadcasting thread spent over each iteration, which divided
+ * by the operations gives the CPU per broadcast.
+ */
+@State(Scope.Benchmark)
+public class BroadcastCompressionBench {
+    private static final int RECIPIENTS = 16, WRITE_BUFFER = 1024 * 1024, THRESHOLD = 64;
+
+    @Param({"perConnection", "sendToAll", "cached"})
+    public String mode;
+
+    private Server server;
+    private Client[] clients;
+    private Snapshot snapshot;
+    private CachedMessage<Snapshot> cached;
+
+    @Setup
+    public void init() throws IOException, InterruptedException {
+        Log.ERROR();
+        final int tcp = ThreadLocalRandom.current().nextInt(10_000, 20_000);
+        server = new Server(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+        register(server.getKryo());
+        server.setCompressionThreshold(THRESHOLD);
+        server.start();
+        server.bind(tcp);
+
+        clients = new Client[RECIPIENTS];
+        for (int i = 0; i < clients.length; ++i) {
+            clients[i] = new Client(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+            register(clients[i].getKryo());
+            clients[i].setCompressionThreshold(THRESHOLD);
+            clients[i].start();
+            clients[i].connect(5_000, "localhost", tcp);
+        }
+        for (Client client : clients) {
+            final ClientConnection connection = server.getConnection(client.getConnection().getID());
+            connection.setWriteOverflowPolicy(WriteOverflowPolicy.BLOCK);
+            while (!connection.isCompressing())
+                Thread.sleep(10);
+        }
+
+        snapshot = new Snapshot();
+        cached = server.getCachedMessageFactory().createCompressed(snapshot);
+    }
+
+    private static void register(Kryo kryo) {
+        kryo.register(Snapshot.class);
+        kryo.register(int[].class, new DefaultArraySerializers.IntArraySerializer());
+        kryo.register(String[].class, new DefaultArraySerializers.StringArraySerializer());
+    }
+
+    @TearDown
+    public void close() {
+        for (Client client : clients)
+            client.stop();
+        server.stop();
+    }
+
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class SenderCpu {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        public long cpuNanos;
+        private long start;
+
+        @Setup(Level.Iteration)
+        public void begin() {
+            cpuNanos = 0;
+            start = THREADS.getCurrentThreadCpuTime();
+        }
+
+        @TearDown(Level.Iteration)
+        public void end() {
+            cpuNanos = THREADS.getCurrentThreadCpuTime() - start;
+        }
+    }
+
+
+    @Benchmark
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public void broadcast(SenderCpu cpu) {
+        switch (mode) {
+            case "perConnection":
+                for (ClientConnection connection : server.getConnections())
+                    connection.sendTCP(snapshot);
+                break;
+            case "sendToAll":
+                server.sendToAllTCP(snapshot);
+                break;
+            default:
+                server.sendToAllTCP(cached);
+        }
+    }
+}
@@ -1,64 +1,114 @@
 package com.esotericsoftware.kryonet.bench;
 
+import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.serializers.DefaultArraySerializers;
-import com.esotericsoftware.kryonet.network.CachedMessage;
+import com.esotericsoftware.kryonet.network.ClientConnection;
+import com.esotericsoftware.kryonet.network.WriteOverflowPolicy;
+import com.esotericsoftware.kryonet.network.impl.Client;
 import com.esotericsoftware.kryonet.network.impl.Server;
 import com.esotericsoftware.kryonet.network.messages.BidirectionalMessage;
-import com.esotericsoftware.kryonet.serializers.KryoSerialization;
+import com.esotericsoftware.kryonet.network.messages.MessageToClient;
+import com.esotericsoftware.minlog.Log;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.AuxCounters;
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
 
 /**
+ * A server sending one connection messages with frame compression off or on. The score is the sender's throughput,
+ * which includes compressing. Also reports the bytes put on the wire and the CPU time the receiving client spent in
+ * its update thread, which includes inflating, over each iteration.
+ *
  * Created by Evan on 4/1/17.
  */
-@State(Scope.Thread)
+@State(Scope.Benchmark)
 public class CompressionBench {
+    private static final int WRITE_BUFFER = 1024 * 1024;
 
-    private KryoSerialization normal = new KryoSerialization();
-    private KryoSerialization deflate = normal;
+    /** The compression threshold, or -1 for no compression. */
+    @Param({"-1", "64"})
+    public int threshold;
 
-    private Server normalServer = new Server(Server.DEFAULT_WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER, normal);
-    private Server deflateServer = new Server(Server.DEFAULT_WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER, deflate);
+    @Param({"big", "snapshot"})
+    public String message;
 
-
-    private BigMessage msg = new BigMessage();
+    private Server server;
+    private Client client;
+    private ClientConnection connection;
+    private MessageToClient msg;
 
     @Setup
-    public void init() throws IOException {
-        normal.getKryo().register(BigMessage.class);
-        normal.getKryo().register(int[].class, new DefaultArraySerializers.IntArraySerializer());
-        normal.getKryo().register(String[].class, new DefaultArraySerializers.StringArraySerializer());
-
-        deflate.getKryo().register(BigMessage.class);
-        deflate.getKryo().register(int[].class, new DefaultArraySerializers.IntArraySerializer());
-        deflate.getKryo().register(String[].class, new DefaultArraySerializers.StringArraySerializer());
+    public void init() throws IOException, InterruptedException {
+        Log.ERROR();
+        final int tcp = ThreadLocalRandom.current().nextInt(10_000, 20_000);
+        server = new Server(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+        client = new Client(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+        register(server.getKryo());
+        register(client.getKryo());
+        server.setCompressionThreshold(threshold);
+        client.setCompressionThreshold(threshold);
+        server.start();
+        server.bind(tcp);
+        client.start();
+        client.connect(5_000, "localhost", tcp);
+        connection = server.getConnection(client.getConnection().getID());
+        connection.setWriteOverflowPolicy(WriteOverflowPolicy.BLOCK);
+        while (threshold != -1 && !connection.isCompressing())
+            Thread.sleep(10);
+        msg = message.equals("big") ? new BigMessage() : new Snapshot();
+    }
 
-        CachedMessage<BigMessage> output = normalServer.getCachedMessageFactory().create(msg);
-        CachedMessage<BigMessage> deflated = deflateServer.getCachedMessageFactory().create(msg);
+    private static void register(Kryo kryo) {
+        kryo.register(BigMessage.class);
+        kryo.register(Snapshot.class);
+        kryo.register(int[].class, new DefaultArraySerializers.IntArraySerializer());
+        kryo.register(String[].class, new DefaultArraySerializers.StringArraySerializer());
+    }
 
-        System.err.println("Normal size is " + output.length);
-        System.err.println("Deflate size is " + deflated.length);
-        System.err.println("Normal = " + new String(output.cached) + " Deflated = " + new String(deflated.cached));
+    @TearDown
+    public void close() {
+        client.stop();
+        server.stop();
     }
 
-//    @Benchmark
-//    @Measurement(iterations = 50)
-//    @Warmup(iterations = 50)
-//    public void normal() {
-//        normalServer.sendToAll(msg);
-//    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Traffic {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        public long wireBytes, receiverCpuNanos;
+        private long start;
+
+        @Setup(Level.Iteration)
+        public void begin(CompressionBench bench) {
+            wireBytes = 0;
+            receiverCpuNanos = 0;
+            start = THREADS.getThreadCpuTime(bench.client.getUpdateThread().getId());
+        }
+
+        @TearDown(Level.Iteration)
+        public void end(CompressionBench bench) {
+            receiverCpuNanos = THREADS.getThreadCpuTime(bench.client.getUpdateThread().getId()) - start;
+        }
+    }
 
 
     @Benchmark
-    @Measurement(iterations = 50)
-    @Warmup(iterations = 50)
-    public void deflate() {
-        deflateServer.sendToAll(msg);
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public void send(Traffic traffic) {
+        traffic.wireBytes += connection.sendTCP(msg);
     }
 
 
@@ -69,5 +119,17 @@ public class CompressionBench {
         public boolean hasItem = true;
     }
 
-
+    /** The entities near a player, as a game server might send each tick. */
+    public static class Snapshot implements BidirectionalMessage {
+        public String[] names = new String[64];
+        public int[] positions = new int[names.length * 2];
+
+        public Snapshot() {
+            for (int i = 0; i < names.length; ++i) {
+                names[i] = (i % 3 == 0 ? "Goblin Scout " : i % 3 == 1 ? "Goblin Archer " : "Player ") + i;
+                positions[i * 2] = 1000 + i * 7;
+                positions[i * 2 + 1] = 2000 - i * 3;
+            }
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package com.esotericsoftware.kryonet.bench;
+
+import com.esotericsoftware.kryonet.network.ServerConnection;
+import com.esotericsoftware.kryonet.network.WriteOverflowPolicy;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.serializers.KryoSerialization;
+import com.esotericsoftware.kryonet.serializers.ThreadLocalKryoSerialization;
+import com.esotericsoftware.kryonet.utils.DataMessage;
+import com.esotericsoftware.minlog.Log;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Several threads sending to the same connection, as the listeners in MultithreadTest do. Sends serialize into a per
+ * thread scratch buffer and only take the connection's write lock to write or queue the bytes. The locked variant
+ * holds a lock on the connection around the whole send, which is how serialization used to be done under the write
+ * lock.
+ * <p>
+ * Sends are measured with 1, 4 and 16 threads, for both the shared, synchronized KryoSerialization and the
+ * ThreadLocalKryoSerialization that gives each sending thread its own Kryo.
+ */
+@State(Scope.Benchmark)
+public class ConcurrentSendBench {
+    private static final int WRITE_BUFFER = 1024 * 1024;
+
+    @Param({"shared", "threadLocal"})
+    public String serialization;
+
+    private Server server;
+    private Client client;
+    private ServerConnection connection;
+
+    @Setup
+    public void init() throws IOException {
+        Log.ERROR();
+        final int tcp = ThreadLocalRandom.current().nextInt(10_000, 20_000);
+
+        server = new Server(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER, newSerialization());
+        client = new Client(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER, newSerialization());
+        DataMessage.reg(server.getKryo(), client.getKryo());
+
+        server.start();
+        server.bind(tcp);
+        client.start();
+        client.connect(5_000, "localhost", tcp);
+
+        connection = client.getConnection();
+        connection.setWriteOverflowPolicy(WriteOverflowPolicy.BLOCK);
+    }
+
+    private KryoSerialization newSerialization() {
+        return "threadLocal".equals(serialization) ? new ThreadLocalKryoSerialization() : new KryoSerialization();
+    }
+
+    @TearDown
+    public void close() {
+        client.stop();
+        server.stop();
+    }
+
+
+    @State(Scope.Thread)
+    public static class Message {
+        DataMessage msg;
+
+        @Setup(Level.Trial)
+        public void create() {
+            msg = DataMessage.random();
+        }
+    }
+
+
+    @Benchmark
+    @Threads(1)
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public int sendOneThread(Message message) {
+        return connection.sendTCP(message.msg);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public int sendFourThreads(Message message) {
+        return connection.sendTCP(message.msg);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public int sendSixteenThreads(Message message) {
+        return connection.sendTCP(message.msg);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public int sendSerializedUnderLock(Message message) {
+        synchronized (connection) {
+            return connection.sendTCP(message.msg);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.esotericsoftware.kryonet.bench;
+
+import com.esotericsoftware.kryonet.network.ClientConnection;
+import com.esotericsoftware.kryonet.network.WriteOverflowPolicy;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.network.messages.MessageToClient;
+import com.esotericsoftware.minlog.Log;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A server sending a client the state of every entity each tick, while a quarter of them move a step, either whole with
+ * sendTCP or as deltas keyed by entity ID. The score is ticks per second; the wire bytes counter is the bytes sent per
+ * second, which divided by the score gives the bytes per tick.
+ */
+@State(Scope.Benchmark)
+public class DeltaBench {
+    private static final int ENTITIES = 64, WRITE_BUFFER = 1024 * 1024;
+
+    @Param({"full", "delta"})
+    public String mode;
+
+    private Server server;
+    private Client client;
+    private ClientConnection connection;
+    private EntityState[] entities;
+    private final Random random = new Random(3);
+
+    @Setup
+    public void init() throws IOException {
+        Log.ERROR();
+        final int tcp = ThreadLocalRandom.current().nextInt(10_000, 20_000);
+        server = new Server(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+        client = new Client(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+        server.getKryo().register(EntityState.class);
+        client.getKryo().register(EntityState.class);
+        server.start();
+        server.bind(tcp);
+        client.start();
+        client.connect(5_000, "localhost", tcp);
+        connection = server.getConnection(client.getConnection().getID());
+        connection.setWriteOverflowPolicy(WriteOverflowPolicy.BLOCK);
+
+        entities = new EntityState[ENTITIES];
+        for (int i = 0; i < entities.length; ++i)
+            entities[i] = new EntityState(i);
+    }
+
+    @org.openjdk.jmh.annotations.TearDown
+    public void close() {
+        client.stop();
+        server.stop();
+    }
+
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Traffic {
+        public long wireBytes;
+
+        @Setup(Level.Iteration)
+        public void begin() {
+            wireBytes = 0;
+        }
+    }
+
+
+    @Benchmark
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public void tick(Traffic traffic) {
+        final boolean delta = mode.equals("delta");
+        for (EntityState entity : entities) {
+            if (random.nextInt(4) == 0) entity.move(random);
+            traffic.wireBytes += delta ? connection.sendDeltaTCP(entity.id, entity) : connection.sendTCP(entity);
+        }
+    }
+
+
+    /** An entity's state as a game server sends it, most of which rarely changes. */
+    public static class EntityState implements MessageToClient {
+        public int id, health = 100, mana = 50, level = 12;
+        public float x, y, heading;
+        public String name, guild = "Knights of the Northern Gate";
+        public boolean visible = true;
+
+        public EntityState() {
+        }
+
+        EntityState(int id) {
+            this.id = id;
+            name = (id % 2 == 0 ? "Goblin Scout " : "Player ") + id;
+            x = id * 16;
+            y = id * 8;
+        }
+
+        void move(Random random) {
+            heading = random.nextInt(8) * 45;
+            x += (float) Math.cos(Math.toRadians(heading));
+            y += (float) Math.sin(Math.toRadians(heading));
+        }
+    }
+}
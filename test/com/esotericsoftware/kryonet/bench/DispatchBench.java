@@ -0,0 +1,112 @@
+package com.esotericsoftware.kryonet.bench;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryonet.adapters.RegisteredServerListener;
+import com.esotericsoftware.kryonet.network.messages.MessageToServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of finding the handler for a received message in a RegisteredServerListener, either by hashing the message's
+ * class or by indexing with the ID the class was registered with in Kryo. Each message type is a separate copy of
+ * {@link Move} defined by its own class loader, so there are as many distinct classes as types.
+ */
+@State(Scope.Thread)
+public class DispatchBench {
+
+    @Param({"10", "200"})
+    public int types;
+
+    private final RegisteredServerListener listener = new RegisteredServerListener();
+    private Object[] messages;
+    private int[] typeIds;
+    private int next;
+    private long handled;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void init() throws Exception {
+        final byte[] bytecode = bytecode(Move.class);
+        final Kryo kryo = new Kryo();
+        final Object[] prototypes = new Object[types];
+        final int[] ids = new int[types];
+        final BiConsumer<Object, Object> handler = (msg, conn) -> ++handled;
+        for (int i = 0; i < types; ++i) {
+            Class<?> type = new TypeLoader(bytecode).loadClass(Move.class.getName());
+            listener.addHandler((Class) type, (BiConsumer) handler);
+            ids[i] = kryo.register(type).getId();
+            prototypes[i] = type.newInstance();
+        }
+
+        Random random = new Random(42);
+        messages = new Object[1024];
+        typeIds = new int[messages.length];
+        for (int i = 0; i < messages.length; ++i) {
+            int type = random.nextInt(types);
+            messages[i] = prototypes[type];
+            typeIds[i] = ids[type];
+        }
+    }
+
+
+    @Benchmark
+    @Measurement(iterations = 10)
+    @Warmup(iterations = 10)
+    public long byClass() {
+        final int i = next++ & (messages.length - 1);
+        listener.received(null, messages[i]);
+        return handled;
+    }
+
+    @Benchmark
+    @Measurement(iterations = 10)
+    @Warmup(iterations = 10)
+    public long byTypeId() {
+        final int i = next++ & (messages.length - 1);
+        listener.received(null, messages[i], typeIds[i]);
+        return handled;
+    }
+
+
+    private static byte[] bytecode(Class<?> type) throws IOException {
+        try (InputStream in = type.getResourceAsStream('/' + type.getName().replace('.', '/') + ".class")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            for (int n; (n = in.read(chunk)) != -1; )
+                out.write(chunk, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    public static final class Move implements MessageToServer {
+        public int x, y;
+    }
+
+    private static final class TypeLoader extends ClassLoader {
+        private final byte[] bytecode;
+
+        TypeLoader(byte[] bytecode) {
+            super(DispatchBench.class.getClassLoader());
+            this.bytecode = bytecode;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(Move.class.getName())) return super.loadClass(name, resolve);
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> type = findLoadedClass(name);
+                return type != null ? type : defineClass(name, bytecode, 0, bytecode.length);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.esotericsoftware.kryonet.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of flushing a backlog of queued frames to a reader that drains its socket slowly, so most writes are partial.
+ * Each invocation queues {@code backlog} bytes and writes until all of them have been accepted by the socket, returning
+ * the number of write calls made.
+ * <ul>
+ *     <li>compact: a single buffer, compacted after every partial write. This is what the write buffer used to do.</li>
+ *     <li>perSegment: one write per queued segment.</li>
+ *     <li>gathering: one gathering write over all queued segments, as the write queue does now.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+public class GatheringWriteBench {
+    private static final int SEGMENT_SIZE = 4096, FRAME_SIZE = 1000, READ_SIZE = 2048, READ_COST = 200;
+
+    @Param({"65536", "1048576"})
+    public int backlog;
+
+    private ServerSocketChannel acceptor;
+    private SocketChannel writer, reader;
+    private Thread readerThread;
+
+    private ByteBuffer frame, compacted;
+    private ByteBuffer[] segments, gather;
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+
+    @Setup
+    public void init() throws IOException {
+        acceptor = ServerSocketChannel.open();
+        acceptor.bind(new InetSocketAddress("localhost", 0));
+        reader = SocketChannel.open();
+        reader.setOption(StandardSocketOptions.SO_RCVBUF, READ_SIZE * 2); // Must be set before connecting.
+        reader.connect(acceptor.getLocalAddress());
+        writer = acceptor.accept();
+        writer.configureBlocking(false);
+
+        readerThread = new Thread(() -> {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(READ_SIZE);
+            try {
+                while (reader.read(buffer) >= 0) {
+                    buffer.clear();
+                    Blackhole.consumeCPU(READ_COST);
+                }
+            } catch (IOException ignored) {
+            }
+        }, "Slow reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        frame = ByteBuffer.allocate(FRAME_SIZE);
+        compacted = ByteBuffer.allocateDirect(backlog);
+        segments = new ByteBuffer[(backlog + SEGMENT_SIZE - 1) / SEGMENT_SIZE];
+        for (int i = 0; i < segments.length; ++i)
+            segments[i] = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+        gather = new ByteBuffer[segments.length];
+    }
+
+    @TearDown
+    public void close() throws IOException, InterruptedException {
+        writer.close();
+        reader.close();
+        acceptor.close();
+        readerThread.join();
+    }
+
+
+    @Benchmark
+    @Measurement(iterations = 10)
+    @Warmup(iterations = 10)
+    public long compact() throws IOException {
+        compacted.clear();
+        for (int queued = 0; queued + FRAME_SIZE <= backlog; queued += FRAME_SIZE) {
+            frame.clear();
+            compacted.put(frame);
+        }
+        long writes = 0;
+        while (compacted.position() > 0) {
+            compacted.flip();
+            while (compacted.hasRemaining()) {
+                ++writes;
+                if (writer.write(compacted) == 0) break;
+            }
+            compacted.compact();
+        }
+        return writes;
+    }
+
+    @Benchmark
+    @Measurement(iterations = 10)
+    @Warmup(iterations = 10)
+    public long perSegment() throws IOException {
+        fillSegments();
+        long writes = 0;
+        for (ByteBuffer head; (head = queue.peekFirst()) != null; ) {
+            writer.write(head);
+            ++writes;
+            if (!head.hasRemaining()) queue.pollFirst();
+        }
+        return writes;
+    }
+
+    @Benchmark
+    @Measurement(iterations = 10)
+    @Warmup(iterations = 10)
+    public long gathering() throws IOException {
+        fillSegments();
+        long writes = 0;
+        while (!queue.isEmpty()) {
+            final int count = queue.size();
+            queue.toArray(gather);
+            writer.write(gather, 0, count);
+            ++writes;
+            while (!queue.isEmpty() && !queue.peekFirst().hasRemaining())
+                queue.pollFirst();
+        }
+        Arrays.fill(gather, null);
+        return writes;
+    }
+
+
+    /** Queues the backlog the way the write queue appends frames: packed end to end across segments. */
+    private void fillSegments() {
+        int next = 0;
+        ByteBuffer tail = null;
+        for (int queued = 0; queued + FRAME_SIZE <= backlog; queued += FRAME_SIZE) {
+            frame.clear();
+            while (frame.hasRemaining()) {
+                if (tail == null || !tail.hasRemaining()) {
+                    if (tail != null) tail.flip();
+                    tail = segments[next++];
+                    tail.clear();
+                    queue.addLast(tail);
+                }
+                final int limit = frame.limit();
+                frame.limit(frame.position() + Math.min(frame.remaining(), tail.remaining()));
+                tail.put(frame);
+                frame.limit(limit);
+            }
+        }
+        if (tail != null) tail.flip();
+    }
+}
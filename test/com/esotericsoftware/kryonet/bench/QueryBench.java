@@ -0,0 +1,123 @@
+package com.esotericsoftware.kryonet.bench;
+
+import com.esotericsoftware.kryonet.adapters.RegisteredServerListener;
+import com.esotericsoftware.kryonet.network.ServerConnection;
+import com.esotericsoftware.kryonet.network.TcpBatch;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.utils.YesNoServerQuery;
+import com.esotericsoftware.minlog.Log;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures query round trips per second with 32 clients, each on its own benchmark thread, either waiting for each
+ * response before sending the next query, or sending {@value #WINDOW} queries at a time one write each, or in one
+ * batch. The handler answers at once, so this measures the cost of sending and correlating queries and responses.
+ */
+@State(Scope.Benchmark)
+public class QueryBench {
+    private static final int WINDOW = 16;
+
+    private Server server;
+    private int tcp;
+
+    @Setup
+    public void init() throws IOException {
+        Log.ERROR();
+        tcp = ThreadLocalRandom.current().nextInt(10_000, 20_000);
+
+        server = new Server();
+        server.getKryo().register(Boolean.class);
+        server.getKryo().register(YesNoServerQuery.class);
+
+        RegisteredServerListener listener = new RegisteredServerListener();
+        listener.addQueryHandle(YesNoServerQuery.class, (query, con) -> query.reply(true));
+        server.addListener(listener);
+
+        server.start();
+        server.bind(tcp);
+    }
+
+    @TearDown
+    public void close() {
+        server.stop();
+    }
+
+
+    @State(Scope.Thread)
+    public static class ClientState {
+        Client client;
+        ServerConnection connection;
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<Boolean>[] futures = new CompletableFuture[WINDOW];
+
+        @Setup(Level.Trial)
+        public void connect(QueryBench bench) throws IOException {
+            client = new Client();
+            client.getKryo().register(Boolean.class);
+            client.getKryo().register(YesNoServerQuery.class);
+            client.start();
+            client.connect(5_000, "localhost", bench.tcp);
+            connection = client.getConnection();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            client.stop();
+        }
+    }
+
+
+    @Benchmark
+    @Threads(32)
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public boolean roundTrip(ClientState state) {
+        return state.connection.sendAndWait(new YesNoServerQuery(), Duration.ofSeconds(5)).orElse(false);
+    }
+
+    @Benchmark
+    @Threads(32)
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    @OperationsPerInvocation(WINDOW)
+    public boolean pipelined(ClientState state) {
+        final CompletableFuture<Boolean>[] futures = state.futures;
+        for (int i = 0; i < WINDOW; ++i)
+            futures[i] = state.connection.sendAsync(new YesNoServerQuery(), Duration.ofSeconds(5));
+        boolean result = true;
+        for (CompletableFuture<Boolean> future : futures)
+            result &= future.join();
+        return result;
+    }
+
+    @Benchmark
+    @Threads(32)
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    @OperationsPerInvocation(WINDOW)
+    public boolean batched(ClientState state) {
+        final CompletableFuture<Boolean>[] futures = state.futures;
+        try (TcpBatch batch = state.connection.batchTCP()) {
+            for (int i = 0; i < WINDOW; ++i)
+                futures[i] = state.connection.sendAsync(new YesNoServerQuery(), Duration.ofSeconds(5));
+        }
+        boolean result = true;
+        for (CompletableFuture<Boolean> future : futures)
+            result &= future.join();
+        return result;
+    }
+}
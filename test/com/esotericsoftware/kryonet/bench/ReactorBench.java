@@ -0,0 +1,91 @@
+package com.esotericsoftware.kryonet.bench;
+
+import com.esotericsoftware.kryonet.adapters.RegisteredServerListener;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.utils.YesNoServerQuery;
+import com.esotericsoftware.minlog.Log;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures query round trips per second with 8 clients as the number of server reactors grows.
+ * Each query burns a fixed amount of CPU in its handler so that the server, not the clients, is the bottleneck.
+ * A reactor count of 0 is the original single threaded server.
+ */
+@State(Scope.Benchmark)
+public class ReactorBench {
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int reactors;
+
+    private Server server;
+    private int tcp;
+
+    @Setup
+    public void init() throws IOException {
+        Log.ERROR();
+        tcp = ThreadLocalRandom.current().nextInt(10_000, 20_000);
+
+        server = new Server();
+        server.setReactorCount(reactors);
+        server.getKryo().register(Boolean.class);
+        server.getKryo().register(YesNoServerQuery.class);
+
+        RegisteredServerListener listener = new RegisteredServerListener();
+        listener.addQueryHandle(YesNoServerQuery.class, (query, con) -> {
+            Blackhole.consumeCPU(20_000);
+            query.reply(true);
+        });
+        server.addListener(listener);
+
+        server.start();
+        server.bind(tcp);
+    }
+
+    @TearDown
+    public void close() {
+        server.stop();
+    }
+
+
+    @State(Scope.Thread)
+    public static class ClientState {
+        Client client;
+
+        @Setup(Level.Trial)
+        public void connect(ReactorBench bench) throws IOException {
+            client = new Client();
+            client.getKryo().register(Boolean.class);
+            client.getKryo().register(YesNoServerQuery.class);
+            client.start();
+            client.connect(5_000, "localhost", bench.tcp);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            client.stop();
+        }
+    }
+
+
+    @Benchmark
+    @Threads(8)
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public boolean roundTrip(ClientState state) {
+        return state.client.getConnection().sendAndWait(new YesNoServerQuery(), Duration.ofSeconds(5)).orElse(false);
+    }
+}
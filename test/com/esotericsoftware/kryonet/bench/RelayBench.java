@@ -0,0 +1,139 @@
+package com.esotericsoftware.kryonet.bench;
+
+import com.esotericsoftware.kryonet.adapters.ConnectionAdapter;
+import com.esotericsoftware.kryonet.network.ClientConnection;
+import com.esotericsoftware.kryonet.network.ServerConnection;
+import com.esotericsoftware.kryonet.network.WriteOverflowPolicy;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.network.messages.MessageToClient;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import com.esotericsoftware.minlog.Log;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A client sending bursts of chat messages that the server forwards to every other client, either relayed as received
+ * or deserialized by a listener and reserialized by sendToAllOthersTCP. Each operation is a burst delivered to every
+ * recipient. Also reports the CPU time used by the server's network thread in each iteration.
+ */
+@State(Scope.Benchmark)
+public class RelayBench {
+    private static final int RECIPIENTS = 8, BURST = 64, WRITE_BUFFER = 1024 * 1024;
+
+    @Param({"relay", "decode"})
+    public String mode;
+
+    private Server server;
+    private Client sender;
+    private Client[] recipients;
+    private final AtomicLong delivered = new AtomicLong();
+    private long expected;
+    private StringMessage chat;
+
+    @Setup
+    public void init() throws IOException {
+        Log.ERROR();
+        final int tcp = ThreadLocalRandom.current().nextInt(10_000, 20_000);
+
+        server = new Server(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+        server.getKryo().register(StringMessage.class);
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void onConnected(ClientConnection connection) {
+                connection.setWriteOverflowPolicy(WriteOverflowPolicy.BLOCK);
+            }
+
+            @Override
+            public void received(ClientConnection connection, Object msg) {
+                server.sendToAllOthersTCP(connection.getID(), (MessageToClient) msg);
+            }
+        });
+        if (mode.equals("relay")) server.addRelay(StringMessage.class);
+        server.start();
+        server.bind(tcp);
+
+        recipients = new Client[RECIPIENTS];
+        for (int i = 0; i < recipients.length; ++i) {
+            recipients[i] = connect(tcp);
+            recipients[i].addListener(new ConnectionAdapter<ServerConnection>() {
+                @Override
+                public void received(ServerConnection connection, Object msg) {
+                    delivered.incrementAndGet();
+                }
+            });
+        }
+        sender = connect(tcp);
+        sender.getConnection().setWriteOverflowPolicy(WriteOverflowPolicy.BLOCK);
+        chat = new StringMessage("Anyone up for a raid at the north gate? Bring potions.");
+    }
+
+    private static Client connect(int tcp) throws IOException {
+        Client client = new Client(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+        client.getKryo().register(StringMessage.class);
+        client.start();
+        client.connect(5_000, "localhost", tcp);
+        return client;
+    }
+
+    @TearDown
+    public void close() {
+        sender.stop();
+        for (Client client : recipients)
+            client.stop();
+        server.stop();
+    }
+
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class NetworkThreadCpu {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        public long cpuNanos;
+        private long start;
+
+        @Setup(Level.Iteration)
+        public void begin(RelayBench bench) {
+            cpuNanos = 0;
+            start = THREADS.getThreadCpuTime(bench.server.getUpdateThread().getId());
+        }
+
+        @TearDown(Level.Iteration)
+        public void end(RelayBench bench) {
+            cpuNanos = THREADS.getThreadCpuTime(bench.server.getUpdateThread().getId()) - start;
+        }
+    }
+
+
+    @Benchmark
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public long burst(NetworkThreadCpu cpu) {
+        for (int i = 0; i < BURST; ++i)
+            sender.sendTCP(chat);
+        expected += BURST * RECIPIENTS;
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delivered.get() < expected) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("Burst was not delivered.");
+            LockSupport.parkNanos(10_000);
+        }
+        return expected;
+    }
+}
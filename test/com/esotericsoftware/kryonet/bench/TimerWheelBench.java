@@ -0,0 +1,98 @@
+package com.esotericsoftware.kryonet.bench;
+
+import com.esotericsoftware.kryonet.util.TimerWheel;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one server update's keep alive and timeout bookkeeping as the number of connections grows. Each invocation
+ * advances a simulated clock by one 50ms tick. The scans are what the update loop did before connection deadlines
+ * were kept in a timer wheel: one pass over every connection per update, plus a keep alive pass per selected key.
+ */
+@State(Scope.Thread)
+public class TimerWheelBench {
+    private static final int KEEP_ALIVE = 8000, TIMEOUT = 12000, TICK = 50, SELECTED_KEYS = 16;
+
+    @Param({"100", "1000", "10000"})
+    public int connections;
+
+    private Deadlines[] scanned;
+    private TimerWheel<Deadlines> wheel;
+    private long scanTime, wheelTime;
+
+    private final TimerWheel.Task<Deadlines> task = (deadlines, now) -> {
+        if (now - deadlines.lastRead > TIMEOUT) deadlines.lastRead = now; // Would close the connection.
+        if (now - deadlines.lastWrite > KEEP_ALIVE) deadlines.lastWrite = now; // Would send a keep alive.
+        return Math.min(deadlines.lastWrite + KEEP_ALIVE, deadlines.lastRead + TIMEOUT) + 1;
+    };
+
+    @Setup
+    public void init() {
+        Random random = new Random(42);
+        scanned = new Deadlines[connections];
+        wheel = new TimerWheel<>(512, TICK, 0);
+        for (int i = 0; i < connections; ++i) {
+            // Spread the deadlines so the same number of connections expire each tick.
+            final long lastWrite = -random.nextInt(KEEP_ALIVE);
+            scanned[i] = new Deadlines(lastWrite);
+            Deadlines deadlines = new Deadlines(lastWrite);
+            wheel.schedule(deadlines, lastWrite + KEEP_ALIVE + 1);
+        }
+    }
+
+
+    @Benchmark
+    @Measurement(iterations = 10)
+    @Warmup(iterations = 10)
+    public int linearScan() {
+        scanTime += TICK;
+        return scan(scanTime);
+    }
+
+    @Benchmark
+    @Measurement(iterations = 10)
+    @Warmup(iterations = 10)
+    public int linearScanPerSelectedKey() {
+        scanTime += TICK;
+        int count = 0;
+        for (int i = 0; i < SELECTED_KEYS; ++i)
+            count += scan(scanTime);
+        return count;
+    }
+
+    @Benchmark
+    @Measurement(iterations = 10)
+    @Warmup(iterations = 10)
+    public int timerWheel() {
+        wheelTime += TICK;
+        return wheel.advance(wheelTime, task);
+    }
+
+
+    private int scan(long time) {
+        int count = 0;
+        for (Deadlines deadlines : scanned) {
+            if (time - deadlines.lastRead > TIMEOUT) deadlines.lastRead = time;
+            if (time - deadlines.lastWrite > KEEP_ALIVE) {
+                deadlines.lastWrite = time;
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private static final class Deadlines {
+        long lastRead, lastWrite;
+
+        Deadlines(long lastWrite) {
+            this.lastRead = 0;
+            this.lastWrite = lastWrite;
+        }
+    }
+}
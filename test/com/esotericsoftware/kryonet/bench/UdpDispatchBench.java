@@ -0,0 +1,82 @@
+package com.esotericsoftware.kryonet.bench;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of finding the connection a datagram came from. The server used to scan every connection comparing
+ * remote addresses; it now keeps a hash index from address to connection. Lookups use addresses that are equal to,
+ * but not the same instance as, the registered ones, like those returned by {@code DatagramChannel.receive}.
+ */
+@State(Scope.Thread)
+public class UdpDispatchBench {
+
+    @Param({"100", "1000", "10000"})
+    public int connections;
+
+    private final List<Registered> list = new ArrayList<>();
+    private final ConcurrentHashMap<InetSocketAddress, Registered> index = new ConcurrentHashMap<>();
+    private InetSocketAddress[] senders;
+    private int next;
+
+    @Setup
+    public void init() throws UnknownHostException {
+        for (int i = 0; i < connections; ++i) {
+            InetSocketAddress address = address(i);
+            Registered registered = new Registered(address);
+            list.add(registered);
+            index.put(address, registered);
+        }
+
+        Random random = new Random(42);
+        senders = new InetSocketAddress[1024];
+        for (int i = 0; i < senders.length; ++i)
+            senders[i] = address(random.nextInt(connections));
+    }
+
+
+    @Benchmark
+    @Measurement(iterations = 10)
+    @Warmup(iterations = 10)
+    public Registered linearScan() {
+        final InetSocketAddress fromAddress = senders[next++ & (senders.length - 1)];
+        for (Registered registered : list) {
+            if (fromAddress.equals(registered.udpRemoteAddress)) return registered;
+        }
+        return null;
+    }
+
+    @Benchmark
+    @Measurement(iterations = 10)
+    @Warmup(iterations = 10)
+    public Registered hashIndex() {
+        final InetSocketAddress fromAddress = senders[next++ & (senders.length - 1)];
+        return index.get(fromAddress);
+    }
+
+
+    private static InetSocketAddress address(int i) throws UnknownHostException {
+        byte[] ip = {10, 0, (byte) (i >>> 8), (byte) i};
+        return new InetSocketAddress(InetAddress.getByAddress(ip), 40000 + (i % 1000));
+    }
+
+    public static final class Registered {
+        final InetSocketAddress udpRemoteAddress;
+
+        Registered(InetSocketAddress udpRemoteAddress) {
+            this.udpRemoteAddress = udpRemoteAddress;
+        }
+    }
+}
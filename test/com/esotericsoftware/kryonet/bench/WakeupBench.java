@@ -0,0 +1,95 @@
+package com.esotericsoftware.kryonet.bench;
+
+import com.esotericsoftware.kryonet.network.CachedMessage;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.network.messages.MessageToClient;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import com.esotericsoftware.minlog.Log;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A game thread broadcasting a small message to many connections, with selector wakeups coalesced or one per send.
+ * Besides broadcast throughput, reports the CPU time used by the server's network thread in each iteration.
+ */
+@State(Scope.Benchmark)
+public class WakeupBench {
+    private static final int CLIENTS = 32, WRITE_BUFFER = Server.DEFAULT_WRITE_BUFFER * 16;
+
+    @Param({"true", "false"})
+    public String coalesce;
+
+    private Server server;
+    private Client[] clients;
+    private CachedMessage<MessageToClient> msg;
+
+    @Setup
+    public void init() throws IOException {
+        Log.ERROR();
+        System.setProperty("kryonet.coalesceWakeups", coalesce);
+        final int tcp = ThreadLocalRandom.current().nextInt(10_000, 20_000);
+
+        server = new Server(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+        server.getKryo().register(StringMessage.class);
+        server.start();
+        server.bind(tcp);
+
+        clients = new Client[CLIENTS];
+        for (int i = 0; i < clients.length; ++i) {
+            clients[i] = new Client(WRITE_BUFFER, Server.DEFAULT_OBJ_BUFFER);
+            clients[i].getKryo().register(StringMessage.class);
+            clients[i].start();
+            clients[i].connect(5_000, "localhost", tcp);
+        }
+        msg = server.getCachedMessageFactory().create(new StringMessage("Position update"));
+    }
+
+    @TearDown
+    public void close() {
+        for (Client client : clients)
+            client.stop();
+        server.stop();
+    }
+
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class NetworkThreadCpu {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+        public long cpuNanos;
+        private long start;
+
+        @Setup(Level.Iteration)
+        public void begin(WakeupBench bench) {
+            cpuNanos = 0;
+            start = THREADS.getThreadCpuTime(bench.server.getUpdateThread().getId());
+        }
+
+        @TearDown(Level.Iteration)
+        public void end(WakeupBench bench) {
+            cpuNanos = THREADS.getThreadCpuTime(bench.server.getUpdateThread().getId()) - start;
+        }
+    }
+
+
+    @Benchmark
+    @Measurement(iterations = 20)
+    @Warmup(iterations = 20)
+    public void broadcast(NetworkThreadCpu cpu) {
+        server.sendToAllTCP(msg);
+    }
+}
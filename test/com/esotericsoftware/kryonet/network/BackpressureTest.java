@@ -0,0 +1,103 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.ConnectionAdapter;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.utils.ByteMessage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sends to a client that doesn't read, so the server's write queue fills up and the overflow policy kicks in.
+ */
+public class BackpressureTest extends KryoNetTestCase {
+    private static final int WRITE_LIMIT = 16384;
+
+    private final List<Boolean> events = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new Server(WRITE_LIMIT, 2048);
+        server.getKryo().register(ByteMessage.class);
+        server.getKryo().register(byte[].class);
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void onWritabilityChanged(ClientConnection connection, boolean writable) {
+                events.add(writable);
+            }
+        });
+        startEndPoint(server);
+        server.bind(tcpPort);
+    }
+
+
+    public void testDropKeepsQueueBounded() throws Exception {
+        try (Socket socket = connectSlowReader()) {
+            ClientConnection connection = server.getConnections().get(0);
+            connection.setWriteOverflowPolicy(WriteOverflowPolicy.DROP);
+
+            int sent = 0, dropped = 0;
+            for (int i = 0; i < 10000; ++i) {
+                int length = connection.sendTCP(new ByteMessage(new byte[1000]));
+                if (length == 0) ++dropped;
+                else sent += length;
+            }
+
+            assertTrue(dropped > 0);
+            assertTrue(connection.isConnected());
+            assertFalse(connection.isWritable());
+            assertTrue(connection.getTcpWriteBufferSize() <= WRITE_LIMIT);
+            assertEquals(Boolean.FALSE, events.get(0));
+
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[65536];
+            for (int total = 0; total < sent; ) {
+                int read = in.read(buffer);
+                if (read < 0) fail("Connection closed while draining.");
+                total += read;
+            }
+            Thread.sleep(200);
+
+            assertTrue(connection.isWritable());
+            assertEquals(0, connection.getTcpWriteBufferSize());
+            assertEquals(Boolean.TRUE, events.get(events.size() - 1));
+        }
+    }
+
+    public void testCloseIsDefault() throws Exception {
+        try (Socket ignored = connectSlowReader()) {
+            ClientConnection connection = server.getConnections().get(0);
+            for (int i = 0; i < 10000 && connection.isConnected(); ++i)
+                connection.sendTCP(new ByteMessage(new byte[1000]));
+
+            assertFalse(connection.isConnected());
+        }
+    }
+
+    public void testInvalidWaterMarks() throws Exception {
+        try (Socket ignored = connectSlowReader()) {
+            ClientConnection connection = server.getConnections().get(0);
+            try {
+                connection.setWriteWaterMarks(WRITE_LIMIT / 2, WRITE_LIMIT / 4);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+
+    /** Connects a plain socket with a tiny receive buffer that is never read until the test chooses to. */
+    private Socket connectSlowReader() throws IOException, InterruptedException {
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096); // Must be set before connecting to take effect.
+        socket.connect(new InetSocketAddress(host, tcpPort));
+        for (int i = 0; i < 50 && server.getConnections().isEmpty(); ++i)
+            Thread.sleep(20);
+        return socket;
+    }
+}
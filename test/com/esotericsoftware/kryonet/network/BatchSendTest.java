@@ -0,0 +1,88 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.ConnectionAdapter;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.network.messages.MessageToClient;
+import com.esotericsoftware.kryonet.network.messages.MessageToServer;
+import com.esotericsoftware.kryonet.utils.ByteMessage;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+public class BatchSendTest extends KryoNetTestCase {
+    private static final int OBJECT_BUFFER = 1024, WRITE_BUFFER = 16384, MESSAGES = 200;
+
+    private final List<Object> received = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new Server(WRITE_BUFFER, OBJECT_BUFFER);
+        client = new Client(WRITE_BUFFER, OBJECT_BUFFER);
+        reg(server.getKryo(), client.getKryo(), ByteMessage.class, byte[].class, StringMessage.class);
+        super.setUp();
+    }
+
+
+    public void testBatchKeepsOrderAndFragmentsLargeMessages() throws TimeoutException {
+        server.addListener(new Collector<>());
+        start(server, client);
+
+        final byte[] large = new byte[OBJECT_BUFFER * 10];
+        Arrays.fill(large, (byte) 7);
+        final List<MessageToServer> batch = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; ++i)
+            batch.add(i == MESSAGES / 2 ? new ByteMessage(large) : new StringMessage("message " + i));
+
+        assertTrue(client.getConnection().sendBatchTCP(batch) > large.length);
+        test.await(5000, MESSAGES);
+
+        for (int i = 0; i < MESSAGES; ++i) {
+            if (i == MESSAGES / 2)
+                assertTrue(Arrays.equals(large, ((ByteMessage) received.get(i)).bytes));
+            else
+                assertEquals(new StringMessage("message " + i), received.get(i));
+        }
+    }
+
+    public void testEmptyBatchSendsNothing() {
+        start(server, client);
+        assertEquals(0, client.getConnection().sendBatchTCP(Collections.emptyList()));
+        assertTrue(client.getConnection().isConnected());
+    }
+
+    public void testBroadcastBatches() throws TimeoutException {
+        client.addListener(new Collector<>());
+        start(server, client);
+
+        final List<MessageToClient> batch = new ArrayList<>();
+        final List<CachedMessage<MessageToClient>> cached = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; ++i) {
+            batch.add(new StringMessage("message " + i));
+            cached.add(server.getCachedMessageFactory().create(new StringMessage("cached " + i)));
+        }
+        server.sendBatchToAllTCP(batch);
+        server.sendCachedBatchToAllTCP(cached);
+        server.getConnections().get(0).sendCachedBatchTCP(cached.subList(0, 1));
+        test.await(5000, MESSAGES * 2 + 1);
+
+        for (int i = 0; i < MESSAGES; ++i) {
+            assertEquals(new StringMessage("message " + i), received.get(i));
+            assertEquals(new StringMessage("cached " + i), received.get(MESSAGES + i));
+        }
+        assertEquals(new StringMessage("cached 0"), received.get(MESSAGES * 2));
+    }
+
+
+    private class Collector<C extends Connection<?>> extends ConnectionAdapter<C> {
+        @Override
+        public void received(C connection, Object object) {
+            received.add(object);
+            test.resume();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.network.messages.Message;
+import com.esotericsoftware.kryonet.serializers.KryoSerialization;
+import com.esotericsoftware.kryonet.utils.ByteMessage;
+import com.esotericsoftware.kryonet.utils.DataMessage;
+import com.esotericsoftware.kryonet.utils.ObjectMessage;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Trains a dictionary on the test message types and reports how well each type compresses with and without it.
+ */
+public class CompressionDictionaryTest {
+    private static final String[] NAMES = {"Aria", "Brom", "Cael", "Dorn", "Elka"};
+    private static final String[] LINES = {
+        "%s: Anyone up for a raid at the north gate? Bring potions.",
+        "%s: Selling iron ore, 40 gold a stack, whisper me.",
+        "%s has joined the party.",
+        "%s: LFG dungeon, need a healer and one more damage dealer.",
+    };
+
+    private final MessageBufferPool pool = new MessageBufferPool(8, 1 << 20);
+    private final Random random = new Random(17);
+    private final CachedMessageFactory factory;
+
+    public CompressionDictionaryTest() {
+        KryoSerialization serialization = new KryoSerialization();
+        DataMessage.reg(serialization.getKryo());
+        serialization.getKryo().register(StringMessage.class);
+        serialization.getKryo().register(ByteMessage.class);
+        serialization.getKryo().register(ObjectMessage.class);
+        factory = new CachedMessageFactory(serialization, 4096);
+    }
+
+
+    @Test
+    public void compressionRatios() {
+        final Map<String, Supplier<Message>> types = new LinkedHashMap<>();
+        types.put("StringMessage", this::chat);
+        types.put("DataMessage", DataMessage::random);
+        types.put("ObjectMessage", () -> new ObjectMessage(chat()));
+        types.put("ByteMessage", () -> {
+            final byte[] bytes = new byte[64];
+            random.nextBytes(bytes);
+            return new ByteMessage(bytes);
+        });
+
+        final List<CachedMessage<?>> samples = new ArrayList<>();
+        for (int i = 0; i < 250; ++i) {
+            for (Supplier<Message> type : types.values())
+                samples.add(factory.create(type.get()));
+        }
+        final CompressionDictionary dictionary = CompressionDictionary.train(1, samples, 4096);
+        assertTrue(dictionary.size() <= 4096);
+
+        System.err.println("type: serialized, deflate, deflate with a " + dictionary.size() + " byte dictionary (bytes per message)");
+        for (Map.Entry<String, Supplier<Message>> type : types.entrySet()) {
+            long raw = 0, plain = 0, withDictionary = 0;
+            for (int i = 0; i < 200; ++i) {
+                final CachedMessage<?> msg = factory.create(type.getValue().get());
+                raw += msg.length;
+                plain += compressedSize(msg, null);
+                withDictionary += compressedSize(msg, dictionary);
+            }
+            System.err.printf("%s: %d, %d, %d (%.0f%% of serialized)%n", type.getKey(), raw / 200, plain / 200,
+                withDictionary / 200, 100.0 * withDictionary / raw);
+            if (!type.getKey().equals("ByteMessage")) assertTrue(type.getKey(), withDictionary < plain);
+        }
+    }
+
+    @Test
+    public void inflatesWithTheNamedDictionary() {
+        final List<CachedMessage<?>> samples = new ArrayList<>();
+        for (int i = 0; i < 100; ++i)
+            samples.add(factory.create(chat()));
+        final CompressionDictionary dictionary = CompressionDictionary.train(5, samples, 1024);
+        final CompressionDictionary[] dictionaries = new CompressionDictionary[6];
+        dictionaries[5] = dictionary;
+
+        final CachedMessage<?> msg = factory.create(chat());
+        final ByteBuffer compressed = FrameCompression.deflate(ByteBuffer.wrap(msg.cached, msg.start, msg.length), dictionary, pool);
+        assertEquals(5, compressed.get(0));
+        final ByteBuffer inflated = FrameCompression.inflating()
+            .inflate(compressed, compressed.remaining(), true, dictionaries, 1 << 20, pool);
+        final byte[] bytes = new byte[inflated.remaining()];
+        inflated.get(bytes);
+        assertArrayEquals(Arrays.copyOfRange(msg.cached, msg.start, msg.start + msg.length), bytes);
+    }
+
+    @Test
+    public void nothingInCommon() {
+        final List<CachedMessage<?>> samples = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            final byte[] bytes = new byte[32];
+            random.nextBytes(bytes);
+            samples.add(factory.create(new ByteMessage(bytes)));
+        }
+        try {
+            CompressionDictionary.train(1, samples, 1024);
+            throw new AssertionError("Trained a dictionary from random bytes.");
+        } catch (IllegalArgumentException expected) {
+            // The samples are random bytes.
+        }
+    }
+
+
+    private StringMessage chat() {
+        return new StringMessage(String.format(LINES[random.nextInt(LINES.length)], NAMES[random.nextInt(NAMES.length)]));
+    }
+
+    private int compressedSize(CachedMessage<?> msg, CompressionDictionary dictionary) {
+        final ByteBuffer compressed = FrameCompression.deflate(ByteBuffer.wrap(msg.cached, msg.start, msg.length), dictionary, pool);
+        if (compressed == null) return msg.length;
+        pool.release(compressed);
+        return compressed.limit();
+    }
+}
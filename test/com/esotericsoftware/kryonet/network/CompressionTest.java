@@ -0,0 +1,175 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.ConnectionAdapter;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.utils.ByteMessage;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+public class CompressionTest extends KryoNetTestCase {
+    private static final int OBJECT_BUFFER = 1024, WRITE_BUFFER = 16384, THRESHOLD = 64;
+    private static final String TEXT = String.join(" ", java.util.Collections.nCopies(50, "the quick brown fox"));
+
+    private final List<Object> serverReceived = new CopyOnWriteArrayList<>();
+    private final List<Object> clientReceived = new CopyOnWriteArrayList<>();
+    private volatile ClientConnection serverSide;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new Server(WRITE_BUFFER, OBJECT_BUFFER);
+        client = new Client(WRITE_BUFFER, OBJECT_BUFFER);
+        reg(server.getKryo(), client.getKryo(), StringMessage.class, ByteMessage.class, byte[].class);
+        super.setUp();
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void received(ClientConnection connection, Object msg) {
+                serverSide = connection;
+                serverReceived.add(msg);
+                test.resume();
+            }
+        });
+        client.addListener(new ConnectionAdapter<ServerConnection>() {
+            @Override
+            public void received(ServerConnection connection, Object msg) {
+                clientReceived.add(msg);
+                test.resume();
+            }
+        });
+    }
+
+
+    public void testCompressedBothWays() throws TimeoutException {
+        server.setCompressionThreshold(THRESHOLD);
+        client.setCompressionThreshold(THRESHOLD);
+        start(server, client);
+        assertTrue(client.getConnection().isCompressing());
+
+        final int sent = client.sendTCP(new StringMessage(TEXT));
+        assertTrue("Sent " + sent + " bytes.", sent < TEXT.length() / 4);
+        client.sendTCP(new StringMessage("short"));
+        test.await(5000, 2);
+        assertTrue(serverSide.isCompressing());
+        assertTrue(serverSide.sendTCP(new StringMessage(TEXT)) < TEXT.length() / 4);
+        test.await(5000);
+
+        assertEquals(Arrays.asList(new StringMessage(TEXT), new StringMessage("short")), serverReceived);
+        assertEquals(new StringMessage(TEXT), clientReceived.get(0));
+    }
+
+    public void testNotCompressedUnlessBothEndsAgree() throws TimeoutException {
+        server.setCompressionThreshold(THRESHOLD);
+        start(server, client);
+        assertFalse(client.getConnection().isCompressing());
+
+        assertTrue(client.sendTCP(new StringMessage(TEXT)) > TEXT.length());
+        test.await(5000);
+        assertFalse(serverSide.isCompressing());
+        assertTrue(serverSide.sendTCP(new StringMessage(TEXT)) > TEXT.length());
+        test.await(5000);
+        assertEquals(new StringMessage(TEXT), clientReceived.get(0));
+    }
+
+    public void testSmallAndIncompressibleMessagesAreSentAsTheyAre() throws TimeoutException {
+        server.setCompressionThreshold(THRESHOLD);
+        client.setCompressionThreshold(THRESHOLD);
+        start(server, client);
+
+        final byte[] random = new byte[OBJECT_BUFFER / 2];
+        ThreadLocalRandom.current().nextBytes(random);
+        assertTrue(client.sendTCP(new ByteMessage(random)) > random.length);
+        assertTrue(client.sendTCP(new StringMessage("short")) < THRESHOLD);
+        test.await(5000, 2);
+
+        assertTrue(Arrays.equals(random, ((ByteMessage) serverReceived.get(0)).bytes));
+        assertEquals(new StringMessage("short"), serverReceived.get(1));
+    }
+
+    public void testCompressedFragments() throws TimeoutException {
+        server.setCompressionThreshold(THRESHOLD);
+        client.setCompressionThreshold(THRESHOLD);
+        start(server, client);
+
+        // Still several times the object buffer once compressed, so it is sent as compressed fragments.
+        final byte[] bytes = new byte[OBJECT_BUFFER * 64];
+        final byte[] noise = new byte[OBJECT_BUFFER * 4];
+        ThreadLocalRandom.current().nextBytes(noise);
+        System.arraycopy(noise, 0, bytes, 0, noise.length);
+        final int sent = client.sendTCP(new ByteMessage(bytes));
+        assertTrue(sent > OBJECT_BUFFER && sent < bytes.length / 4);
+        test.await(5000);
+
+        assertTrue(Arrays.equals(bytes, ((ByteMessage) serverReceived.get(0)).bytes));
+    }
+
+    public void testCompressedCachedMessage() throws TimeoutException {
+        server.setCompressionThreshold(THRESHOLD);
+        client.setCompressionThreshold(THRESHOLD);
+        start(server, client);
+
+        final CachedMessage<StringMessage> cached = client.getCachedMessageFactory().createCompressed(new StringMessage(TEXT));
+        assertTrue(cached.isCompressed());
+        assertTrue(client.sendTCP(cached) < cached.length / 4);
+        test.await(5000);
+        assertEquals(new StringMessage(TEXT), serverReceived.get(0));
+
+        final byte[] random = new byte[OBJECT_BUFFER / 2];
+        ThreadLocalRandom.current().nextBytes(random);
+        assertFalse(client.getCachedMessageFactory().createCompressed(new ByteMessage(random)).isCompressed());
+    }
+
+    public void testBroadcastCompressedOnlyToConnectionsThatCompress() throws TimeoutException {
+        final Client plain = new Client(WRITE_BUFFER, OBJECT_BUFFER);
+        reg(plain.getKryo(), StringMessage.class, ByteMessage.class, byte[].class);
+        final List<Object> plainReceived = new CopyOnWriteArrayList<>();
+        plain.addListener(new ConnectionAdapter<ServerConnection>() {
+            @Override
+            public void received(ServerConnection connection, Object msg) {
+                plainReceived.add(msg);
+                test.resume();
+            }
+        });
+        server.setCompressionThreshold(THRESHOLD);
+        client.setCompressionThreshold(THRESHOLD);
+        start(server, client, plain);
+        assertTrue(client.getConnection().isCompressing());
+        assertFalse(plain.getConnection().isCompressing());
+
+        server.sendToAllTCP(server.getCachedMessageFactory().createCompressed(new StringMessage(TEXT)));
+        server.sendToAllTCP(new StringMessage(TEXT + "!"));
+        test.await(5000, 4);
+
+        final List<Object> expected = Arrays.asList(new StringMessage(TEXT), new StringMessage(TEXT + "!"));
+        assertEquals(expected, clientReceived);
+        assertEquals(expected, plainReceived);
+    }
+
+    public void testDictionaryBothEndsHave() throws TimeoutException {
+        final List<CachedMessage<?>> samples = new ArrayList<>();
+        for (int i = 0; i < 100; ++i)
+            samples.add(server.getCachedMessageFactory().create(new StringMessage("Player " + i + " has joined the party.")));
+        final CompressionDictionary shared = CompressionDictionary.train(1, samples, 1024);
+        server.addCompressionDictionary(shared);
+        server.addCompressionDictionary(new CompressionDictionary(2, "only the server has this one".getBytes()));
+        client.addCompressionDictionary(new CompressionDictionary(1, shared.getBytes()));
+        server.setCompressionThreshold(0);
+        client.setCompressionThreshold(0);
+        start(server, client);
+
+        final StringMessage joined = new StringMessage("Player 4242 has joined the party.");
+        final int length = client.getCachedMessageFactory().create(joined).length;
+        final int sent = client.sendTCP(joined);
+        assertTrue("Sent " + sent + " bytes for " + length, sent < length);
+        test.await(5000);
+        assertTrue(serverSide.sendTCP(joined) < length);
+        test.await(5000);
+
+        assertEquals(joined, serverReceived.get(0));
+        assertEquals(joined, clientReceived.get(0));
+    }
+}
@@ -0,0 +1,104 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.util.KryoNetException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeltaEncodingTest {
+    private final Random random = new Random(19);
+
+    @Test
+    public void changedFieldsArePatched() {
+        final byte[] base = bytes(120);
+        final byte[] image = base.clone();
+        image[10] ^= 1;
+        image[11] ^= 1;
+        image[90] ^= 1;
+
+        final ByteBuffer patch = diff(base, image);
+        assertTrue("Patch of " + patch.remaining() + " bytes.", patch.remaining() < 12);
+        assertArrayEquals(image, DeltaEncoding.patch(base, patch, patch.remaining(), image.length));
+        assertFalse(patch.hasRemaining());
+    }
+
+    @Test
+    public void lengthChangesInTheMiddleKeepTheSuffix() {
+        final byte[] base = bytes(100);
+        final byte[] image = new byte[101];
+        System.arraycopy(base, 0, image, 0, 40);
+        image[40] = 7;
+        System.arraycopy(base, 40, image, 41, 60);
+
+        final ByteBuffer patch = diff(base, image);
+        assertTrue("Patch of " + patch.remaining() + " bytes.", patch.remaining() < 10);
+        assertArrayEquals(image, DeltaEncoding.patch(base, patch, patch.remaining(), image.length));
+    }
+
+    @Test
+    public void unrelatedImagesAreNotPatched() {
+        final byte[] base = bytes(64), image = bytes(64);
+        final ByteBuffer out = ByteBuffer.allocate(256);
+        assertFalse(DeltaEncoding.diff(base, ByteBuffer.wrap(image), out));
+        assertEquals(0, out.position());
+    }
+
+    @Test(expected = KryoNetException.class)
+    public void imagesPastTheMaxAreRejected() {
+        final byte[] base = bytes(100);
+        final byte[] image = base.clone();
+        image[50] ^= 1;
+        final ByteBuffer patch = diff(base, image);
+        DeltaEncoding.patch(base, patch, patch.remaining(), image.length - 1);
+    }
+
+    @Test
+    public void randomEdits() {
+        for (int round = 0; round < 2000; ++round) {
+            final byte[] base = bytes(random.nextInt(200));
+            byte[] image = base.clone();
+            for (int edits = random.nextInt(4); edits > 0 && image.length > 0; --edits) {
+                final int at = random.nextInt(image.length);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        image[at] = (byte) random.nextInt();
+                        break;
+                    case 1:
+                        image = Arrays.copyOf(image, image.length + 1);
+                        System.arraycopy(image, at, image, at + 1, image.length - at - 1);
+                        break;
+                    default:
+                        System.arraycopy(image, at + 1, image, at, image.length - at - 1);
+                        image = Arrays.copyOf(image, image.length - 1);
+                }
+            }
+            final ByteBuffer out = ByteBuffer.allocate(512);
+            final ByteBuffer source = ByteBuffer.wrap(image);
+            if (!DeltaEncoding.diff(base, source, out)) continue;
+            assertEquals(0, source.position());
+            out.flip();
+            assertTrue(out.remaining() < image.length);
+            assertArrayEquals(image, DeltaEncoding.patch(base, out, out.remaining(), image.length));
+        }
+    }
+
+
+    private byte[] bytes(int length) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static ByteBuffer diff(byte[] base, byte[] image) {
+        final ByteBuffer out = ByteBuffer.allocate(256);
+        assertTrue(DeltaEncoding.diff(base, ByteBuffer.wrap(image), out));
+        out.flip();
+        return out;
+    }
+}
@@ -0,0 +1,151 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.ConnectionAdapter;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.network.messages.BidirectionalMessage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+public class DeltaTest extends KryoNetTestCase {
+    private final List<Object> serverReceived = new CopyOnWriteArrayList<>();
+    private final List<Object> clientReceived = new CopyOnWriteArrayList<>();
+    private Client second;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new Server(16384, 2048);
+        client = new Client(16384, 2048);
+        second = new Client(16384, 2048);
+        reg(server.getKryo(), client.getKryo(), Position.class);
+        reg(second.getKryo(), Position.class);
+        super.setUp();
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void received(ClientConnection connection, Object msg) {
+                serverReceived.add(msg);
+                test.resume();
+            }
+        });
+        client.addListener(new ConnectionAdapter<ServerConnection>() {
+            @Override
+            public void received(ServerConnection connection, Object msg) {
+                clientReceived.add(msg);
+                test.resume();
+            }
+        });
+    }
+
+
+    public void testOnlyChangesAreSent() throws TimeoutException {
+        start(server, client);
+        final Position position = new Position(7, "Goblin Scout of the Northern Hills", 1000, 2000);
+        final int full = client.sendDeltaTCP(position.id, position);
+        final Position moved = new Position(7, position.name, 1001, 2000);
+        final int delta = client.sendDeltaTCP(moved.id, moved);
+        final Position other = new Position(8, "Goblin Archer", 5, 5);
+        client.sendDeltaTCP(other.id, other);
+        test.await(5000, 3);
+
+        assertTrue("Sent " + delta + " bytes, " + full + " whole.", delta < full / 3);
+        assertEquals(Arrays.asList(position, moved, other), serverReceived);
+    }
+
+    public void testSentWholeAfterReconnect() throws TimeoutException, IOException {
+        start(server, client);
+        final Position position = new Position(7, "Goblin Scout of the Northern Hills", 1000, 2000);
+        final int full = client.sendDeltaTCP(position.id, position);
+        test.await(5000);
+
+        client.close();
+        client.reconnect();
+        final Position moved = new Position(7, position.name, 1001, 2000);
+        assertEquals(full, client.sendDeltaTCP(moved.id, moved));
+        test.await(5000);
+        assertEquals(Arrays.asList(position, moved), serverReceived);
+    }
+
+    public void testForgottenKeyIsSentWhole() throws TimeoutException {
+        start(server, client);
+        final Position position = new Position(7, "Goblin Scout of the Northern Hills", 1000, 2000);
+        final int full = client.sendDeltaTCP(position.id, position);
+        client.getConnection().forgetDelta(position.id);
+        assertEquals(full, client.sendDeltaTCP(position.id, position));
+        test.await(5000, 2);
+        assertEquals(Arrays.asList(position, position), serverReceived);
+    }
+
+    public void testTooManyKeysClosesTheConnection() throws TimeoutException {
+        start(server, client);
+        for (int id = 0; id < TcpConnection.MAX_DELTA_KEYS; ++id)
+            assertTrue(client.sendDeltaTCP(id, new Position(id, "Goblin", 0, 0)) > 0);
+        assertTrue(client.isConnected());
+
+        // Forgetting a key makes room for another.
+        client.getConnection().forgetDelta(0);
+        assertTrue(client.sendDeltaTCP(-1, new Position(-1, "Goblin", 0, 0)) > 0);
+
+        assertEquals(0, client.sendDeltaTCP(-2, new Position(-2, "Goblin", 0, 0)));
+        assertFalse(client.isConnected());
+    }
+
+    public void testBroadcastDeltasPerConnection() throws TimeoutException {
+        final List<Object> secondReceived = new CopyOnWriteArrayList<>();
+        second.addListener(new ConnectionAdapter<ServerConnection>() {
+            @Override
+            public void received(ServerConnection connection, Object msg) {
+                secondReceived.add(msg);
+                test.resume();
+            }
+        });
+        start(server, client);
+        final Position position = new Position(7, "Goblin Scout of the Northern Hills", 1000, 2000);
+        server.sendDeltaToAllTCP(position.id, position);
+        test.await(5000);
+
+        // The second client joins late, so it is sent the first position whole while the first client gets a patch.
+        start(second);
+        final Position moved = new Position(7, position.name, 1000, 2001);
+        server.sendDeltaToAllTCP(moved.id, moved);
+        test.await(5000, 2);
+
+        assertEquals(Arrays.asList(position, moved), clientReceived);
+        assertEquals(Arrays.asList(moved), secondReceived);
+    }
+
+
+    public static class Position implements BidirectionalMessage {
+        public int id, x, y;
+        public String name;
+
+        public Position() {
+        }
+
+        Position(int id, String name, int x, int y) {
+            this.id = id;
+            this.name = name;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Position)) return false;
+            final Position other = (Position) o;
+            return id == other.id && x == other.x && y == other.y && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return "Position(" + id + ", " + x + ", " + y + ")";
+        }
+    }
+}
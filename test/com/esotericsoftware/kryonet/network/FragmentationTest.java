@@ -0,0 +1,156 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.ConnectionAdapter;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.serializers.KryoSerialization;
+import com.esotericsoftware.kryonet.util.CoarseClock;
+import com.esotericsoftware.kryonet.utils.ByteMessage;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends TCP messages 100 times larger than the object buffer, which are fragmented on send and reassembled on receipt.
+ */
+public class FragmentationTest extends KryoNetTestCase {
+    private static final int OBJECT_BUFFER = 1024, WRITE_BUFFER = 16384, LARGE = OBJECT_BUFFER * 100;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new Server(WRITE_BUFFER, OBJECT_BUFFER);
+        client = new Client(WRITE_BUFFER, OBJECT_BUFFER);
+        reg(server.getKryo(), client.getKryo(), ByteMessage.class, byte[].class, StringMessage.class);
+        super.setUp();
+    }
+
+
+    public void testLargeMessagesBothWays() throws TimeoutException {
+        final byte[] request = randomBytes(LARGE), reply = randomBytes(LARGE + 7);
+        final List<Object> received = new CopyOnWriteArrayList<>();
+
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void received(ClientConnection connection, Object object) {
+                received.add(object);
+                if (received.size() == 3) connection.sendTCP(new ByteMessage(reply));
+            }
+        });
+        client.addListener(new ConnectionAdapter<ServerConnection>() {
+            @Override
+            public void received(ServerConnection connection, Object object) {
+                test.assertTrue(object instanceof ByteMessage);
+                test.assertTrue(Arrays.equals(reply, ((ByteMessage) object).bytes));
+                test.resume();
+            }
+        });
+
+        start(server, client);
+        client.sendTCP(new StringMessage("before"));
+        client.sendTCP(new ByteMessage(request));
+        client.sendTCP(new StringMessage("after"));
+        test.await(5000);
+
+        assertEquals(new StringMessage("before"), received.get(0));
+        assertTrue(Arrays.equals(request, ((ByteMessage) received.get(1)).bytes));
+        assertEquals(new StringMessage("after"), received.get(2));
+    }
+
+    public void testManyLargeMessagesFromManyThreads() throws Exception {
+        final int threads = 4, messagesPerThread = 10;
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void received(ClientConnection connection, Object object) {
+                if (object instanceof ByteMessage) {
+                    byte[] bytes = ((ByteMessage) object).bytes;
+                    test.assertEquals(LARGE, bytes.length);
+                    for (byte b : bytes)
+                        test.assertEquals(bytes[0], b);
+                    test.resume();
+                }
+            }
+        });
+
+        start(server, client);
+        client.getConnection().setWriteOverflowPolicy(WriteOverflowPolicy.BLOCK);
+        Thread[] senders = new Thread[threads];
+        for (int i = 0; i < threads; ++i) {
+            final byte value = (byte) i;
+            senders[i] = new Thread(() -> {
+                byte[] bytes = new byte[LARGE];
+                Arrays.fill(bytes, value);
+                for (int j = 0; j < messagesPerThread; ++j)
+                    client.sendTCP(new ByteMessage(bytes));
+            });
+            senders[i].start();
+        }
+        for (Thread sender : senders)
+            sender.join();
+
+        test.await(10000, threads * messagesPerThread);
+        assertTrue(client.getConnection().isConnected());
+    }
+
+    public void testLargerThanMaxMessageSizeCloses() throws TimeoutException {
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void onDisconnected(ClientConnection connection) {
+                test.resume();
+            }
+        });
+
+        start(server, client);
+        client.getConnection().setMaxMessageSize(LARGE / 2);
+        assertEquals(0, client.sendTCP(new ByteMessage(new byte[LARGE])));
+        assertFalse(client.getConnection().isConnected());
+        test.await(5000);
+    }
+
+    /**
+     * Compares the direct memory held by idle connections with an object buffer large enough for the largest message,
+     * against a small one that relies on fragmentation.
+     */
+    public void testFootprint() {
+        final int connections = 100;
+        long large = footprint(connections, LARGE), small = footprint(connections, OBJECT_BUFFER);
+        System.out.println("Direct memory for " + connections + " connections, object buffer of " + LARGE + ": " + large
+                + " bytes, of " + OBJECT_BUFFER + " with fragmentation: " + small + " bytes.");
+        assertTrue(small * 50 < large);
+    }
+
+
+    private static long footprint(int connections, int objectBufferSize) {
+        BufferPool writePool = new BufferPool(4096, 256);
+        MessageBufferPool messagePool = new MessageBufferPool(2, 1024 * 1024);
+        KryoSerialization serialization = new KryoSerialization();
+        CoarseClock clock = new CoarseClock();
+
+        ClientConnection[] held = new ClientConnection[connections];
+        long before = directMemoryUsed();
+        for (int i = 0; i < connections; ++i) {
+            held[i] = new ClientConnection();
+            held[i].initialize(serialization, clock, writePool, messagePool, null, WRITE_BUFFER, objectBufferSize);
+        }
+        long used = directMemoryUsed() - before;
+        assertEquals(connections, held.length);
+        return used;
+    }
+
+    private static long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) return pool.getMemoryUsed();
+        }
+        throw new IllegalStateException("No direct buffer pool.");
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+}
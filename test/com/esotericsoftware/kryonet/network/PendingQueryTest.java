@@ -0,0 +1,158 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.RegisteredServerListener;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.messages.QueryToServer;
+import com.esotericsoftware.kryonet.util.KryoNetException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class PendingQueryTest extends KryoNetTestCase {
+    private static final int UNANSWERED = -1, HELD = 1_000_000;
+
+    private final Client[] clients = new Client[3];
+    /** Queries the server holds to answer later. */
+    private final List<Echo> held = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        clients[0] = client;
+        for (int i = 1; i < clients.length; ++i)
+            clients[i] = new Client(Short.MAX_VALUE, Short.MAX_VALUE);
+        reg(server.getKryo(), Echo.class, Integer.class);
+        for (Client client : clients)
+            reg(client.getKryo(), Echo.class, Integer.class);
+        super.setUp();
+
+        RegisteredServerListener listener = new RegisteredServerListener();
+        listener.addQueryHandle(Echo.class, (query, connection) -> {
+            if (query.value >= HELD) {
+                held.add(query);
+                test.resume();
+            } else if (query.value != UNANSWERED) {
+                query.reply(query.value);
+            }
+        });
+        server.addListener(listener);
+    }
+
+
+    public void testConcurrentQueriesFromManyClients() throws Exception {
+        start(server, clients);
+        final List<Thread> threads = new ArrayList<>();
+        final List<Throwable> errors = new ArrayList<>();
+        for (int c = 0; c < clients.length; ++c) {
+            final ServerConnection connection = clients[c].getConnection();
+            final int base = c * 1000;
+            threads.add(new Thread(() -> {
+                try {
+                    final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+                    for (int i = 0; i < 200; ++i)
+                        futures.add(connection.sendAsync(new Echo(base + i)));
+                    for (int i = 0; i < futures.size(); ++i)
+                        assertEquals(base + i, futures.get(i).get(5, TimeUnit.SECONDS).intValue());
+                } catch (Throwable error) {
+                    synchronized (errors) {
+                        errors.add(error);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join(10_000);
+
+        assertEquals(new ArrayList<Throwable>(), errors);
+        for (Client client : clients)
+            assertEquals(0, client.getConnection().getPendingQueries());
+    }
+
+    public void testCloseFailsPendingQueries() throws InterruptedException {
+        start(server, client);
+        final CompletableFuture<Integer> unanswered = client.getConnection().sendAsync(new Echo(UNANSWERED), null);
+        assertEquals(1, client.getConnection().getPendingQueries());
+
+        client.close();
+        try {
+            unanswered.get(5, TimeUnit.SECONDS);
+            fail("The query was answered.");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof KryoNetException);
+        } catch (TimeoutException e) {
+            fail("The query was still pending after the connection closed.");
+        }
+        assertEquals(0, client.getConnection().getPendingQueries());
+    }
+
+    public void testQueryOnClosedConnectionFails() {
+        start(server, client);
+        client.close();
+        final CompletableFuture<Integer> future = client.getConnection().sendAsync(new Echo(5), null);
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, client.getConnection().getPendingQueries());
+    }
+
+    public void testBatchedQueries() throws Exception {
+        start(server, client);
+        final ServerConnection connection = client.getConnection();
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        try (TcpBatch batch = connection.batchTCP()) {
+            for (int i = 0; i < 100; ++i)
+                futures.add(connection.sendAsync(new Echo(i)));
+        }
+        for (int i = 0; i < futures.size(); ++i)
+            assertEquals(i, futures.get(i).get(5, TimeUnit.SECONDS).intValue());
+    }
+
+    public void testWindowHoldsQueriesBack() throws Exception {
+        start(server, client);
+        final ServerConnection connection = client.getConnection();
+        connection.setQueryWindow(2);
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; ++i)
+            futures.add(connection.sendAsync(new Echo(HELD + i)));
+        test.await(5000, 2);
+        sleep(100);
+        assertEquals(2, held.size());
+        assertEquals(5, connection.getPendingQueries());
+
+        // Each response leaves room for the next query.
+        for (int i = 0; i < 5; ++i) {
+            final Echo query = held.get(i);
+            query.reply(query.value);
+            assertEquals(HELD + i, futures.get(i).get(5, TimeUnit.SECONDS).intValue());
+            if (i < 3) test.await(5000);
+        }
+        assertEquals(5, held.size());
+        assertEquals(0, connection.getPendingQueries());
+    }
+
+    public void testTimedOutQueryLeavesRoomInWindow() throws Exception {
+        start(server, client);
+        final ServerConnection connection = client.getConnection();
+        connection.setQueryWindow(1);
+        final CompletableFuture<Integer> unanswered = connection.sendAsync(new Echo(UNANSWERED), Duration.ofMillis(50));
+        final CompletableFuture<Integer> next = connection.sendAsync(new Echo(7), Duration.ofSeconds(5));
+        assertEquals(7, next.get(5, TimeUnit.SECONDS).intValue());
+        assertTrue(unanswered.isCancelled());
+    }
+
+
+    public static class Echo extends QueryToServer<Integer> {
+        public int value;
+
+        public Echo() {
+        }
+
+        Echo(int value) {
+            this.value = value;
+        }
+    }
+}
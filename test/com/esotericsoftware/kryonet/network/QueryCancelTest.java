@@ -0,0 +1,162 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.RegisteredServerListener;
+import com.esotericsoftware.kryonet.network.PendingQueryTest.Echo;
+import com.esotericsoftware.kryonet.network.messages.StreamQueryToServer;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class QueryCancelTest extends KryoNetTestCase {
+    /** Queries the server received and holds without answering. */
+    private final List<Query<?, ?>> held = new CopyOnWriteArrayList<>();
+    /** Counts down as the server learns queries were cancelled. */
+    private volatile CountDownLatch cancelled = new CountDownLatch(1);
+    /** How many rows the server's streams produced. */
+    private final AtomicInteger produced = new AtomicInteger();
+    /** Whether the server holds Echo queries without asking whether they were cancelled. */
+    private volatile boolean ignore;
+
+    @Override
+    protected void setUp() throws Exception {
+        reg(server.getKryo(), client.getKryo(), Echo.class, Rows.class, Integer.class);
+        super.setUp();
+        RegisteredServerListener listener = new RegisteredServerListener();
+        listener.addQueryHandle(Echo.class, (query, connection) -> {
+            if (ignore) {
+                held.add(query);
+                test.resume();
+            } else {
+                hold(query);
+            }
+        });
+        listener.addQueryHandle(Rows.class, (query, connection) -> {
+            hold(query);
+            query.stream(new Iterator<Integer>() {
+                @Override
+                public boolean hasNext() {
+                    return true;
+                }
+
+                @Override
+                public Integer next() {
+                    return produced.incrementAndGet();
+                }
+            });
+        });
+        server.addListener(listener);
+    }
+
+    private void hold(Query<?, ?> query) {
+        held.add(query);
+        query.onCancel(() -> cancelled.countDown());
+        test.resume();
+    }
+
+
+    public void testTimedOutQueryIsCancelledRemotely() throws Exception {
+        start(server, client);
+        client.getConnection().sendAsync(new Echo(1), Duration.ofMillis(100));
+        test.await(5000);
+        assertFalse(held.get(0).isCancelled());
+
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        assertTrue(held.get(0).isCancelled());
+    }
+
+    public void testCancelledFutureCancelsRemotely() throws Exception {
+        start(server, client);
+        final CompletableFuture<Integer> future = client.getConnection().sendAsync(new Echo(1), null);
+        test.await(5000);
+        future.cancel(false);
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        assertEquals(0, client.getConnection().getPendingQueries());
+    }
+
+    public void testAnsweredQueryIsNotCancelled() throws Exception {
+        start(server, client);
+        final CompletableFuture<Integer> future = client.getConnection().sendAsync(new Echo(1), Duration.ofMillis(200));
+        test.await(5000);
+        final Echo query = (Echo) held.get(0);
+        query.reply(query.value);
+        assertEquals(1, future.get(5, TimeUnit.SECONDS).intValue());
+        sleep(400);
+        assertFalse(query.isCancelled());
+    }
+
+    public void testOnCancelRunsAtOnceIfAlreadyCancelled() throws Exception {
+        start(server, client);
+        client.getConnection().sendAsync(new Echo(1), Duration.ofMillis(50));
+        test.await(5000);
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+
+        final CountDownLatch ran = new CountDownLatch(1);
+        held.get(0).onCancel(ran::countDown);
+        assertEquals(0, ran.getCount());
+    }
+
+    public void testClosedStreamStopsTheSource() throws Exception {
+        start(server, client);
+        final QueryStream<Integer> rows = client.getConnection().sendStream(new Rows(), 8, null);
+        assertEquals(1, rows.next().intValue());
+        rows.close();
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+
+        final int before = produced.get();
+        assertTrue(before <= 8);
+        sleep(200);
+        assertEquals(before, produced.get());
+        assertEquals(0, client.getConnection().getPendingQueries());
+    }
+
+    public void testIgnoredQueriesAreNotTracked() throws Exception {
+        ignore = true;
+        start(server, client);
+        for (int i = 0; i < 3; ++i)
+            client.getConnection().sendAsync(new Echo(i), Duration.ofMillis(100));
+        test.await(5000, 3);
+        final ClientConnection connection = server.getConnection(client.getConnection().getID());
+        assertEquals(0, connection.getTrackedQueries());
+
+        // Asking after the cancel arrived still learns of it.
+        sleep(500);
+        for (Query<?, ?> query : held)
+            assertTrue(query.isCancelled());
+        assertEquals(0, connection.getTrackedQueries());
+    }
+
+    public void testManyEarlyCancelsAreAllKept() throws Exception {
+        ignore = true;
+        start(server, client);
+        for (int i = 0; i < 200; ++i)
+            client.getConnection().sendAsync(new Echo(i), Duration.ofMillis(50));
+        test.await(5000, 200);
+
+        // Every query was cancelled before its handler asked, and the first still learns of it.
+        sleep(500);
+        for (Query<?, ?> query : held)
+            assertTrue(query.isCancelled());
+    }
+
+    public void testClosingConnectionCancelsReceivedQueries() throws Exception {
+        start(server, client);
+        client.getConnection().sendAsync(new Echo(1), null);
+        client.getConnection().sendAsync(new Echo(2), null);
+        test.await(5000, 2);
+        cancelled = new CountDownLatch(2);
+        for (Query<?, ?> query : held)
+            query.onCancel(() -> cancelled.countDown());
+
+        server.getConnection(client.getConnection().getID()).close();
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    }
+
+
+    public static class Rows extends StreamQueryToServer<Integer> {
+    }
+}
@@ -0,0 +1,100 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.RegisteredServerListener;
+import com.esotericsoftware.kryonet.futures.TimedFuture;
+import com.esotericsoftware.kryonet.network.PendingQueryTest.Echo;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends many answered queries with long timeouts and checks their timeouts don't outlive them.
+ */
+public class QueryTimeoutSoakTest extends KryoNetTestCase {
+    private static final int UNANSWERED = -1, WAVES = 50, WAVE = 1000;
+
+    @Override
+    protected void setUp() throws Exception {
+        reg(server.getKryo(), client.getKryo(), Echo.class, Integer.class);
+        super.setUp();
+        RegisteredServerListener listener = new RegisteredServerListener();
+        listener.addQueryHandle(Echo.class, (query, connection) -> {
+            if (query.value != UNANSWERED) query.reply(query.value);
+        });
+        server.addListener(listener);
+    }
+
+
+    public void testAnsweredQueriesLeaveNoTimeouts() throws Exception {
+        start(server, client);
+        final ServerConnection connection = client.getConnection();
+        final int before = TimedFuture.getPendingTimeouts();
+        final long heapBefore = usedHeap();
+        int mostPending = 0;
+
+        final List<CompletableFuture<Integer>> wave = new ArrayList<>(WAVE);
+        for (int w = 0; w < WAVES; ++w) {
+            for (int i = 0; i < WAVE; ++i)
+                wave.add(connection.sendAsync(new Echo(i), Duration.ofMinutes(10)));
+            mostPending = Math.max(mostPending, TimedFuture.getPendingTimeouts() - before);
+            for (int i = 0; i < WAVE; ++i)
+                assertEquals(i, wave.get(i).get(5, TimeUnit.SECONDS).intValue());
+            wave.clear();
+        }
+
+        System.err.printf("%d queries, at most %d timeouts pending, heap grew by %d KB.%n", WAVES * WAVE, mostPending,
+            (usedHeap() - heapBefore) / 1024);
+        // A timeout is removed just after its future completes, so a few of the last wave may still be pending.
+        assertTrue(mostPending < 2 * WAVE);
+        for (int i = 0; i < 100 && TimedFuture.getPendingTimeouts() > before; ++i)
+            sleep(10);
+        assertEquals(before, TimedFuture.getPendingTimeouts());
+        assertEquals(0, connection.getPendingQueries());
+    }
+
+    public void testTimedOutQueryIsForgotten() throws Exception {
+        start(server, client);
+        final ServerConnection connection = client.getConnection();
+        final CompletableFuture<Integer> future = connection.sendAsync(new Echo(UNANSWERED), Duration.ofMillis(50));
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("The query was answered.");
+        } catch (CancellationException expected) {
+            // Timed out.
+        } catch (ExecutionException e) {
+            fail("The query failed instead of timing out: " + e.getCause());
+        }
+        assertEquals(0, connection.getPendingQueries());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testAddTimeoutCancelsAPlainFuture() throws Exception {
+        final int before = TimedFuture.getPendingTimeouts();
+        final CompletableFuture<Integer> late = new CompletableFuture<>();
+        TimedFuture.addTimeout(late, Duration.ofMillis(50));
+        try {
+            late.get(5, TimeUnit.SECONDS);
+            fail("The future completed.");
+        } catch (CancellationException expected) {
+            // Timed out.
+        }
+
+        // A future completed in time is left alone, and its timeout removed.
+        final CompletableFuture<Integer> answered = new CompletableFuture<>();
+        TimedFuture.addTimeout(answered, Duration.ofMinutes(10));
+        answered.complete(1);
+        assertEquals(before, TimedFuture.getPendingTimeouts());
+        assertEquals(1, answered.get().intValue());
+    }
+
+
+    private static long usedHeap() {
+        System.gc();
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,117 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.ConnectionAdapter;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage;
+import com.esotericsoftware.kryonet.utils.ByteMessage;
+import com.esotericsoftware.kryonet.utils.EmptyMessage;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+public class RawFrameTest extends KryoNetTestCase {
+    private static final int OBJECT_BUFFER = 1024, WRITE_BUFFER = 16384;
+
+    private final List<Object> received = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new Server(WRITE_BUFFER, OBJECT_BUFFER);
+        client = new Client(WRITE_BUFFER, OBJECT_BUFFER);
+        reg(server.getKryo(), client.getKryo(), ByteMessage.class, byte[].class, StringMessage.class, EmptyMessage.class);
+        super.setUp();
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void received(ClientConnection connection, Object msg) {
+                received.add(msg);
+                if (msg instanceof EmptyMessage) test.resume();
+            }
+        });
+    }
+
+
+    public void testDroppedFramesAreNotDecoded() throws TimeoutException {
+        final int stringId = server.getKryo().getRegistration(StringMessage.class).getId();
+        final List<Object> passed = new CopyOnWriteArrayList<>();
+        server.addRawListener(StringMessage.class, (connection, frame) -> {
+            test.assertEquals(stringId, frame.typeId());
+            final ByteBuffer payload = frame.payload();
+            test.assertEquals(frame.length(), payload.remaining());
+            test.assertTrue(payload.isReadOnly());
+            if (frame.length() % 2 == 0) return true;
+            passed.add(frame.decode());
+            return false;
+        });
+
+        start(server, client);
+        for (int i = 0; i < 20; ++i)
+            client.sendTCP(new StringMessage(i % 2 == 0 ? "even" : "odd"));
+        client.sendTCP(new EmptyMessage());
+        test.await(5000);
+
+        // The two strings serialize to one byte apart, so exactly one of them is dropped.
+        assertEquals(11, received.size());
+        assertEquals(10, passed.size());
+        for (int i = 0; i < passed.size(); ++i)
+            assertSame(passed.get(i), received.get(i));
+    }
+
+    public void testFragmentedMessagesArriveRaw() throws TimeoutException {
+        final byte[] bytes = new byte[OBJECT_BUFFER * 10];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        final List<byte[]> payloads = new CopyOnWriteArrayList<>();
+        server.addRawListener(ByteMessage.class, (connection, frame) -> {
+            byte[] payload = new byte[frame.length()];
+            frame.payload().get(payload);
+            payloads.add(payload);
+            try {
+                frame.payload().put((byte) 0);
+                test.fail("The payload should be read-only.");
+            } catch (ReadOnlyBufferException expected) {
+            }
+            return false;
+        });
+
+        start(server, client);
+        client.sendTCP(new ByteMessage(bytes));
+        client.sendTCP(new ByteMessage(new byte[]{1, 2, 3}));
+        client.sendTCP(new EmptyMessage());
+        test.await(5000);
+
+        assertEquals(3, received.size());
+        assertTrue(Arrays.equals(bytes, ((ByteMessage) received.get(0)).bytes));
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3}, ((ByteMessage) received.get(1)).bytes));
+        assertEquals(2, payloads.size());
+        assertTrue(payloads.get(0).length > bytes.length);
+    }
+
+    public void testRemovedListenerReceivesNothing() throws TimeoutException {
+        server.addRawListener(StringMessage.class, (connection, frame) -> true);
+        server.removeRawListener(StringMessage.class);
+
+        start(server, client);
+        client.sendTCP(new StringMessage("kept"));
+        client.sendTCP(new EmptyMessage());
+        test.await(5000);
+        assertEquals(new StringMessage("kept"), received.get(0));
+    }
+
+    public void testFrameworkAndUnregisteredTypesAreRejected() {
+        try {
+            server.addRawListener(FrameworkMessage.Ping.class, (connection, frame) -> true);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            server.addRawListener(Object.class, (connection, frame) -> true);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
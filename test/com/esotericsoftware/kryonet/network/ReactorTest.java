@@ -0,0 +1,80 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.ConnectionAdapter;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies that connections are spread across reactors and that broadcasts and listeners still see every connection.
+ */
+public class ReactorTest extends KryoNetTestCase {
+
+    private static final int CLIENTS = 6;
+    private static final int REACTORS = 3;
+
+    public void testConnectionsAreShardedAcrossReactors() throws TimeoutException {
+        server.setReactorCount(REACTORS);
+
+        Client[] clients = new Client[CLIENTS];
+        for (int i = 0; i < clients.length; ++i) {
+            clients[i] = new Client();
+            reg(clients[i].getKryo(), StringMessage.class);
+        }
+        reg(server.getKryo(), StringMessage.class);
+
+        final StringMessage msg = new StringMessage("Hello, Reactors!");
+
+        AtomicInteger connected = new AtomicInteger(0);
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void onConnected(ClientConnection con) {
+                if (connected.incrementAndGet() == CLIENTS) {
+                    test.assertEquals(CLIENTS, server.getConnections().size());
+                    server.sendToAllTCP(msg);
+                }
+            }
+        });
+
+        AtomicInteger received = new AtomicInteger(0);
+        ConnectionAdapter<ServerConnection> listener = new ConnectionAdapter<ServerConnection>() {
+            @Override
+            public void received(ServerConnection con, Object object) {
+                test.assertEquals(msg, object);
+                if (received.incrementAndGet() == CLIENTS) {
+                    test.resume();
+                }
+            }
+        };
+        for (Client c : clients)
+            c.addListener(listener);
+
+        start(server, clients);
+        test.await(5000);
+
+        int[] counts = server.getReactorConnectionCounts();
+        assertEquals(REACTORS, counts.length);
+        assertEquals(CLIENTS, Arrays.stream(counts).sum());
+        for (int count : counts)
+            assertEquals(CLIENTS / REACTORS, count);
+    }
+
+
+    public void testSingleThreadedCounts() throws TimeoutException {
+        reg(server.getKryo(), client.getKryo(), StringMessage.class);
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void onConnected(ClientConnection con) {
+                test.resume();
+            }
+        });
+
+        start(server, client);
+        test.await(5000);
+
+        assertTrue(Arrays.equals(new int[]{1}, server.getReactorConnectionCounts()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.RegisteredServerListener;
+import com.esotericsoftware.kryonet.serializers.KryoSerialization;
+import com.esotericsoftware.kryonet.utils.EmptyMessage;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RegisteredListenerTest {
+    private final List<String> handled = new ArrayList<>();
+
+    @Test
+    public void typeIdIsPeekedWithoutConsuming() {
+        KryoSerialization serialization = new KryoSerialization();
+        final int id = serialization.getKryo().register(StringMessage.class).getId();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        serialization.write(buffer, new StringMessage("hi"));
+        serialization.write(buffer, null);
+        buffer.flip();
+
+        assertEquals(id, serialization.typeId(buffer));
+        assertEquals(0, buffer.position());
+        assertEquals("hi", ((StringMessage) serialization.read(buffer)).msg);
+        assertEquals(-1, serialization.typeId(buffer));
+    }
+
+    @Test
+    public void dispatchesByTypeId() {
+        RegisteredServerListener listener = listener();
+        listener.received(null, new StringMessage("a"), 20);
+        listener.received(null, new EmptyMessage(), 21);
+        listener.received(null, new StringMessage("b"), 20);
+        assertEquals(Arrays.asList("string a", "empty", "string b"), handled);
+    }
+
+    @Test
+    public void replacedHandlersAreUsed() {
+        RegisteredServerListener listener = listener();
+        listener.received(null, new StringMessage("a"), 20);
+        listener.addHandler(StringMessage.class, (msg, conn) -> handled.add("replaced " + msg.msg));
+        listener.received(null, new StringMessage("b"), 20);
+        assertEquals(Arrays.asList("string a", "replaced b"), handled);
+    }
+
+    @Test
+    public void sameIdForDifferentClassesFallsBackToClass() {
+        RegisteredServerListener listener = listener();
+        listener.received(null, new StringMessage("a"), 20);
+        listener.received(null, new EmptyMessage(), 20);
+        listener.received(null, new StringMessage("b"), -1);
+        listener.received(null, new StringMessage("c"), Integer.MAX_VALUE);
+        assertEquals(Arrays.asList("string a", "empty", "string b", "string c"), handled);
+    }
+
+
+    private RegisteredServerListener listener() {
+        RegisteredServerListener listener = new RegisteredServerListener();
+        listener.addHandler(StringMessage.class, (msg, conn) -> handled.add("string " + msg.msg));
+        listener.addHandler(EmptyMessage.class, (msg, conn) -> handled.add("empty"));
+        return listener;
+    }
+}
+
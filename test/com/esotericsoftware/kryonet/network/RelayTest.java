@@ -0,0 +1,124 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.ConnectionAdapter;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.impl.Server;
+import com.esotericsoftware.kryonet.utils.ByteMessage;
+import com.esotericsoftware.kryonet.utils.EmptyMessage;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+public class RelayTest extends KryoNetTestCase {
+    private static final int OBJECT_BUFFER = 1024, WRITE_BUFFER = 16384;
+
+    private final List<Object> serverReceived = new CopyOnWriteArrayList<>();
+    private final List<Object> senderReceived = new CopyOnWriteArrayList<>();
+    private Client second, third;
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new Server(WRITE_BUFFER, OBJECT_BUFFER);
+        client = new Client(WRITE_BUFFER, OBJECT_BUFFER);
+        second = new Client(WRITE_BUFFER, OBJECT_BUFFER);
+        third = new Client(WRITE_BUFFER, OBJECT_BUFFER);
+        reg(server.getKryo(), client.getKryo(), StringMessage.class, ByteMessage.class, byte[].class, EmptyMessage.class);
+        reg(second.getKryo(), third.getKryo(), StringMessage.class, ByteMessage.class, byte[].class, EmptyMessage.class);
+        super.setUp();
+
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void received(ClientConnection connection, Object msg) {
+                serverReceived.add(msg);
+                if (msg instanceof EmptyMessage) test.resume();
+            }
+        });
+        client.addListener(new ConnectionAdapter<ServerConnection>() {
+            @Override
+            public void received(ServerConnection connection, Object msg) {
+                senderReceived.add(msg);
+            }
+        });
+    }
+
+
+    public void testRelayedToEveryOtherClient() throws TimeoutException {
+        server.addRelay(StringMessage.class);
+        final List<Object> secondReceived = collect(second), thirdReceived = collect(third);
+
+        start(server, client, second, third);
+        client.sendTCP(new StringMessage("hello"));
+        client.sendTCP(new EmptyMessage());
+        test.await(5000, 3);
+
+        assertEquals(Collections.singletonList(new StringMessage("hello")), secondReceived);
+        assertEquals(Collections.singletonList(new StringMessage("hello")), thirdReceived);
+        assertEquals(1, serverReceived.size());
+        assertTrue(serverReceived.get(0) instanceof EmptyMessage);
+        assertTrue(senderReceived.isEmpty());
+    }
+
+    public void testFragmentedMessagesAreRelayed() throws TimeoutException {
+        final byte[] bytes = new byte[OBJECT_BUFFER * 10];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        server.addRelay(ByteMessage.class);
+        final List<Object> secondReceived = collect(second), thirdReceived = collect(third);
+
+        start(server, client, second, third);
+        client.sendTCP(new ByteMessage(bytes));
+        test.await(5000, 2);
+
+        assertTrue(Arrays.equals(bytes, ((ByteMessage) secondReceived.get(0)).bytes));
+        assertTrue(Arrays.equals(bytes, ((ByteMessage) thirdReceived.get(0)).bytes));
+        assertTrue(serverReceived.isEmpty());
+    }
+
+    public void testRelayedToChosenRecipients() throws TimeoutException {
+        final List<Object> secondReceived = collect(second), thirdReceived = collect(third);
+        start(server, client, second, third);
+        final ClientConnection party = server.getConnection(third.getConnection().getID());
+        server.addRelay(StringMessage.class, sender -> Arrays.asList(sender, party));
+
+        client.sendTCP(new StringMessage("party"));
+        test.await(5000);
+        second.sendTCP(new StringMessage("also party"));
+        test.await(5000);
+
+        assertTrue(secondReceived.isEmpty());
+        assertEquals(Arrays.asList(new StringMessage("party"), new StringMessage("also party")), thirdReceived);
+        assertTrue(senderReceived.isEmpty());
+    }
+
+    public void testRemovedRelayPassesToListeners() throws TimeoutException {
+        server.addRelay(StringMessage.class);
+        server.removeRelay(StringMessage.class);
+        server.addListener(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void received(ClientConnection connection, Object msg) {
+                test.resume();
+            }
+        });
+
+        start(server, client, second);
+        client.sendTCP(new StringMessage("to server"));
+        test.await(5000);
+        assertEquals(Collections.singletonList(new StringMessage("to server")), serverReceived);
+    }
+
+
+    private List<Object> collect(Client client) {
+        final List<Object> received = new CopyOnWriteArrayList<>();
+        client.addListener(new ConnectionAdapter<ServerConnection>() {
+            @Override
+            public void received(ServerConnection connection, Object msg) {
+                received.add(msg);
+                test.resume();
+            }
+        });
+        return received;
+    }
+}
@@ -0,0 +1,139 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.RegisteredClientListener;
+import com.esotericsoftware.kryonet.futures.TimedFuture;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.network.messages.QueryToClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+public class ScatterGatherTest extends KryoNetTestCase {
+    private final Client[] clients = new Client[3];
+    /** Whether each client ignores queries instead of answering them. */
+    private final boolean[] silent = new boolean[clients.length];
+    /** The queries silent clients ignored. */
+    private final List<Ask> ignored = new CopyOnWriteArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        clients[0] = client;
+        for (int i = 1; i < clients.length; ++i)
+            clients[i] = new Client(Short.MAX_VALUE, Short.MAX_VALUE);
+        reg(server.getKryo(), Ask.class, Integer.class);
+        for (Client client : clients)
+            reg(client.getKryo(), Ask.class, Integer.class);
+        super.setUp();
+
+        for (int i = 0; i < clients.length; ++i) {
+            final int index = i;
+            RegisteredClientListener listener = new RegisteredClientListener();
+            listener.addQueryHandle(Ask.class, (query, connection) -> {
+                if (silent[index])
+                    ignored.add(query);
+                else
+                    query.reply(query.value + index);
+            });
+            clients[i].addListener(listener);
+        }
+    }
+
+
+    public void testEveryTargetAnswers() throws Exception {
+        start(server, clients);
+        final QueryResults<ClientConnection, Integer> results =
+            server.sendQueryToAll(new Ask(10), Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+
+        assertTrue(results.isComplete());
+        assertEquals(clients.length, results.getResponses().size());
+        for (Client client : clients) {
+            final ClientConnection target = targetOf(client);
+            assertEquals(10 + indexOf(client), results.getResponses().get(target).intValue());
+            assertEquals(0, target.getPendingQueries());
+        }
+    }
+
+    public void testQuorumCompletesEarly() throws Exception {
+        silent[2] = true;
+        start(server, clients);
+        final QueryResults<ClientConnection, Integer> results =
+            server.sendQueryToAll(new Ask(0), targets(), 2, null).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, results.getResponses().size());
+        assertEquals(Arrays.asList(targetOf(clients[2])), results.getUnanswered());
+        // The silent target's part was cancelled, so its late response would be ignored, and it was told to stop.
+        assertEquals(0, targetOf(clients[2]).getPendingQueries());
+        for (int i = 0; i < 100 && (ignored.isEmpty() || !ignored.get(0).isCancelled()); ++i)
+            sleep(10);
+        assertTrue(ignored.get(0).isCancelled());
+    }
+
+    public void testDeadlineGivesPartialResults() throws Exception {
+        silent[1] = true;
+        start(server, clients);
+        final int before = TimedFuture.getPendingTimeouts();
+        final long start = System.nanoTime();
+        final CompletableFuture<QueryResults<ClientConnection, Integer>> future =
+            server.sendQueryToAll(new Ask(0), Duration.ofMillis(200));
+        // One timeout for the whole query, not one per target.
+        assertEquals(before + 1, TimedFuture.getPendingTimeouts());
+
+        final QueryResults<ClientConnection, Integer> results = future.get(5, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(2, results.getResponses().size());
+        assertEquals(Arrays.asList(targetOf(clients[1])), results.getUnanswered());
+        assertFalse(results.isComplete());
+        for (Client client : clients)
+            assertEquals(0, targetOf(client).getPendingQueries());
+    }
+
+    public void testClosedTargetsDontHoldResultsBack() throws Exception {
+        silent[0] = true;
+        start(server, clients);
+        final List<ClientConnection> targets = targets();
+        targets.get(2).close();
+        final CompletableFuture<QueryResults<ClientConnection, Integer>> future =
+            server.sendQueryToAll(new Ask(0), targets, Integer.MAX_VALUE, null);
+        sleep(100);
+        assertFalse(future.isDone());
+
+        // Closing the last target still waiting completes the results without it.
+        targets.get(0).close();
+        final QueryResults<ClientConnection, Integer> results = future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, results.getResponses().size());
+        assertEquals(Integer.valueOf(1), results.getResponses().get(targets.get(1)));
+        assertEquals(Arrays.asList(targets.get(0), targets.get(2)), results.getUnanswered());
+    }
+
+
+    private ClientConnection targetOf(Client client) {
+        return server.getConnection(client.getConnection().getID());
+    }
+
+    private int indexOf(Client client) {
+        return Arrays.asList(clients).indexOf(client);
+    }
+
+    private List<ClientConnection> targets() {
+        final List<ClientConnection> targets = new ArrayList<>();
+        for (Client client : clients)
+            targets.add(targetOf(client));
+        return targets;
+    }
+
+
+    public static class Ask extends QueryToClient<Integer> {
+        public int value;
+
+        public Ask() {
+        }
+
+        Ask(int value) {
+            this.value = value;
+        }
+    }
+}
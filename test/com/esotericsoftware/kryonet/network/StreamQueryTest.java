@@ -0,0 +1,162 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.RegisteredServerListener;
+import com.esotericsoftware.kryonet.network.messages.StreamQueryToServer;
+import com.esotericsoftware.kryonet.util.KryoNetException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StreamQueryTest extends KryoNetTestCase {
+    private static final int FAIL_AT = -1;
+
+    /** How many rows the server's sources produced. */
+    private final AtomicInteger produced = new AtomicInteger();
+    /** How many times the server's sources were asked whether they had another row. */
+    private final AtomicInteger pulled = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        reg(server.getKryo(), client.getKryo(), Rows.class, Integer.class);
+        super.setUp();
+        RegisteredServerListener listener = new RegisteredServerListener();
+        listener.addQueryHandle(Rows.class, (query, connection) -> query.stream(new Counter(query.count, query.failAt)));
+        server.addListener(listener);
+    }
+
+
+    public void testStreamsEveryRowInOrder() {
+        start(server, client);
+        final ServerConnection connection = client.getConnection();
+        try (QueryStream<Integer> rows = connection.sendStream(new Rows(10_000), 16, Duration.ofSeconds(5))) {
+            for (int i = 0; i < 10_000; ++i)
+                assertEquals(i, rows.next().intValue());
+            assertFalse(rows.hasNext());
+            assertTrue(rows.isDone());
+        }
+        assertEquals(0, connection.getPendingQueries());
+    }
+
+    public void testEmptyStream() {
+        start(server, client);
+        final QueryStream<Integer> rows = client.getConnection().sendStream(new Rows(0), 4, Duration.ofSeconds(5));
+        assertFalse(rows.hasNext());
+        try {
+            rows.next();
+            fail("The empty stream had a row.");
+        } catch (NoSuchElementException expected) {
+            // Ended.
+        }
+    }
+
+    public void testServerOnlyProducesWhatTheWindowAllows() {
+        start(server, client);
+        final QueryStream<Integer> rows = client.getConnection().sendStream(new Rows(1000), 8, Duration.ofSeconds(5));
+        assertEquals(0, rows.next().intValue());
+        sleep(200);
+        // Nothing more is produced, or even asked for, until rows are taken.
+        assertEquals(8, produced.get());
+        assertEquals(8, pulled.get());
+
+        // Taking half the window lets the server send that many more.
+        for (int i = 1; i < 4; ++i)
+            assertEquals(i, rows.next().intValue());
+        sleep(200);
+        assertEquals(12, produced.get());
+
+        int count = 4;
+        while (rows.hasNext())
+            assertEquals(count++, rows.next().intValue());
+        assertEquals(1000, count);
+    }
+
+    public void testSourceFailureEndsTheStream() {
+        start(server, client);
+        final QueryStream<Integer> rows = client.getConnection().sendStream(new Rows(100, 50), 16, Duration.ofSeconds(5));
+        for (int i = 0; i < 50; ++i)
+            assertEquals(i, rows.next().intValue());
+        try {
+            rows.hasNext();
+            fail("The stream ended normally.");
+        } catch (KryoNetException expected) {
+            assertTrue(expected.getMessage().contains("row 50"));
+        }
+        assertEquals(0, client.getConnection().getPendingQueries());
+    }
+
+    public void testClosedConnectionFailsTheStream() {
+        start(server, client);
+        final QueryStream<Integer> rows = client.getConnection().sendStream(new Rows(1000), 4, null);
+        assertEquals(0, rows.next().intValue());
+        client.close();
+        try {
+            while (rows.hasNext())
+                rows.next();
+            fail("The stream ended normally.");
+        } catch (KryoNetException expected) {
+            // Closed.
+        }
+    }
+
+    public void testStreamTimesOut() {
+        start(server, client);
+        final QueryStream<Integer> rows =
+            client.getConnection().sendStream(new Rows(1000), 4, Duration.ofMillis(100));
+        assertEquals(0, rows.next().intValue());
+        // Not taking any more leaves the server without credit, so nothing arrives within the timeout.
+        sleep(500);
+        try {
+            while (rows.hasNext())
+                rows.next();
+            fail("The stream ended normally.");
+        } catch (CancellationException expected) {
+            // Timed out.
+        }
+        assertEquals(0, client.getConnection().getPendingQueries());
+    }
+
+
+    public static class Rows extends StreamQueryToServer<Integer> {
+        public int count;
+        public int failAt = FAIL_AT;
+
+        public Rows() {
+        }
+
+        Rows(int count) {
+            this.count = count;
+        }
+
+        Rows(int count, int failAt) {
+            this.count = count;
+            this.failAt = failAt;
+        }
+    }
+
+
+    /** Produces rows on demand, counting them. */
+    private final class Counter implements Iterator<Integer> {
+        private final int count, failAt;
+        private int next;
+
+        Counter(int count, int failAt) {
+            this.count = count;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public boolean hasNext() {
+            pulled.incrementAndGet();
+            return next < count;
+        }
+
+        @Override
+        public Integer next() {
+            if (next == failAt) throw new IllegalStateException("Failed at row " + next);
+            produced.incrementAndGet();
+            return next++;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.esotericsoftware.kryonet.network;
+
+import com.esotericsoftware.kryonet.adapters.ConnectionAdapter;
+import com.esotericsoftware.kryonet.adapters.StripedListener;
+import com.esotericsoftware.kryonet.network.impl.Client;
+import com.esotericsoftware.kryonet.utils.StringMessage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class StripedListenerTest extends KryoNetTestCase {
+    private static final int MESSAGES = 100;
+
+    private final Map<Integer, List<String>> received = new ConcurrentHashMap<>();
+
+    public void testSlowConnectionDoesNotStallOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fastDone = new CountDownLatch(1), slowDone = new CountDownLatch(1);
+        final StripedListener<ClientConnection> striped = new StripedListener<>(new ConnectionAdapter<ClientConnection>() {
+            @Override
+            public void received(ClientConnection connection, Object msg) {
+                if (!(msg instanceof StringMessage)) return;
+                final String text = ((StringMessage) msg).msg;
+                if (text.equals("block")) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    return;
+                }
+                final List<String> messages = received.computeIfAbsent(connection.getID(), id -> new CopyOnWriteArrayList<>());
+                messages.add(text);
+                if (messages.size() == MESSAGES) (text.startsWith("slow") ? slowDone : fastDone).countDown();
+            }
+        }, 4, MESSAGES * 2);
+        server.addListener(striped);
+
+        final Client slow = client, fast = new Client();
+        reg(server.getKryo(), StringMessage.class);
+        reg(slow.getKryo(), fast.getKryo(), StringMessage.class);
+        start(server, slow, fast);
+
+        slow.sendTCP(new StringMessage("block"));
+        for (int i = 0; i < MESSAGES; ++i) {
+            slow.sendTCP(new StringMessage("slow " + i));
+            fast.sendTCP(new StringMessage("fast " + i));
+        }
+
+        assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+        assertNull(received.get(slow.getConnection().getID()));
+        assertTrue(striped.getPeakQueueDepths()[Math.floorMod(slow.getConnection().getID(), 4)] > 0);
+
+        release.countDown();
+        assertTrue(slowDone.await(5, TimeUnit.SECONDS));
+        assertInOrder("slow ", received.get(slow.getConnection().getID()));
+        assertInOrder("fast ", received.get(fast.getConnection().getID()));
+        striped.stop();
+    }
+
+    public void testQueueDepthsStartEmpty() {
+        StripedListener<ClientConnection> striped = new StripedListener<>(new ConnectionAdapter<>(), 3, 8);
+        assertEquals(3, striped.getStripeCount());
+        assertEquals(3, striped.getQueueDepths().length);
+        for (int depth : striped.getPeakQueueDepths())
+            assertEquals(0, depth);
+        striped.stop();
+    }
+
+
+    private static void assertInOrder(String prefix, List<String> messages) {
+        assertEquals(MESSAGES, messages.size());
+        for (int i = 0; i < MESSAGES; ++i)
+            assertEquals(prefix + i, messages.get(i));
+    }
+}
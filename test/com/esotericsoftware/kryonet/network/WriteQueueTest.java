@@ -0,0 +1,112 @@
+package com.esotericsoftware.kryonet.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class WriteQueueTest {
+    private static final int SEGMENT = 64;
+
+    private final BufferPool pool = new BufferPool(SEGMENT, 16);
+    private ServerSocketChannel acceptor;
+    private SocketChannel writer, reader;
+
+    @Before
+    public void connect() throws IOException {
+        acceptor = ServerSocketChannel.open();
+        acceptor.bind(new InetSocketAddress("localhost", 0));
+        reader = SocketChannel.open(acceptor.getLocalAddress());
+        writer = acceptor.accept();
+        writer.configureBlocking(false);
+    }
+
+    @After
+    public void close() throws IOException {
+        writer.close();
+        reader.close();
+        acceptor.close();
+    }
+
+
+    @Test
+    public void sharedFramesAreQueuedByReference() throws IOException {
+        SharedFrame frame = SharedFrame.wrap(bytes(100, 0), 2, pool);
+        WriteQueue[] queues = {new WriteQueue(pool), new WriteQueue(pool), new WriteQueue(pool)};
+        for (WriteQueue queue : queues)
+            queue.appendShared(frame.view(), frame);
+        frame.release();
+
+        assertEquals(3, frame.references());
+        assertEquals(102, queues[0].size());
+
+        for (int i = 0; i < queues.length; ++i) {
+            assertTrue(queues[i].writeTo(writer, false));
+            assertEquals(queues.length - 1 - i, frame.references());
+        }
+        assertEquals(0, queues[0].size());
+    }
+
+    @Test
+    public void bytesAppendedAfterASharedFrameKeepTheirOrder() throws IOException {
+        SharedFrame frame = SharedFrame.wrap(bytes(10, 0), 1, pool);
+        WriteQueue queue = new WriteQueue(pool);
+        queue.append(bytes(SEGMENT / 2, 100));
+        queue.appendShared(frame.view(), frame);
+        queue.append(bytes(SEGMENT * 2, 50));
+        frame.release();
+
+        assertEquals(SEGMENT / 2 + 11 + SEGMENT * 2, queue.size());
+        assertTrue(queue.writeTo(writer, true));
+        assertEquals(0, frame.references());
+
+        ByteBuffer received = read(SEGMENT / 2 + 11 + SEGMENT * 2);
+        assertEquals(100, received.get(0));
+        assertEquals(10, received.get(SEGMENT / 2)); // The frame's length.
+        assertEquals(0, received.get(SEGMENT / 2 + 1));
+        assertEquals(50, received.get(SEGMENT / 2 + 11));
+        assertEquals((byte) (50 + SEGMENT * 2 - 1), received.get(received.limit() - 1));
+    }
+
+    @Test
+    public void clearReleasesSharedFrames() throws IOException {
+        reader.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+        SharedFrame frame = SharedFrame.wrap(bytes(1000, 0), 2, pool);
+        WriteQueue queue = new WriteQueue(pool);
+        for (int i = 0; i < 10_000; ++i)
+            queue.appendShared(frame.view(), frame);
+        frame.release();
+
+        assertFalse(queue.writeTo(writer, false));
+        assertTrue(frame.references() > 0);
+        queue.clear();
+        assertEquals(0, frame.references());
+        assertEquals(0, queue.size());
+    }
+
+
+    private ByteBuffer read(int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            reader.read(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer bytes(int length, int first) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; ++i)
+            buffer.put((byte) (first + i));
+        buffer.flip();
+        return buffer;
+    }
+}
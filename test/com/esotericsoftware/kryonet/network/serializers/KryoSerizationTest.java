@@ -1,8 +1,13 @@
 package com.esotericsoftware.kryonet.network.serializers;
 
+import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.serializers.DefaultArraySerializers;
+import com.esotericsoftware.kryonet.network.messages.FrameworkMessage.StreamCredit;
 import com.esotericsoftware.kryonet.serializers.KryoSerialization;
 import com.esotericsoftware.kryonet.serializers.Serialization;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
 
 /**
  * Created by Evan on 4/2/17.
@@ -16,4 +21,13 @@ public class KryoSerizationTest extends SerializerUnitTest {
         k.getKryo().register(String[].class, new DefaultArraySerializers.StringArraySerializer());
         return k;
     }
+
+
+    @Test
+    public void frameworkMessagesDontMoveApplicationIds() {
+        Kryo kryo = new KryoSerialization().getKryo();
+        // Kryo's own ten classes, then the six framework messages the first applications were written against.
+        assertEquals(16, kryo.register(EqualityMessage.class).getId());
+        assertEquals(KryoSerialization.FRAMEWORK_IDS, kryo.getRegistration(StreamCredit.class).getId());
+    }
 }
@@ -0,0 +1,142 @@
+package com.esotericsoftware.kryonet.network.serializers;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.DefaultArraySerializers;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
+import com.esotericsoftware.kryonet.serializers.KryoSerialization;
+import com.esotericsoftware.kryonet.serializers.Serialization;
+import com.esotericsoftware.kryonet.serializers.ThreadLocalKryoSerialization;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ThreadLocalKryoSerializationTest extends SerializerUnitTest {
+    @Override
+    public Serialization getSerializer() {
+        KryoSerialization k = new ThreadLocalKryoSerialization();
+        k.getKryo().register(EqualityMessage.class);
+        k.getKryo().register(EqualityMessage.NestedObject.class);
+        k.getKryo().register(String[].class, new DefaultArraySerializers.StringArraySerializer());
+        return k;
+    }
+
+
+    @Test
+    public void classesRegisteredAfterFirstUseAreReplayed() {
+        KryoSerialization s = new ThreadLocalKryoSerialization();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        s.write(buffer, 7);
+
+        try {
+            s.write(buffer, new EqualityMessage());
+            fail("EqualityMessage is not registered yet.");
+        } catch (IllegalArgumentException | KryoException expected) {
+        }
+
+        s.getKryo().register(EqualityMessage.class);
+        s.getKryo().register(EqualityMessage.NestedObject.class);
+        s.getKryo().register(String[].class, new DefaultArraySerializers.StringArraySerializer());
+        buffer.clear();
+        s.write(buffer, new EqualityMessage());
+        buffer.flip();
+        assertEquals(new EqualityMessage(), s.read(buffer));
+    }
+
+    @Test
+    public void defaultSerializersAndSettingsAreReplayed() {
+        KryoSerialization s = new ThreadLocalKryoSerialization();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        s.write(buffer, 7);
+
+        // Changed after the copy was made, and before the registrations that use them.
+        s.getKryo().addDefaultSerializer(Tagged.class, TaggedSerializer.class);
+        s.getKryo().setReferences(true);
+        s.getKryo().register(Tagged.class);
+        s.getKryo().register(Pair.class);
+        Pair pair = new Pair();
+        pair.first = pair.second = new Tagged(3);
+        buffer.clear();
+        s.write(buffer, pair);
+        buffer.flip();
+
+        Pair read = (Pair) s.read(buffer);
+        assertEquals(3, read.first.value);
+        assertTrue(read.first.viaSerializer);
+        assertSame(read.first, read.second);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void referenceResolverCannotBeSet() {
+        new ThreadLocalKryoSerialization().getKryo().setReferenceResolver(new MapReferenceResolver());
+    }
+
+    @Test
+    public void copiesOnOtherThreadsUseTheTemplateIds() throws Exception {
+        final Serialization s = getSerializer();
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> written = new ArrayList<>();
+            for (int i = 0; i < 64; ++i)
+                written.add(threads.submit(() -> {
+                    ByteBuffer buffer = ByteBuffer.allocate(1024);
+                    s.write(buffer, new EqualityMessage());
+                    buffer.flip();
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    return bytes;
+                }));
+
+            for (Future<byte[]> bytes : written)
+                assertEquals(new EqualityMessage(), s.read(ByteBuffer.wrap(bytes.get())));
+        } finally {
+            threads.shutdown();
+            threads.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+
+    public static class Tagged {
+        public int value;
+        /** Set only by {@link TaggedSerializer}. */
+        public transient boolean viaSerializer;
+
+        public Tagged() {
+        }
+
+        Tagged(int value) {
+            this.value = value;
+        }
+    }
+
+    public static class TaggedSerializer extends Serializer<Tagged> {
+        @Override
+        public void write(Kryo kryo, Output output, Tagged object) {
+            output.writeInt(object.value);
+        }
+
+        @Override
+        public Tagged read(Kryo kryo, Input input, Class<Tagged> type) {
+            Tagged tagged = new Tagged(input.readInt());
+            tagged.viaSerializer = true;
+            return tagged;
+        }
+    }
+
+    public static class Pair {
+        public Tagged first, second;
+    }
+}
@@ -0,0 +1,84 @@
+package com.esotericsoftware.kryonet.network.util;
+
+import com.esotericsoftware.kryonet.util.TimerWheel;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class TimerWheelTest {
+
+
+    @Test
+    public void firesOnlyExpiredEntries(){
+        TimerWheel<String> wheel = new TimerWheel<>(8, 10, 0);
+        wheel.schedule("a", 25);
+        wheel.schedule("b", 55);
+        List<String> fired = new ArrayList<>();
+
+        assertEquals(0, wheel.advance(19, (value, now) -> { fired.add(value); return -1; }));
+        assertEquals(1, wheel.advance(30, (value, now) -> { fired.add(value); return -1; }));
+        assertEquals(1, wheel.advance(60, (value, now) -> { fired.add(value); return -1; }));
+
+        assertEquals("[a, b]", fired.toString());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void deadlinesBeyondOneRevolution(){
+        TimerWheel<String> wheel = new TimerWheel<>(4, 10, 0);
+        wheel.schedule("far", 135);
+        List<String> fired = new ArrayList<>();
+
+        for (long time = 10; time < 130; time += 10)
+            wheel.advance(time, (value, now) -> { fired.add(value); return -1; });
+        assertTrue(fired.isEmpty());
+
+        wheel.advance(140, (value, now) -> { fired.add(value); return -1; });
+        assertEquals("[far]", fired.toString());
+    }
+
+    @Test
+    public void longStallFiresEverything(){
+        TimerWheel<Integer> wheel = new TimerWheel<>(16, 10, 0);
+        for (int i = 0; i < 100; ++i)
+            wheel.schedule(i, i * 7);
+
+        assertEquals(100, wheel.advance(10_000, (value, now) -> -1));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancelAndReschedule(){
+        TimerWheel<String> wheel = new TimerWheel<>(8, 10, 0);
+        TimerWheel.Entry<String> cancelled = wheel.schedule("cancelled", 20);
+        TimerWheel.Entry<String> moved = wheel.schedule("moved", 20);
+        wheel.cancel(cancelled);
+        wheel.schedule(moved, 100);
+        assertFalse(cancelled.isScheduled());
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(50, (value, now) -> { fired.add(value); return -1; });
+        assertTrue(fired.isEmpty());
+        assertEquals(1, wheel.size());
+
+        wheel.advance(100, (value, now) -> { fired.add(value); return -1; });
+        assertEquals("[moved]", fired.toString());
+    }
+
+    @Test
+    public void periodicEntry(){
+        TimerWheel<String> wheel = new TimerWheel<>(8, 10, 0);
+        wheel.schedule("tick", 10);
+        int[] count = {0};
+
+        for (long time = 10; time <= 1000; time += 10)
+            wheel.advance(time, (value, now) -> { ++count[0]; return now + 50; });
+
+        assertEquals(20, count[0]);
+        assertEquals(1, wheel.size());
+    }
+}